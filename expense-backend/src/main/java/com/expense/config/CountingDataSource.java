@@ -0,0 +1,115 @@
+package com.expense.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.expense.service.JdbcMetrics;
+
+/**
+ * Источник данных, подсчитывающий выполненные запросы SQL и прочитанные строки (см. {@link JdbcMetrics}).
+ * Соединения, выражения и результаты оборачиваются динамическими прокси: запрос отмечается при вызове execute*
+ * вместе с текстом запроса (из prepareStatement или из аргумента execute), строка - при вызове ResultSet.next(), вернувшем true.
+ * Остальные вызовы передаются без изменений.
+ * @author Alexandr Trifonov
+ *
+ */
+public class CountingDataSource extends DelegatingDataSource {
+	private final JdbcMetrics metrics;
+
+	/**
+	 * @param target Источник данных.
+	 * @param metrics Счетчики обращений к базе данных.
+	 */
+	public CountingDataSource(DataSource target, JdbcMetrics metrics) {
+		super(target);
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return (Connection) proxy(Connection.class, super.getConnection(), null);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return (Connection) proxy(Connection.class, super.getConnection(username, password), null);
+	}
+
+	/**
+	 * Обертка объекта JDBC.
+	 * @param type Интерфейс объекта.
+	 * @param target Объект.
+	 * @param sql Текст подготовленного запроса или null.
+	 * @return Прокси, реализующий интерфейс.
+	 */
+	private Object proxy(Class<?> type, Object target, String sql) {
+		return Proxy.newProxyInstance(CountingDataSource.class.getClassLoader(), new Class<?>[] {type}, new Handler(target, sql));
+	}
+
+	/**
+	 * Обработчик вызовов соединения, выражения или результата.
+	 */
+	private class Handler implements InvocationHandler {
+		private final Object target;
+		
+		/**
+		 * Текст подготовленного запроса для PreparedStatement и CallableStatement.
+		 */
+		private final String sql;
+
+		Handler(Object target, String sql) {
+			this.target = target;
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+			if (result == null) {
+				return null;
+			}
+			String name = method.getName();
+			if (target instanceof Connection) {
+				Class<?> type = method.getReturnType();
+				if (type == Statement.class || type == PreparedStatement.class || type == CallableStatement.class) {
+					return proxy(type, result, sqlArgument(args));
+				}
+			} else if (target instanceof Statement) {
+				if (name.startsWith("execute")) {
+					String executed = sqlArgument(args);
+					metrics.statementExecuted(executed != null ? executed : sql);
+				}
+				if (method.getReturnType() == ResultSet.class) {
+					return proxy(ResultSet.class, result, null);
+				}
+			} else if (target instanceof ResultSet && name.equals("next") && Boolean.TRUE.equals(result)) {
+				metrics.rowFetched();
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Текст запроса - первый аргумент prepareStatement, prepareCall и execute*, если он есть.
+	 */
+	private static String sqlArgument(Object[] args) {
+		return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+	}
+}
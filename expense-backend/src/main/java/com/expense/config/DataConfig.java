@@ -1,40 +1,67 @@
 package com.expense.config;
 
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.sql.DataSource;
 
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+
+import com.expense.service.ConnectionPoolMetrics;
+import com.expense.service.JdbcMetrics;
 
 /**
  * Конфигурационный класс уровня обслуживания в части базы данных для профиля prod.
+ * Соединения берутся из пула, настраиваемого свойствами db.* в application.properties. Транзакции только для чтения 
+ * могут направляться на реплики (см. {@link ReadWriteRoutingDataSource}).
  * @author Alexandr Trifonov
  *
  */
 @Profile("prod")
 @Configuration
 @EnableJpaRepositories(basePackages = {"com.expense.repos"})
+@EnableScheduling
 @ComponentScan(basePackages = {"com.expense"})
+@PropertySource("classpath:application.properties")
 public class DataConfig {
 	private static Logger logger = LoggerFactory.getLogger(DataConfig.class);
 	
 	
-	@Bean
-	DataSource dataSource() {
+	@Autowired
+	Environment env;
+	
+	@Autowired
+	ConnectionPoolMetrics poolMetrics;
+	
+	@Autowired
+	JdbcMetrics jdbcMetrics;
+	
+	/**
+	 * Источник данных с маршрутизацией: транзакции только для чтения направляются на реплики из свойства db.replica.urls
+	 * (адреса через запятую), остальные - на основную базу данных. Если реплики не указаны, все обращения идут на основную базу данных.
+	 * @return Источник данных с маршрутизацией.
+	 */
+	@Bean(destroyMethod = "close")
+	ReadWriteRoutingDataSource routingDataSource() {
 		try {
-			DriverManagerDataSource dataSource = new DriverManagerDataSource();
-			dataSource.setDriverClassName("org.postgresql.Driver");
-			dataSource.setUrl("jdbc:postgresql://localhost:5433/expense_db");
-			dataSource.setUsername("expense");
-			dataSource.setPassword("expense");	
-			return dataSource;
+			DataSource primary = PooledDataSources.create(env, "db", poolMetrics);
+			List<DataSource> replicas = new ArrayList<>();
+			String[] replicaUrls = env.getProperty("db.replica.urls", String[].class, new String[0]);
+			for (int i = 0; i < replicaUrls.length; i++) {
+				replicas.add(PooledDataSources.create(env, "db", replicaUrls[i].trim(), "expense-replica-pool-" + i, null));
+			}
+			return new ReadWriteRoutingDataSource(primary, replicas, env.getProperty("db.replica.readYourWritesMillis", Long.class, 1000L));
 		} catch (Exception e) {
 			logger.error("DataSource bean cannot be created!", e);
 			return null;
@@ -42,6 +69,14 @@ public class DataConfig {
 		
 	}
 	
-	
+	/**
+	 * Источник данных приложения: маршрутизация с отложенным выбором соединения и подсчетом запросов SQL и прочитанных строк.
+	 * @return Источник данных.
+	 */
+	@Bean
+	@Primary
+	DataSource dataSource() {
+		return new CountingDataSource(routingDataSource().lazyProxy(), jdbcMetrics);
+	}
 	
 }
@@ -1,19 +1,27 @@
 package com.expense.config;
 
+import java.util.Collections;
+
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
-import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.core.env.Environment;
+
+import com.expense.service.ConnectionPoolMetrics;
+import com.expense.service.JdbcMetrics;
 
 /**
  * Конфигурационный класс уровня обслуживания в части базы данных для профиля test.
+ * Встроенная база данных H2 используется через тот же пул соединений, что и в профиле prod (свойства test.db.* в application-test.properties).
  * @author Alexandr Trifonov
  *
  */
@@ -21,14 +29,27 @@ import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
 @Configuration
 @EnableJpaRepositories(basePackages = {"com.expense.repos"})
 @ComponentScan(basePackages = {"com.expense"})
+@PropertySource("classpath:application-test.properties")
 public class DataTestConfig {
 	private static Logger logger = LoggerFactory.getLogger(DataTestConfig.class);
 	
-	@Bean
-	DataSource dataSource() {
+	@Autowired
+	Environment env;
+	
+	@Autowired
+	ConnectionPoolMetrics poolMetrics;
+	
+	@Autowired
+	JdbcMetrics jdbcMetrics;
+	
+	/**
+	 * Источник данных с маршрутизацией, как в профиле prod, но без реплик: все обращения идут во встроенную базу данных.
+	 * @return Источник данных с маршрутизацией.
+	 */
+	@Bean(destroyMethod = "close")
+	ReadWriteRoutingDataSource routingDataSource() {
 		try {
-			EmbeddedDatabaseBuilder dbBuilder = new EmbeddedDatabaseBuilder();
-			return dbBuilder.setType(EmbeddedDatabaseType.H2).build();
+			return new ReadWriteRoutingDataSource(PooledDataSources.create(env, "test.db", poolMetrics), Collections.emptyList(), 0);
 		} catch(Exception e) {
 			logger.error("Embedded DataSource bean cannot be created!", e);
 			return null;
@@ -36,4 +57,14 @@ public class DataTestConfig {
 		
 	}
 	
+	/**
+	 * Источник данных приложения: маршрутизация с отложенным выбором соединения и подсчетом запросов SQL и прочитанных строк.
+	 * @return Источник данных.
+	 */
+	@Bean
+	@Primary
+	DataSource dataSource() {
+		return new CountingDataSource(routingDataSource().lazyProxy(), jdbcMetrics);
+	}
+	
 }
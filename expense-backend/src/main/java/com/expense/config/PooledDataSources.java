@@ -0,0 +1,67 @@
+package com.expense.config;
+
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+
+/**
+ * Создание пула соединений с базой данных по свойствам db.* (см. application.properties). 
+ * Используется конфигурациями обоих профилей, чтобы профили prod и test работали через одинаковый пул.
+ * Свойства профиля test имеют префикс test.db (см. application-test.properties), так как application.properties 
+ * загружается и в профиле test.
+ * @author Alexandr Trifonov
+ *
+ */
+final class PooledDataSources {
+	
+	private PooledDataSources() {
+	}
+	
+	/**
+	 * Создание пула соединений. Свойства кэша подготовленных выражений передаются драйверу, только если они указаны.
+	 * @param env Окружение со свойствами пула.
+	 * @param prefix Префикс свойств пула: db для профиля prod, test.db для профиля test.
+	 * @param metricsTrackerFactory Получатель метрик пула.
+	 * @return Пул соединений.
+	 */
+	static HikariDataSource create(Environment env, String prefix, MetricsTrackerFactory metricsTrackerFactory) {
+		return create(env, prefix, env.getRequiredProperty(prefix + ".url"), "expense-pool", metricsTrackerFactory);
+	}
+	
+	/**
+	 * Создание пула соединений к базе данных с указанным адресом и остальными свойствами с указанным префиксом.
+	 * Используется для пулов реплик.
+	 * @param env Окружение со свойствами пула.
+	 * @param prefix Префикс свойств пула.
+	 * @param jdbcUrl Адрес базы данных.
+	 * @param poolName Имя пула.
+	 * @param metricsTrackerFactory Получатель метрик пула или null.
+	 * @return Пул соединений.
+	 */
+	static HikariDataSource create(Environment env, String prefix, String jdbcUrl, String poolName, MetricsTrackerFactory metricsTrackerFactory) {
+		HikariConfig config = new HikariConfig();
+		config.setPoolName(poolName);
+		config.setDriverClassName(env.getRequiredProperty(prefix + ".driverClassName"));
+		config.setJdbcUrl(jdbcUrl);
+		config.setUsername(env.getRequiredProperty(prefix + ".username"));
+		config.setPassword(env.getProperty(prefix + ".password", ""));
+		config.setMinimumIdle(env.getProperty(prefix + ".pool.minimumIdle", Integer.class, 4));
+		config.setMaximumPoolSize(env.getProperty(prefix + ".pool.maximumPoolSize", Integer.class, 16));
+		config.setConnectionTimeout(env.getProperty(prefix + ".pool.connectionTimeout", Long.class, 5000L));
+		config.setIdleTimeout(env.getProperty(prefix + ".pool.idleTimeout", Long.class, 600000L));
+		config.setMaxLifetime(env.getProperty(prefix + ".pool.maxLifetime", Long.class, 1800000L));
+		config.setLeakDetectionThreshold(env.getProperty(prefix + ".pool.leakDetectionThreshold", Long.class, 0L));
+		for (String property : new String[] {"prepareThreshold", "preparedStatementCacheQueries", "preparedStatementCacheSizeMiB"}) {
+			String value = env.getProperty(prefix + ".pool." + property);
+			if (value != null) {
+				config.addDataSourceProperty(property, value);
+			}
+		}
+		if (metricsTrackerFactory != null) {
+			config.setMetricsTrackerFactory(metricsTrackerFactory);
+		}
+		return new HikariDataSource(config);
+	}
+}
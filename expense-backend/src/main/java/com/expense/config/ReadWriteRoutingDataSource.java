@@ -0,0 +1,216 @@
+package com.expense.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Источник данных, направляющий транзакции только для чтения (@Transactional(readOnly = true)) на реплики базы данных, 
+ * а все остальные обращения - на основную базу данных. Реплики выбираются по кругу.
+ * <p>
+ * Чтение своих записей обеспечивается для каждого клиента отдельно ({@link ReadYourWrites}): транзакции только для чтения 
+ * клиента, недавно записывавшего данные, направляются на основную базу данных, чтобы чтение сразу после записи 
+ * не попало на реплику, которая еще не получила изменения. Запись отмечается только для транзакций, которые действительно 
+ * выполнили изменяющие запросы (executeUpdate, executeBatch или execute без результата): соединения основной базы данных 
+ * в пишущих транзакциях клиента оборачиваются для отслеживания таких запросов. Транзакции вне клиента 
+ * (задания по расписанию, загрузка хранилищ в памяти) не влияют на маршрутизацию чтения других клиентов.
+ * <p>
+ * Признак транзакции только для чтения становится известен после получения соединения менеджером транзакций, 
+ * поэтому источник должен использоваться через {@link LazyConnectionDataSourceProxy} (см. {@link #lazyProxy()}): 
+ * физическое соединение выбирается при первом запросе к базе данных.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+	private static Logger logger = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+	
+	/**
+	 * Ключ основной базы данных.
+	 */
+	public final static String PRIMARY = "primary";
+	
+	/**
+	 * Префикс ключей реплик.
+	 */
+	public final static String REPLICA = "replica-";
+	
+	/**
+	 * Основная база данных.
+	 */
+	private final DataSource primary;
+	
+	/**
+	 * Реплики.
+	 */
+	private final List<DataSource> replicas;
+	
+	/**
+	 * Окно чтения своих записей клиента после фиксации его пишущей транзакции, мс.
+	 */
+	private final long readYourWritesMillis;
+	
+	/**
+	 * Счетчик для выбора реплики по кругу.
+	 */
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	
+	/**
+	 * @param primary Основная база данных.
+	 * @param replicas Реплики, может быть пустым списком - тогда все обращения направляются на основную базу данных.
+	 * @param readYourWritesMillis Окно чтения своих записей клиента после фиксации его пишущей транзакции, мс.
+	 */
+	public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, long readYourWritesMillis) {
+		this.primary = primary;
+		this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+		this.readYourWritesMillis = readYourWritesMillis;
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		for (int i = 0; i < replicas.size(); i++) {
+			targets.put(REPLICA + i, replicas.get(i));
+		}
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+	
+	/**
+	 * Обертка, откладывающая выбор физического соединения до первого запроса к базе данных.
+	 * @return Источник данных для использования в приложении.
+	 */
+	public LazyConnectionDataSourceProxy lazyProxy() {
+		return new LazyConnectionDataSourceProxy(this);
+	}
+
+	/**
+	 * @return true, если есть реплики и чтение своих записей имеет значение.
+	 */
+	public boolean hasReplicas() {
+		return !replicas.isEmpty();
+	}
+	
+	/**
+	 * @return Окно чтения своих записей клиента после фиксации его пишущей транзакции, мс.
+	 */
+	public long getReadYourWritesMillis() {
+		return readYourWritesMillis;
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (replicas.isEmpty() || !TransactionSynchronizationManager.isActualTransactionActive() 
+				|| !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			return PRIMARY;
+		}
+		ReadYourWrites client = ReadYourWrites.current();
+		if (client != null && client.isPrimaryRequired()) {
+			return PRIMARY;
+		}
+		return REPLICA + Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return trackWrites(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return trackWrites(super.getConnection(username, password));
+	}
+	
+	/**
+	 * Отслеживание изменяющих запросов в пишущей транзакции клиента: после фиксации транзакции, выполнившей
+	 * хотя бы один такой запрос, клиенту отмечается запись.
+	 * @param connection Соединение основной базы данных.
+	 * @return Соединение, отмечающее изменяющие запросы, или то же соединение, если отслеживать нечего.
+	 */
+	private Connection trackWrites(Connection connection) {
+		ReadYourWrites client = ReadYourWrites.current();
+		if (client == null || replicas.isEmpty() || !TransactionSynchronizationManager.isSynchronizationActive() 
+				|| TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			return connection;
+		}
+		WriteTracker tracker = new WriteTracker(client);
+		TransactionSynchronizationManager.registerSynchronization(tracker);
+		return (Connection) proxy(Connection.class, connection, tracker);
+	}
+	
+	/**
+	 * Обертка соединения или выражения: выражения, созданные соединением, тоже оборачиваются,
+	 * выполнение изменяющих запросов отмечается в транзакции.
+	 */
+	private static Object proxy(Class<?> type, Object target, WriteTracker tracker) {
+		return Proxy.newProxyInstance(ReadWriteRoutingDataSource.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+			String name = method.getName();
+			if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+				return proxy(method.getReturnType(), result, tracker);
+			}
+			if (name.startsWith("executeUpdate") || name.startsWith("executeLargeUpdate") || name.startsWith("executeBatch") 
+					|| name.startsWith("executeLargeBatch") || (name.equals("execute") && Boolean.FALSE.equals(result))) {
+				tracker.written = true;
+			}
+			return result;
+		});
+	}
+	
+	/**
+	 * Признак изменяющих запросов в транзакции: после фиксации транзакции с такими запросами клиенту отмечается запись.
+	 */
+	private static class WriteTracker implements TransactionSynchronization {
+		private final ReadYourWrites client;
+		
+		private boolean written;
+		
+		WriteTracker(ReadYourWrites client) {
+			this.client = client;
+		}
+		
+		@Override
+		public void afterCommit() {
+			if (written) {
+				client.writeCommitted();
+			}
+		}
+	}
+	
+	/**
+	 * Закрытие основной базы данных и реплик, если они поддерживают закрытие (пулы соединений).
+	 */
+	@Override
+	public void close() {
+		List<DataSource> all = new ArrayList<>(replicas);
+		all.add(primary);
+		for (DataSource dataSource : all) {
+			if (dataSource instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) dataSource).close();
+				} catch (Exception e) {
+					logger.warn("DataSource cannot be closed", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.expense.config;
+
+/**
+ * Состояние чтения своих записей для клиента, от имени которого выполняется текущий поток (обычно - HTTP запрос).
+ * Если клиент недавно записывал данные, его транзакции только для чтения направляются на основную базу данных
+ * (см. {@link ReadWriteRoutingDataSource}), а транзакции других клиентов по-прежнему читают с реплик.
+ * <p>
+ * Состояние создается для каждого запроса по признаку недавней записи, который клиент передает обратно
+ * (см. com.expense.web.ReadYourWritesInterceptor), и связывается с потоком на время обработки запроса.
+ * После фиксации транзакции, действительно изменившей данные, состояние отмечает запись: последующие чтения того же запроса
+ * идут на основную базу данных, а обработчик записи передает клиенту признак недавней записи.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ReadYourWrites {
+	/**
+	 * Состояние клиента текущего потока или null.
+	 */
+	private static final ThreadLocal<ReadYourWrites> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * Обработчик первой записи клиента в пределах запроса.
+	 */
+	private final Runnable onWrite;
+
+	/**
+	 * Чтение клиента должно выполняться из основной базы данных.
+	 */
+	private volatile boolean primaryRequired;
+
+	/**
+	 * В пределах запроса была зафиксирована запись.
+	 */
+	private volatile boolean written;
+
+	/**
+	 * @param primaryRequired Клиент недавно записывал данные, и его чтение должно выполняться из основной базы данных.
+	 * @param onWrite Обработчик первой зафиксированной записи клиента в пределах запроса.
+	 */
+	public ReadYourWrites(boolean primaryRequired, Runnable onWrite) {
+		this.primaryRequired = primaryRequired;
+		this.onWrite = onWrite;
+	}
+
+	/**
+	 * Связывание состояния клиента с текущим потоком.
+	 * @param client Состояние клиента.
+	 */
+	public static void bind(ReadYourWrites client) {
+		CURRENT.set(client);
+	}
+
+	/**
+	 * Отвязывание состояния клиента от текущего потока.
+	 */
+	public static void unbind() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * @return Состояние клиента текущего потока или null, если поток выполняется не от имени клиента.
+	 */
+	public static ReadYourWrites current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * @return true, если чтение клиента должно выполняться из основной базы данных.
+	 */
+	public boolean isPrimaryRequired() {
+		return primaryRequired;
+	}
+
+	/**
+	 * @return true, если в пределах запроса была зафиксирована запись.
+	 */
+	public boolean isWritten() {
+		return written;
+	}
+
+	/**
+	 * Отметка зафиксированной транзакции, изменившей данные.
+	 */
+	void writeCommitted() {
+		primaryRequired = true;
+		if (!written) {
+			written = true;
+			onWrite.run();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.expense.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import com.expense.service.RequestMetrics;
+
+/**
+ * Измерение времени выполнения методов репозиториев Spring Data. Репозитории создаются как прокси Spring AOP,
+ * поэтому в начало цепочки их советов добавляется перехватчик, записывающий время вызова в {@link RequestMetrics}.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+	private RequestMetrics requestMetrics;
+
+	@Autowired
+	public void setRequestMetrics(RequestMetrics requestMetrics) {
+		this.requestMetrics = requestMetrics;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (bean instanceof Repository && bean instanceof Advised && !((Advised) bean).isFrozen()) {
+			String repository = repositoryName((Advised) bean);
+			MethodInterceptor interceptor = invocation -> {
+				long start = System.nanoTime();
+				try {
+					return invocation.proceed();
+				} finally {
+					requestMetrics.recordRepository(repository, invocation.getMethod().getName(), System.nanoTime() - start);
+				}
+			};
+			((Advised) bean).addAdvice(0, interceptor);
+		}
+		return bean;
+	}
+
+	/**
+	 * Имя репозитория - простое имя интерфейса приложения, а не интерфейса Spring Data, объявившего метод.
+	 */
+	private static String repositoryName(Advised repository) {
+		for (Class<?> type : repository.getProxiedInterfaces()) {
+			if (Repository.class.isAssignableFrom(type) && type.getName().startsWith("com.expense.")) {
+				return type.getSimpleName();
+			}
+		}
+		return repository.getTargetClass() != null ? repository.getTargetClass().getSimpleName() : "unknown";
+	}
+}
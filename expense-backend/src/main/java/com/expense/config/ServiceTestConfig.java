@@ -15,6 +15,7 @@ import org.springframework.orm.jpa.JpaVendorAdapter;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 /**
  * Конфигурационный класс уровня обслуживания для профиля test.
@@ -23,6 +24,7 @@ import org.springframework.transaction.PlatformTransactionManager;
  */
 @Profile("test")
 @Configuration
+@EnableTransactionManagement(proxyTargetClass = true)
 @ComponentScan(basePackages = {"com.expense"})
 public class ServiceTestConfig {
 	@Autowired
@@ -34,8 +36,23 @@ public class ServiceTestConfig {
 		hibernateProp.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
 		hibernateProp.put("hibernate.hbm2ddl.auto", "create");
 		hibernateProp.put("hibernate.max_fetch_depth", 3);
-		hibernateProp.put("hibernate.jdbc.batch_size", 10);
+		hibernateProp.put("hibernate.jdbc.batch_size", 50);
+		//вставки группируются по сущностям, чтобы пакеты JDBC не прерывались вставками других сущностей
+		hibernateProp.put("hibernate.order_inserts", true);
 		hibernateProp.put("hibernate.jdbc.fetch_size", 50);
+		//значения из Criteria API передаются как параметры запроса, а не как литералы, чтобы не плодить планы запросов
+		hibernateProp.put("hibernate.criteria.literal_handling_mode", "BIND");
+		//число параметров в IN дополняется до степени двойки, чтобы число различных форм запроса оставалось ограниченным
+		hibernateProp.put("hibernate.query.in_clause_parameter_padding", true);
+		//кэш второго уровня (JCache/Ehcache) для сущностей, отмеченных @Cache
+		hibernateProp.put("hibernate.cache.use_second_level_cache", true);
+		hibernateProp.put("hibernate.cache.region.factory_class", "jcache");
+		hibernateProp.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+		hibernateProp.put("hibernate.javax.cache.missing_cache_strategy", "create");
+		//статистика Hibernate нужна для метрик попаданий в кэш (/api/cache-metrics)
+		hibernateProp.put("hibernate.generate_statistics", true);
+		//без этого при включенной статистике Hibernate пишет в журнал метрики каждой сессии (Session Metrics)
+		hibernateProp.put("hibernate.session.events.log", false);
 		return hibernateProp;
 	}
 	
@@ -1,13 +1,19 @@
 package com.expense.config;
 
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.CacheControl;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.ui.context.support.ResourceBundleThemeSource;
 import org.springframework.validation.Validator;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -19,6 +25,9 @@ import org.springframework.web.servlet.mvc.WebContentInterceptor;
 import org.springframework.web.servlet.theme.ThemeChangeInterceptor;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 
+import com.expense.web.ReadYourWritesInterceptor;
+import com.expense.web.RequestMetricsInterceptor;
+
 /**
  * Конфигурационный класс диспетчера сервлетов DispatcherServlet.
  * @author Alexandr Trifonov
@@ -29,6 +38,12 @@ import org.springframework.web.servlet.view.InternalResourceViewResolver;
 @ComponentScan
 @PropertySource(value= {"classpath:application.properties"})
 public class WebConfig implements WebMvcConfigurer {
+	
+	@Autowired
+	RequestMetricsInterceptor requestMetricsInterceptor;
+	
+	@Autowired
+	ReadYourWritesInterceptor readYourWritesInterceptor;
 
 	@Bean
 	StandardServletMultipartResolver multipartResolver() {
@@ -66,14 +81,40 @@ public class WebConfig implements WebMvcConfigurer {
 		return new ThemeChangeInterceptor();
 	}
 
+	/**
+	 * Заголовок Cache-Control: no-cache для ответов /api: клиент может хранить ответ, но перед использованием 
+	 * обязан проверить его условным запросом (If-None-Match), на который контроллеры отвечают 304, если данные не изменялись.
+	 * (cacheSeconds(0) дает no-store, при котором условные запросы невозможны.)
+	 */
 	@Bean
 	WebContentInterceptor webChangeInterceptor() {
 		WebContentInterceptor webContentInterceptor = new WebContentInterceptor();
-		webContentInterceptor.setCacheSeconds(0);
-		webContentInterceptor.setSupportedMethods("GET", "POST", "PUT", "DELETE");
+		webContentInterceptor.setCacheControl(CacheControl.noCache());
+		webContentInterceptor.setSupportedMethods("GET", "HEAD", "POST", "PUT", "DELETE");
 		return webContentInterceptor;
 	}
 
+	/**
+	 * Пул потоков для асинхронной обработки запросов, в том числе для потоковой выдачи расходов.
+	 */
+	@Bean
+	ThreadPoolTaskExecutor mvcTaskExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(4);
+		executor.setMaxPoolSize(16);
+		executor.setQueueCapacity(100);
+		executor.setThreadNamePrefix("mvc-async-");
+		return executor;
+	}
+	
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(mvcTaskExecutor());
+		//потоковая выдача большого числа расходов может занимать минуты
+		configurer.setDefaultTimeout(TimeUnit.MINUTES.toMillis(10));
+		configurer.registerCallableInterceptors(readYourWritesInterceptor);
+	}
+
 	@Override
 	public void configureDefaultServletHandling(DefaultServletHandlerConfigurer configurer) {
 		configurer.enable();
@@ -101,6 +142,9 @@ public class WebConfig implements WebMvcConfigurer {
 	public void addInterceptors(InterceptorRegistry registry) {
 		registry.addInterceptor(localeChangeInterceptor());
 		registry.addInterceptor(themeChangeInterceptor());
+		registry.addInterceptor(webChangeInterceptor()).addPathPatterns("/api/**");
+		registry.addInterceptor(requestMetricsInterceptor).addPathPatterns("/api/**");
+		registry.addInterceptor(readYourWritesInterceptor).addPathPatterns("/api/**");
 	}
 	@Override
 	public void addResourceHandlers(ResourceHandlerRegistry registry) {
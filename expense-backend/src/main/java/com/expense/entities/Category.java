@@ -1,5 +1,6 @@
 package com.expense.entities;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -11,17 +12,33 @@ import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import com.expense.jsonview.View;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonView;
 
 /**
  * Класс сущности Категория расхода. У категории могут быть подкатегории, но не более чем на одном уровне вложенности.
+ * Категории редко изменяются и часто загружаются по идентификатору, поэтому хранятся в кэше второго уровня.
+ * <p>
+ * Родительская категория загружается лениво, поэтому экземпляр может быть прокси Hibernate: 
+ * equals и hashCode обращаются к полям другой категории через методы доступа, служебные поля прокси не сериализуются.
  * @author Alexandr Trifonov
  *
  */
 @Entity
 @Table(name="category")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Category.CACHE_REGION)
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Category {
+	/**
+	 * Регион кэша второго уровня для категорий.
+	 */
+	public final static String CACHE_REGION = "category";
+	
 	/**
 	 * Идентификатор категории
 	 */
@@ -41,7 +58,7 @@ public class Category {
 	/**
 	 * У категории может быть один предок.
 	 */
-	@ManyToOne(fetch = FetchType.EAGER) //по умолчанию EAGER. FetchType.EAGER указано для ясности
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "parent_id", foreignKey = @ForeignKey(name = "fk_category_parent_id"))
 	@JsonView(View.Internal.class)
 	protected Category parent;
@@ -90,25 +107,24 @@ public class Category {
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
+		//instanceof и методы доступа вместо getClass() и полей: другая категория может быть прокси Hibernate
+		if (!(obj instanceof Category))
 			return false;
 		Category other = (Category) obj;
 		if (id == null) {
-			if (other.id != null)
+			if (other.getId() != null)
 				return false;
-		} else if (!id.equals(other.id))
+		} else if (!id.equals(other.getId()))
 			return false;
 		if (name == null) {
-			if (other.name != null)
+			if (other.getName() != null)
 				return false;
-		} else if (!name.equals(other.name))
+		} else if (!name.equals(other.getName()))
 			return false;
 		if (parent == null) {
-			if (other.parent != null)
+			if (other.getParent() != null)
 				return false;
-		} else if (!parent.equals(other.parent))
+		} else if (!parent.equals(other.getParent()))
 			return false;
 		return true;
 	}
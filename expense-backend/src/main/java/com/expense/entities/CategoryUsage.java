@@ -0,0 +1,51 @@
+package com.expense.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Класс сущности Использование категории: число расходов, ссылающихся на категорию.
+ * Счетчик поддерживается в той же транзакции, что и изменения расходов, и позволяет определить категории без расходов 
+ * без обращения к таблице расходов.
+ * @author Alexandr Trifonov
+ *
+ */
+@Entity
+@Table(name = "category_usage")
+public class CategoryUsage {
+	/**
+	 * Идентификатор категории.
+	 */
+	@Id
+	@Column(name = "category_id")
+	private Integer categoryId;
+	
+	/**
+	 * Число расходов по категории.
+	 */
+	@Column(name = "expense_count", nullable = false)
+	private long expenseCount;
+	
+	protected CategoryUsage() {
+	}
+
+	public CategoryUsage(Integer categoryId, long expenseCount) {
+		this.categoryId = categoryId;
+		this.expenseCount = expenseCount;
+	}
+
+	public Integer getCategoryId() {
+		return categoryId;
+	}
+
+	public long getExpenseCount() {
+		return expenseCount;
+	}
+
+	@Override
+	public String toString() {
+		return "CategoryUsage [categoryId=" + categoryId + ", expenseCount=" + expenseCount + "]";
+	}
+}
@@ -13,6 +13,10 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 
 import com.expense.serializer.LocalDateDeserializer;
@@ -22,24 +26,37 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 /**
  * Класс сущности Расход.
+ * Категория расхода загружается лениво; запросы, результат которых выдается клиенту, 
+ * загружают категорию вместе с её родителем в том же запросе по графу {@link #WITH_CATEGORY}.
  * @author Alexandr Trifonov
  *
  */
 @Entity
 @Table(name = "expense")
+@NamedEntityGraph(name = Expense.WITH_CATEGORY, 
+		attributeNodes = @NamedAttributeNode(value = "category", subgraph = "category"), 
+		subgraphs = @NamedSubgraph(name = "category", attributeNodes = @NamedAttributeNode("parent")))
 public class Expense {
 	/**
-	 * Идентификатор расхода
+	 * Граф загрузки расхода с категорией и родительской категорией - для списков расходов и просмотра одного расхода, 
+	 * в ответах которых категория выдается полностью.
+	 */
+	public final static String WITH_CATEGORY = "Expense.withCategory";
+	
+	/**
+	 * Идентификатор расхода. Идентификаторы выделяются из последовательности блоками по 50 (оптимизатор pooled), 
+	 * поэтому вставки расходов объединяются в пакеты JDBC. Шаг последовательности в базе данных должен совпадать с allocationSize.
 	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "expense_id_seq")
+	@SequenceGenerator(name = "expense_id_seq", sequenceName = "expense_id_seq", allocationSize = 50)
 	@Column(name = "id")
 	private Long id;
 	
 	/**
-	 * Категория расхода
+	 * Категория расхода. Загружается лениво: изменение и удаление расхода используют только идентификатор категории.
 	 */
-	@ManyToOne(fetch = FetchType.EAGER)
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name = "category_id", foreignKey = @ForeignKey(name = "fk_category_id"), nullable = false)
 	protected Category category;
 	
@@ -127,6 +144,23 @@ public class Expense {
 	public Long getId() {
 		return id;
 	}
+	
+	/**
+	 * Копия расхода с теми же значениями полей, включая идентификатор. 
+	 * Используется для фиксации состояния расхода перед его изменением.
+	 * @return Копия расхода.
+	 */
+	public Expense copy() {
+		Expense copy = new Expense();
+		copy.id = id;
+		copy.category = category;
+		copy.count = count;
+		copy.unitPrice = unitPrice;
+		copy.totalPrice = totalPrice;
+		copy.localDate = localDate;
+		copy.note = note;
+		return copy;
+	}
 
 	@Override
 	public String toString() {
@@ -0,0 +1,80 @@
+package com.expense.entities;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+
+/**
+ * Класс сущности Дневной итог расходов: сумма полных цен и число расходов за одну дату по одной категории.
+ * Итоги поддерживаются в той же транзакции, что и изменения расходов, и позволяют строить отчеты 
+ * без суммирования отдельных расходов.
+ * @author Alexandr Trifonov
+ *
+ */
+@Entity
+@Table(name = "expense_daily_rollup")
+@IdClass(ExpenseDailyRollupId.class)
+public class ExpenseDailyRollup {
+	/**
+	 * Дата расходов.
+	 */
+	@Id
+	@Column(name = "local_date")
+	private LocalDate localDate;
+	
+	/**
+	 * Идентификатор категории расходов.
+	 */
+	@Id
+	@Column(name = "category_id")
+	private Integer categoryId;
+	
+	/**
+	 * Сумма полных цен расходов.
+	 */
+	@Column(name = "total_price", nullable = false)
+	private BigDecimal totalPrice;
+	
+	/**
+	 * Число расходов.
+	 */
+	@Column(name = "expense_count", nullable = false)
+	private long expenseCount;
+	
+	protected ExpenseDailyRollup() {
+	}
+
+	public ExpenseDailyRollup(LocalDate localDate, Integer categoryId, BigDecimal totalPrice, long expenseCount) {
+		this.localDate = localDate;
+		this.categoryId = categoryId;
+		this.totalPrice = totalPrice;
+		this.expenseCount = expenseCount;
+	}
+
+	public LocalDate getLocalDate() {
+		return localDate;
+	}
+
+	public Integer getCategoryId() {
+		return categoryId;
+	}
+
+	public BigDecimal getTotalPrice() {
+		return totalPrice;
+	}
+
+	public long getExpenseCount() {
+		return expenseCount;
+	}
+
+	@Override
+	public String toString() {
+		return "ExpenseDailyRollup [localDate=" + localDate + ", categoryId=" + categoryId + ", totalPrice=" + totalPrice
+				+ ", expenseCount=" + expenseCount + "]";
+	}
+}
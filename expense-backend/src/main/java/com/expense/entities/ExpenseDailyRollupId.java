@@ -0,0 +1,57 @@
+package com.expense.entities;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Составной ключ дневного итога расходов: дата и категория.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ExpenseDailyRollupId implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Дата расходов.
+	 */
+	private LocalDate localDate;
+	
+	/**
+	 * Идентификатор категории расходов.
+	 */
+	private Integer categoryId;
+	
+	public ExpenseDailyRollupId() {
+	}
+
+	public ExpenseDailyRollupId(LocalDate localDate, Integer categoryId) {
+		this.localDate = localDate;
+		this.categoryId = categoryId;
+	}
+
+	public LocalDate getLocalDate() {
+		return localDate;
+	}
+
+	public Integer getCategoryId() {
+		return categoryId;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(localDate, categoryId);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ExpenseDailyRollupId other = (ExpenseDailyRollupId) obj;
+		return Objects.equals(localDate, other.localDate) && Objects.equals(categoryId, other.categoryId);
+	}
+}
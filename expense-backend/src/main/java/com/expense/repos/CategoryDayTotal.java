@@ -0,0 +1,29 @@
+package com.expense.repos;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Проекция результата агрегирующего запроса: сумма расходов по категории за день.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface CategoryDayTotal {
+	/**
+	 * Дата расходов.
+	 * @return Дата расходов.
+	 */
+	LocalDate getLocalDate();
+	
+	/**
+	 * Идентификатор категории.
+	 * @return Идентификатор категории.
+	 */
+	Integer getCategoryId();
+	
+	/**
+	 * Сумма полных цен расходов по категории за день.
+	 * @return Сумма расходов.
+	 */
+	BigDecimal getTotal();
+}
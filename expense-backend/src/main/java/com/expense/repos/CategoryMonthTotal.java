@@ -0,0 +1,34 @@
+package com.expense.repos;
+
+import java.math.BigDecimal;
+
+/**
+ * Проекция результата агрегирующего запроса: сумма расходов по категории за месяц.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface CategoryMonthTotal {
+	/**
+	 * Идентификатор категории.
+	 * @return Идентификатор категории.
+	 */
+	Integer getCategoryId();
+	
+	/**
+	 * Год.
+	 * @return Год.
+	 */
+	Integer getYear();
+	
+	/**
+	 * Месяц (1 - 12).
+	 * @return Месяц.
+	 */
+	Integer getMonth();
+	
+	/**
+	 * Сумма полных цен расходов по категории за месяц.
+	 * @return Сумма расходов.
+	 */
+	BigDecimal getTotal();
+}
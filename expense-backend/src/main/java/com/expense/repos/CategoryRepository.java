@@ -4,7 +4,6 @@ import java.util.List;
 
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
-import org.springframework.data.repository.query.Param;
 
 import com.expense.entities.Category;
 /**
@@ -35,6 +34,13 @@ public interface CategoryRepository extends PagingAndSortingRepository<Category,
 	@Query("select c from Category c where c.parent is null order by c.name")
 	List<Category> findByParentNull();
 	
+	/**
+	 * Получить все категории вместе с родительскими категориями одним запросом.
+	 * @return Список всех категорий.
+	 */
+	@Query("select c from Category c left join fetch c.parent")
+	List<Category> findAllWithParent();
+	
 	/**
 	 * Получить все категории из указанного списка с идентификаторами.
 	 * @param list Список идентификаторов.
@@ -44,16 +50,5 @@ public interface CategoryRepository extends PagingAndSortingRepository<Category,
 	
 	
 	
-	/**
-	 * Получить все подкатегории одной определенной категории, по которым нет расхода
-	 * @param id Идентификатор родительской категории
-	 * @return Список подкатегорий, по которым нет расходов.
-	 */
-	@Query("select c from Category c LEFT JOIN Expense e on c = e.category where e.category is null and c.parent.id = :id order by c.name")
-	List<Category> findByParentAndWithoutExpense(@Param("id") Integer id);
-	
-	
-	
-	
 	
 }
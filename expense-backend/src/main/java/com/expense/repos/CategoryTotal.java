@@ -0,0 +1,22 @@
+package com.expense.repos;
+
+import java.math.BigDecimal;
+
+/**
+ * Проекция результата агрегирующего запроса: сумма расходов по категории.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface CategoryTotal {
+	/**
+	 * Идентификатор категории.
+	 * @return Идентификатор категории.
+	 */
+	Integer getCategoryId();
+	
+	/**
+	 * Сумма полных цен расходов по категории.
+	 * @return Сумма расходов.
+	 */
+	BigDecimal getTotal();
+}
@@ -0,0 +1,42 @@
+package com.expense.repos;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+
+import com.expense.entities.CategoryUsage;
+
+/**
+ * Класс репозиторий объектов Использование категории.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface CategoryUsageRepository extends CrudRepository<CategoryUsage, Integer> {
+	
+	/**
+	 * Получить идентификаторы категорий, по которым есть расходы.
+	 * Число прочитанных строк не превышает числа категорий.
+	 * @return Список идентификаторов категорий.
+	 */
+	@Query("select u.categoryId from CategoryUsage u where u.expenseCount > 0")
+	List<Integer> findUsedCategoryIds();
+	
+	/**
+	 * Удалить все счетчики.
+	 * @return Число удаленных строк.
+	 */
+	@Modifying
+	@Query("delete from CategoryUsage u")
+	int deleteAllUsages();
+	
+	/**
+	 * Рассчитать счетчики по всем расходам.
+	 * @return Число созданных строк.
+	 */
+	@Modifying
+	@Query(value = "insert into category_usage (category_id, expense_count) "
+			+ "select category_id, count(*) from expense group by category_id", nativeQuery = true)
+	int insertFromExpenses();
+}
@@ -0,0 +1,132 @@
+package com.expense.repos;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
+
+import com.expense.entities.ExpenseDailyRollup;
+import com.expense.entities.ExpenseDailyRollupId;
+
+/**
+ * Класс репозиторий объектов Дневной итог расходов.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface ExpenseDailyRollupRepository extends PagingAndSortingRepository<ExpenseDailyRollup, ExpenseDailyRollupId> {
+	
+	/**
+	 * Удалить дневной итог, если по нему не осталось расходов.
+	 * @param localDate Дата расходов.
+	 * @param categoryId Идентификатор категории.
+	 * @return Число удаленных строк.
+	 */
+	@Modifying
+	@Query("delete from ExpenseDailyRollup r where r.localDate = :localDate and r.categoryId = :categoryId and r.expenseCount <= 0")
+	int deleteIfEmpty(@Param("localDate") LocalDate localDate, @Param("categoryId") Integer categoryId);
+	
+	/**
+	 * Удалить все дневные итоги.
+	 * @return Число удаленных строк.
+	 */
+	@Modifying
+	@Query("delete from ExpenseDailyRollup r")
+	int deleteAllRollups();
+	
+	/**
+	 * Рассчитать дневные итоги по всем расходам.
+	 * @return Число созданных строк.
+	 */
+	@Modifying
+	@Query(value = "insert into expense_daily_rollup (local_date, category_id, total_price, expense_count) "
+			+ "select local_date, category_id, sum(total_price), count(*) from expense group by local_date, category_id", nativeQuery = true)
+	int insertFromExpenses();
+	
+	/**
+	 * Удалить дневные итоги в периоде дат.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Число удаленных строк.
+	 */
+	@Modifying
+	@Query("delete from ExpenseDailyRollup r where r.localDate between :startDate and :finishDate")
+	int deleteRollupsBetween(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate);
+	
+	/**
+	 * Рассчитать дневные итоги по расходам в периоде дат.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Число созданных строк.
+	 */
+	@Modifying
+	@Query(value = "insert into expense_daily_rollup (local_date, category_id, total_price, expense_count) "
+			+ "select local_date, category_id, sum(total_price), count(*) from expense where local_date between :startDate and :finishDate "
+			+ "group by local_date, category_id", nativeQuery = true)
+	int insertFromExpensesBetween(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate);
+	
+	/**
+	 * Получить суммы расходов в указанном периоде дат по родительским категориям. 
+	 * Расходы по подкатегории учитываются в сумме её родительской категории. Возвращается по одной строке 
+	 * на родительскую категорию, по которой есть расходы. Число просуммированных строк зависит от числа дней 
+	 * и категорий, но не от числа расходов.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Список сумм расходов по родительским категориям.
+	 */
+	@Query("select coalesce(c.parent.id, c.id) as categoryId, sum(r.totalPrice) as total from ExpenseDailyRollup r, Category c "
+			+ "where c.id = r.categoryId and r.localDate between :startDate and :finishDate group by coalesce(c.parent.id, c.id)")
+	List<CategoryTotal> sumTotalPriceByParentCategory(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate);
+	
+	/**
+	 * Получить суммы расходов в указанном периоде дат по каждой из указанных категорий. 
+	 * Возвращается по одной строке на категорию, по которой есть расходы.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Список идентификаторов категорий.
+	 * @return Список сумм расходов по категориям.
+	 */
+	@Query("select r.categoryId as categoryId, sum(r.totalPrice) as total from ExpenseDailyRollup r "
+			+ "where r.localDate between :startDate and :finishDate and r.categoryId in :categoryIds group by r.categoryId")
+	List<CategoryTotal> sumTotalPriceByCategory(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate, 
+			@Param("categoryIds") List<Integer> categoryIds);
+	
+	/**
+	 * Получить суммы расходов по дням в указанном периоде дат по родительским категориям.
+	 * Расходы по подкатегории учитываются в сумме её родительской категории. Возвращается по одной строке
+	 * на день и родительскую категорию, по которой в этот день есть расходы.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Список сумм расходов по дням и родительским категориям.
+	 */
+	@Query("select r.localDate as localDate, coalesce(c.parent.id, c.id) as categoryId, sum(r.totalPrice) as total "
+			+ "from ExpenseDailyRollup r, Category c where c.id = r.categoryId and r.localDate between :startDate and :finishDate "
+			+ "group by r.localDate, coalesce(c.parent.id, c.id)")
+	List<CategoryDayTotal> sumDailyTotalPriceByParentCategory(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate);
+	
+	/**
+	 * Получить суммы расходов по дням в указанном периоде дат по каждой из указанных категорий - сами дневные итоги.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Список идентификаторов категорий.
+	 * @return Список сумм расходов по дням и категориям.
+	 */
+	@Query("select r.localDate as localDate, r.categoryId as categoryId, r.totalPrice as total from ExpenseDailyRollup r "
+			+ "where r.localDate between :startDate and :finishDate and r.categoryId in :categoryIds")
+	List<CategoryDayTotal> findDailyTotalPriceByCategory(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate, 
+			@Param("categoryIds") List<Integer> categoryIds);
+	
+	/**
+	 * Получить суммы расходов по месяцам в указанном периоде дат по каждой категории.
+	 * Возвращается по одной строке на категорию и месяц, в котором по категории есть расходы.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Список сумм расходов по категориям и месяцам.
+	 */
+	@Query("select r.categoryId as categoryId, year(r.localDate) as year, month(r.localDate) as month, sum(r.totalPrice) as total "
+			+ "from ExpenseDailyRollup r where r.localDate between :startDate and :finishDate "
+			+ "group by r.categoryId, year(r.localDate), month(r.localDate)")
+	List<CategoryMonthTotal> sumMonthlyTotalPriceByCategory(@Param("startDate") LocalDate startDate, @Param("finishDate") LocalDate finishDate);
+}
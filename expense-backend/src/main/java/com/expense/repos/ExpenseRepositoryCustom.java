@@ -0,0 +1,39 @@
+package com.expense.repos;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import com.expense.entities.Expense;
+
+/**
+ * Дополнительные методы репозитория объектов Расход, которые не выражаются через производные запросы Spring Data.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface ExpenseRepositoryCustom {
+	/**
+	 * Получить не более указанного числа расходов, удовлетворяющих спецификации, в указанном порядке.
+	 * В отличие от {@link org.springframework.data.jpa.repository.JpaSpecificationExecutor#findAll(Specification, org.springframework.data.domain.Pageable)}
+	 * не выполняет запрос подсчета общего числа строк.
+	 * @param specification Спецификация отбора расходов.
+	 * @param sort Объект сортировки.
+	 * @param limit Максимальное число расходов.
+	 * @return Список отсортированных расходов длиной не более limit.
+	 */
+	List<Expense> findFirst(Specification<Expense> specification, Sort sort, int limit);
+	
+	/**
+	 * Получить поток расходов, удовлетворяющих спецификации, в указанном порядке.
+	 * Строки читаются из курсора базы данных порциями по fetchSize, каждый расход отсоединяется от контекста персистентности
+	 * сразу после чтения, поэтому потребление памяти не зависит от числа строк. 
+	 * Поток должен использоваться и закрываться внутри транзакции.
+	 * @param specification Спецификация отбора расходов.
+	 * @param sort Объект сортировки.
+	 * @param fetchSize Число строк, получаемых из курсора за одно обращение к базе данных.
+	 * @return Поток отсортированных расходов.
+	 */
+	Stream<Expense> stream(Specification<Expense> specification, Sort sort, int fetchSize);
+}
@@ -0,0 +1,67 @@
+package com.expense.repos;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import com.expense.entities.Expense;
+
+/**
+ * Реализация дополнительных методов репозитория объектов Расход.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ExpenseRepositoryImpl implements ExpenseRepositoryCustom {
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public List<Expense> findFirst(Specification<Expense> specification, Sort sort, int limit) {
+		return entityManager.createQuery(criteriaQuery(specification, sort))
+				.setHint(EntityGraphType.FETCH.getKey(), entityManager.getEntityGraph(Expense.WITH_CATEGORY))
+				.setMaxResults(limit)
+				.getResultList();
+	}
+	
+	@Override
+	public Stream<Expense> stream(Specification<Expense> specification, Sort sort, int fetchSize) {
+		//категория и её родитель загружаются в том же запросе, чтобы расход был полностью загружен до отсоединения
+		//и при открытом курсоре не выполнялись дополнительные запросы за категориями
+		return entityManager.createQuery(criteriaQuery(specification, sort))
+				.setHint(EntityGraphType.FETCH.getKey(), entityManager.getEntityGraph(Expense.WITH_CATEGORY))
+				.setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+				.setHint(QueryHints.HINT_READONLY, true)
+				.getResultStream()
+				.map(expense -> {
+					entityManager.detach(expense);
+					return expense;
+				});
+	}
+	
+	/**
+	 * Построение запроса Criteria API по спецификации и объекту сортировки.
+	 * @param specification Спецификация отбора расходов.
+	 * @param sort Объект сортировки.
+	 * @return Запрос Criteria API.
+	 */
+	private CriteriaQuery<Expense> criteriaQuery(Specification<Expense> specification, Sort sort) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Expense> query = cb.createQuery(Expense.class);
+		Root<Expense> root = query.from(Expense.class);
+		query.select(root).where(specification.toPredicate(root, query, cb));
+		query.orderBy(QueryUtils.toOrders(sort, root, cb));
+		return query;
+	}
+}
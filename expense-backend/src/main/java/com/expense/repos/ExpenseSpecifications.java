@@ -0,0 +1,110 @@
+package com.expense.repos;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import javax.persistence.criteria.Path;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+
+/**
+ * Набор спецификаций (условий отбора) для запросов к объектам Расход.
+ * Спецификации комбинируются через {@link Specification#and(Specification)}, поэтому любое сочетание фильтров
+ * превращается в один параметризованный запрос, а добавление нового фильтра не требует нового метода в репозитории.
+ * Все значения передаются в запрос как параметры, а не как литералы, поэтому число различных планов запросов ограничено
+ * числом сочетаний фильтров.
+ * @author Alexandr Trifonov
+ *
+ */
+public final class ExpenseSpecifications {
+	/**
+	 * Символ экранирования для выражений LIKE.
+	 */
+	private final static char LIKE_ESCAPE = '\\';
+
+	private ExpenseSpecifications() {
+	}
+
+	/**
+	 * Расходы в указанном периоде дат.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Спецификация отбора расходов по периоду дат.
+	 */
+	public static Specification<Expense> localDateBetween(LocalDate startDate, LocalDate finishDate) {
+		return (root, query, cb) -> cb.between(root.get("localDate"), startDate, finishDate);
+	}
+
+	/**
+	 * Расходы по одной из указанных категорий. Сравнение выполняется по внешнему ключу category_id, без соединения с таблицей категорий.
+	 * @param categories Список категорий.
+	 * @return Спецификация отбора расходов по списку категорий.
+	 */
+	public static Specification<Expense> categoryIn(Collection<Category> categories) {
+		List<Integer> ids = categories.stream().map(Category::getId).collect(Collectors.toList());
+		return (root, query, cb) -> root.get("category").get("id").in(ids);
+	}
+
+	/**
+	 * Расходы в указанном диапазоне полной цены.
+	 * @param totalPriceFrom Начальная цена диапазона.
+	 * @param totalPriceTo Конечная цена диапазона.
+	 * @return Спецификация отбора расходов по диапазону цен.
+	 */
+	public static Specification<Expense> totalPriceBetween(BigDecimal totalPriceFrom, BigDecimal totalPriceTo) {
+		return (root, query, cb) -> cb.between(root.get("totalPrice"), totalPriceFrom, totalPriceTo);
+	}
+
+	/**
+	 * Расходы, примечание которых содержит указанную символьную последовательность без учета регистра.
+	 * Символы шаблона LIKE (% и _) в последовательности экранируются.
+	 * Условие имеет вид lower(note) LIKE '%...%' и обслуживается триграммным индексом expense_note_trgm_idx (см. schema.sql), 
+	 * поэтому выражение lower(note) нельзя менять без изменения индекса.
+	 * @param note Символьная последовательность.
+	 * @return Спецификация отбора расходов по примечанию.
+	 */
+	public static Specification<Expense> noteContainsIgnoreCase(String note) {
+		String pattern = "%" + escapeLike(note.toLowerCase(Locale.ROOT)) + "%";
+		return (root, query, cb) -> cb.like(cb.lower(root.get("note")), pattern, LIKE_ESCAPE);
+	}
+
+	/**
+	 * Расходы, следующие после указанной позиции в порядке сортировки (property, id).
+	 * Используется для постраничного получения расходов методом keyset: условие опирается на значения последней строки
+	 * предыдущей страницы, поэтому стоимость запроса любой страницы не зависит от её номера.
+	 * @param property Имя поля сортировки.
+	 * @param value Значение поля сортировки в последней строке предыдущей страницы.
+	 * @param id Идентификатор расхода в последней строке предыдущей страницы.
+	 * @return Спецификация отбора расходов после указанной позиции.
+	 */
+	public static <T extends Comparable<? super T>> Specification<Expense> after(String property, T value, Long id) {
+		return (root, query, cb) -> {
+			Path<T> path = root.get(property);
+			return cb.or(cb.greaterThan(path, value), 
+					cb.and(cb.equal(path, value), cb.greaterThan(root.<Long>get("id"), id)));
+		};
+	}
+
+	/**
+	 * Экранирование специальных символов шаблона LIKE.
+	 * @param value Исходная строка.
+	 * @return Строка с экранированными символами %, _ и символом экранирования.
+	 */
+	private static String escapeLike(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (char c : value.toCharArray()) {
+			if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+				sb.append(LIKE_ESCAPE);
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,91 @@
+package com.expense.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма с фиксированными границами интервалов в формате Prometheus: число значений не больше каждой границы,
+ * общее число и сумма значений. Запись значения - двоичный поиск интервала и увеличение счетчиков LongAdder без блокировок,
+ * поэтому гистограмма пригодна для записи из обработчиков запросов.
+ * @author Alexandr Trifonov
+ *
+ */
+public class BucketHistogram {
+	/**
+	 * Границы интервалов для времени в секундах: от 0.5 мс до 10 с.
+	 */
+	public static final double[] SECONDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+	/**
+	 * Границы интервалов для количеств (запросов SQL, строк): от 0 до 100000.
+	 */
+	public static final double[] COUNTS = {0, 1, 2, 5, 10, 20, 50, 100, 1000, 10000, 100000};
+
+	/**
+	 * Верхние границы интервалов по возрастанию.
+	 */
+	private final double[] bounds;
+
+	/**
+	 * Число значений в каждом интервале; последний интервал - значения больше последней границы.
+	 */
+	private final LongAdder[] buckets;
+
+	/**
+	 * Сумма значений.
+	 */
+	private final DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 * @param bounds Верхние границы интервалов по возрастанию.
+	 */
+	public BucketHistogram(double[] bounds) {
+		this.bounds = bounds.clone();
+		this.buckets = new LongAdder[bounds.length + 1];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Запись значения.
+	 * @param value Значение.
+	 */
+	public void record(double value) {
+		int i = Arrays.binarySearch(bounds, value);
+		buckets[i >= 0 ? i : -i - 1].increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Запись гистограммы в текстовом формате Prometheus: строки name_bucket{le=...}, name_sum и name_count.
+	 * @param out Текст метрик.
+	 * @param name Имя метрики.
+	 * @param labels Метки в виде name="value",name="value" или пустая строка.
+	 */
+	public void writeTo(StringBuilder out, String name, String labels) {
+		String prefix = labels.isEmpty() ? "" : labels + ",";
+		long count = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			count += buckets[i].sum();
+			out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ").append(count).append('\n');
+		}
+		count += buckets[bounds.length].sum();
+		out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(count).append('\n');
+		String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_sum").append(braces).append(' ').append(sum.sum()).append('\n');
+		out.append(name).append("_count").append(braces).append(' ').append(count).append('\n');
+	}
+
+	/**
+	 * @return Общее число записанных значений.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+}
@@ -2,12 +2,14 @@ package com.expense.service;
 
 import java.util.ArrayList;
 import java.util.List;
-
-import javax.sql.DataSource;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.expense.entities.Category;
@@ -15,6 +17,8 @@ import com.expense.repos.CategoryRepository;
 
 /**
  * Класс из уровня обслуживания для доступа к объектам Категория.
+ * Чтение категорий выполняется из снимка дерева категорий в памяти ({@link CategoryTreeCache}), 
+ * который сбрасывается после фиксации каждой транзакции, изменившей категории.
  * @author Alexandr Trifonov
  *
  */
@@ -26,9 +30,17 @@ public class CategoryService {
 	 */
 	private CategoryRepository categoryRepo;
 	/**
-	 * Объект JdbcTemplate для запросов к базе данных вне JPA.
+	 * Кэш снимка дерева категорий.
+	 */
+	private CategoryTreeCache treeCache;
+	/**
+	 * Сервис счетчиков расходов по категориям.
 	 */
-	private JdbcTemplate jdbcTemplate;
+	private CategoryUsageService usageService;
+	/**
+	 * Версии данных для условных GET запросов.
+	 */
+	private DataVersion dataVersion;
 	
 	@Autowired
 	public void setCategoryRepo(CategoryRepository categoryRepo) {
@@ -36,18 +48,27 @@ public class CategoryService {
 	}
 	
 	@Autowired
-	public void setJdbcTemplate(DataSource dataSource) {
-		this.jdbcTemplate = new JdbcTemplate(dataSource);
-		
+	public void setTreeCache(CategoryTreeCache treeCache) {
+		this.treeCache = treeCache;
+	}
+	
+	@Autowired
+	public void setUsageService(CategoryUsageService usageService) {
+		this.usageService = usageService;
+	}
+	
+	@Autowired
+	public void setDataVersion(DataVersion dataVersion) {
+		this.dataVersion = dataVersion;
 	}
 	
 	/**
 	 * Получение родительских категорий.
 	 * @return Список родительских категорий.
 	 */
-	@Transactional(readOnly = true)
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public List<Category> getParentCategories() {
-		return this.categoryRepo.findByParentNull();
+		return new ArrayList<>(treeCache.get().getParents());
 	}
 	
 	/**
@@ -56,6 +77,7 @@ public class CategoryService {
 	 * @return Сохраненная категория.
 	 */
 	public Category save(Category category) {
+		categoriesChanged();
 		return this.categoryRepo.save(category);
 	}
 	
@@ -63,10 +85,25 @@ public class CategoryService {
 	 * Получение категории по идентификатору.
 	 * @param id Идентификатор категории
 	 * @return Найденная по идентификатору категория.
+	 * @throws NoSuchElementException если категории с указанным идентификатором нет.
 	 */
-	@Transactional(readOnly = true)
-	public Category findCategory(int id) {
-		return this.categoryRepo.findById(id).get();
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public Category findCategory(int id) throws NoSuchElementException {
+		Category category = treeCache.get().get(id);
+		if (category == null) {
+			throw new NoSuchElementException("No category with id " + id);
+		}
+		return category;
+	}
+	
+	/**
+	 * Получение категории по имени.
+	 * @param name Имя категории
+	 * @return Категория с указанным именем или пустой Optional, если такой категории нет.
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public Optional<Category> findCategoryByName(String name) {
+		return Optional.ofNullable(treeCache.get().getByName(name));
 	}
 	
 	/**
@@ -74,6 +111,7 @@ public class CategoryService {
 	 * @param id Идентификатор категории
 	 */
 	public void deleteCategory(int id) {
+		categoriesChanged();
 		this.categoryRepo.deleteById(id);
 	}
 	
@@ -82,6 +120,7 @@ public class CategoryService {
 	 * @param categories Список категорий для удаления
 	 */
 	public void deleteCategoryList(List<Category> categories) {
+		categoriesChanged();
 		this.categoryRepo.deleteAll(categories);
 	}
 	
@@ -90,23 +129,27 @@ public class CategoryService {
 	 * @param parent Родительская категория.
 	 * @return Список подкатегорий для указанной категории.
 	 */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	public List<Category> getChilds(Category parent) {		
-		return categoryRepo.findByParentOrderByNameAsc(parent);
+		return new ArrayList<>(treeCache.get().getChildren(parent.getId()));
 	}
 	
 	/**
 	 * Получение списка всех родительских категорий, по которым нет расходов ни по самим категориям ни по подкатегориям (при наличии подкатегорий).
+	 * Наличие расходов определяется по счетчикам расходов категорий ({@link CategoryUsageService}), без обращения к таблице расходов.
 	 * @return Список родительских категорий без расходов.
 	 */
 	@Transactional(readOnly = true)
 	public List<Category> getParentCategoriesNoExpense() {
+		CategoryTree tree = treeCache.get();
+		Set<Integer> usedIds = usageService.getUsedCategoryIds();
 		List<Category> categoryList = new ArrayList<>();
-		List<Integer> idList = jdbcTemplate.queryForList("select category.id from category where category.parent_id is null "
-				+ "and category.id not in (with recursive included_category(id, parent_id)"
-				+ " as (select id, parent_id from category where category.id in (select category.id from category right outer join expense on expense.category_id = category.id)"
-				+ " union all select c.id, c.parent_id from included_category ct, category c where c.id = ct.parent_id) select id from included_category where parent_id is null)", Integer.class);
-		Iterable<Category> categoryIterable = categoryRepo.findByIdInOrderByNameAsc(idList);
-		categoryIterable.forEach(categoryList::add);
+		for (Category parent : tree.getParents()) {
+			if (!usedIds.contains(parent.getId()) 
+					&& tree.getChildren(parent.getId()).stream().noneMatch(child -> usedIds.contains(child.getId()))) {
+				categoryList.add(parent);
+			}
+		}
 		return categoryList;
 	}
 	
@@ -117,6 +160,18 @@ public class CategoryService {
 	 */
 	@Transactional(readOnly = true)
 	public List<Category> getChildCategoriesNoExpense(int parentId) {
-		return categoryRepo.findByParentAndWithoutExpense(parentId);
+		Set<Integer> usedIds = usageService.getUsedCategoryIds();
+		return treeCache.get().getChildren(parentId).stream()
+				.filter(child -> !usedIds.contains(child.getId()))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Отметка изменения категорий: после фиксации транзакции сбрасывается снимок дерева категорий 
+	 * и увеличивается версия категорий.
+	 */
+	private void categoriesChanged() {
+		treeCache.invalidateAfterCommit();
+		dataVersion.categoriesChanged();
 	}
 }
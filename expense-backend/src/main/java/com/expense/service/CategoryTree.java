@@ -0,0 +1,128 @@
+package com.expense.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.expense.entities.Category;
+
+/**
+ * Неизменяемый снимок дерева категорий: индекс категорий по идентификатору, списки подкатегорий по родительской категории
+ * и индекс категорий по имени. Списки родительских категорий и подкатегорий упорядочены по имени.
+ * Объекты Категория в снимке разделяются между потоками и не должны изменяться.
+ * @author Alexandr Trifonov
+ *
+ */
+public final class CategoryTree {
+	/**
+	 * Порядок категорий по имени.
+	 */
+	private final static Comparator<Category> BY_NAME = Comparator.comparing(Category::getName);
+	
+	/**
+	 * Версия снимка. Увеличивается при каждом изменении категорий.
+	 */
+	private final long version;
+	
+	/**
+	 * Категории по идентификатору.
+	 */
+	private final Map<Integer, Category> byId;
+	
+	/**
+	 * Категории по имени.
+	 */
+	private final Map<String, Category> byName;
+	
+	/**
+	 * Подкатегории по идентификатору родительской категории.
+	 */
+	private final Map<Integer, List<Category>> childrenByParentId;
+	
+	/**
+	 * Родительские категории.
+	 */
+	private final List<Category> parents;
+	
+	/**
+	 * Построение снимка по списку всех категорий.
+	 * @param version Версия снимка.
+	 * @param categories Все категории.
+	 */
+	public CategoryTree(long version, List<Category> categories) {
+		this.version = version;
+		Map<Integer, Category> byId = new HashMap<>();
+		Map<String, Category> byName = new HashMap<>();
+		Map<Integer, List<Category>> childrenByParentId = new HashMap<>();
+		List<Category> parents = new ArrayList<>();
+		for (Category category : categories) {
+			byId.put(category.getId(), category);
+			byName.put(category.getName(), category);
+			if (category.getParent() == null) {
+				parents.add(category);
+			} else {
+				childrenByParentId.computeIfAbsent(category.getParent().getId(), id -> new ArrayList<>()).add(category);
+			}
+		}
+		parents.sort(BY_NAME);
+		childrenByParentId.replaceAll((id, children) -> {
+			children.sort(BY_NAME);
+			return Collections.unmodifiableList(children);
+		});
+		this.byId = Collections.unmodifiableMap(byId);
+		this.byName = Collections.unmodifiableMap(byName);
+		this.childrenByParentId = Collections.unmodifiableMap(childrenByParentId);
+		this.parents = Collections.unmodifiableList(parents);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Категория по идентификатору.
+	 * @param id Идентификатор категории.
+	 * @return Категория или null, если категории нет.
+	 */
+	public Category get(int id) {
+		return byId.get(id);
+	}
+	
+	/**
+	 * Категория по имени.
+	 * @param name Имя категории.
+	 * @return Категория или null, если категории нет.
+	 */
+	public Category getByName(String name) {
+		return byName.get(name);
+	}
+	
+	/**
+	 * Подкатегории указанной категории, упорядоченные по имени.
+	 * @param parentId Идентификатор родительской категории.
+	 * @return Неизменяемый список подкатегорий.
+	 */
+	public List<Category> getChildren(int parentId) {
+		return childrenByParentId.getOrDefault(parentId, Collections.emptyList());
+	}
+	
+	/**
+	 * Родительские категории, упорядоченные по имени.
+	 * @return Неизменяемый список родительских категорий.
+	 */
+	public List<Category> getParents() {
+		return parents;
+	}
+	
+	/**
+	 * Все категории.
+	 * @return Неизменяемая коллекция категорий.
+	 */
+	public Collection<Category> getAll() {
+		return byId.values();
+	}
+}
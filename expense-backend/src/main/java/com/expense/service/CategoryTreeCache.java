@@ -0,0 +1,115 @@
+package com.expense.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.expense.entities.Category;
+import com.expense.repos.CategoryRepository;
+
+/**
+ * Кэш снимка дерева категорий. Снимок загружается одним запросом при первом обращении и заменяется целиком
+ * после фиксации транзакции, изменившей категории. Чтение снимка не обращается к базе данных.
+ * Вместе со снимком сбрасываются категории в кэше второго уровня Hibernate.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class CategoryTreeCache {
+	private static Logger logger = LoggerFactory.getLogger(CategoryTreeCache.class);
+	
+	/**
+	 * Репозиторий Категорий.
+	 */
+	private CategoryRepository categoryRepo;
+	
+	/**
+	 * Фабрика EntityManager для сброса кэша второго уровня.
+	 */
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+	
+	/**
+	 * Текущий снимок или null, если снимок нужно загрузить.
+	 */
+	private volatile CategoryTree tree;
+	
+	/**
+	 * Поколение данных категорий. Увеличивается при каждом изменении категорий, 
+	 * чтобы снимок, загруженный одновременно с изменением, не заменил более новые данные.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+	
+	@Autowired
+	public void setCategoryRepo(CategoryRepository categoryRepo) {
+		this.categoryRepo = categoryRepo;
+	}
+	
+	/**
+	 * Получение текущего снимка дерева категорий.
+	 * @return Снимок дерева категорий.
+	 */
+	public CategoryTree get() {
+		CategoryTree current = tree;
+		if (current == null) {
+			current = load();
+		}
+		return current;
+	}
+	
+	/**
+	 * Сброс снимка после фиксации текущей транзакции (или сразу, если транзакции нет). 
+	 * Следующее обращение загрузит новый снимок.
+	 */
+	public void invalidateAfterCommit() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					invalidate();
+				}
+			});
+		} else {
+			invalidate();
+		}
+	}
+	
+	/**
+	 * Сброс снимка, а также категорий в кэше второго уровня Hibernate. Поколение и снимок меняются под той же блокировкой,
+	 * что и установка загруженного снимка, поэтому сброс не может попасть между проверкой поколения и установкой снимка.
+	 */
+	public void invalidate() {
+		synchronized (this) {
+			generation.incrementAndGet();
+			tree = null;
+		}
+		entityManagerFactory.getCache().evict(Category.class);
+	}
+	
+	/**
+	 * Загрузка снимка из базы данных. Снимок устанавливается, только если за время загрузки категории не изменялись;
+	 * проверка поколения и установка снимка выполняются под блокировкой, общей со сбросом снимка.
+	 * @return Загруженный снимок.
+	 */
+	private synchronized CategoryTree load() {
+		long loadedGeneration = generation.get();
+		CategoryTree current = tree;
+		if (current != null) {
+			return current;
+		}
+		CategoryTree loaded = new CategoryTree(loadedGeneration, categoryRepo.findAllWithParent());
+		if (generation.get() == loadedGeneration) {
+			tree = loaded;
+		}
+		logger.debug("Category tree loaded, version = {}, categories = {}", loadedGeneration, loaded.getAll().size());
+		return loaded;
+	}
+}
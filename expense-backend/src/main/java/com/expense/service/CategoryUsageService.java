@@ -0,0 +1,157 @@
+package com.expense.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.expense.entities.Expense;
+import com.expense.repos.CategoryUsageRepository;
+
+/**
+ * Класс из уровня обслуживания для поддержки и чтения счетчиков расходов по категориям (таблица category_usage).
+ * Изменения расходов, в том числе перенос расхода в другую категорию, накапливаются в пределах транзакции 
+ * и записываются одним обновлением на категорию непосредственно перед фиксацией транзакции.
+ * @author Alexandr Trifonov
+ *
+ */
+@Transactional
+@Service
+public class CategoryUsageService implements ExpenseChangeListener {
+	private static Logger logger = LoggerFactory.getLogger(CategoryUsageService.class);
+	
+	/**
+	 * Репозиторий счетчиков расходов по категориям.
+	 */
+	private CategoryUsageRepository usageRepo;
+	
+	/**
+	 * Версии данных для условных GET запросов.
+	 */
+	private DataVersion dataVersion;
+	
+	/**
+	 * Добавление к счетчику с созданием счетчика при его отсутствии.
+	 */
+	private final static CounterUpsert USAGE_UPSERT = new CounterUpsert("category_usage", 
+			new String[] {"category_id"}, new String[] {"expense_count"});
+	
+	/**
+	 * EntityManager текущей транзакции для записи счетчиков.
+	 */
+	@PersistenceContext
+	private EntityManager entityManager;
+	
+	@Autowired
+	public void setUsageRepo(CategoryUsageRepository usageRepo) {
+		this.usageRepo = usageRepo;
+	}
+	
+	@Autowired
+	public void setDataVersion(DataVersion dataVersion) {
+		this.dataVersion = dataVersion;
+	}
+
+	@Override
+	public void expenseAdded(Expense expense) {
+		addDelta(expense.getCategory().getId(), 1);
+	}
+
+	@Override
+	public void expenseRemoved(Expense expense) {
+		addDelta(expense.getCategory().getId(), -1);
+	}
+	
+	/**
+	 * Получение идентификаторов категорий, по которым есть расходы.
+	 * @return Множество идентификаторов категорий.
+	 */
+	@Transactional(readOnly = true)
+	public Set<Integer> getUsedCategoryIds() {
+		return new HashSet<>(usageRepo.findUsedCategoryIds());
+	}
+	
+	/**
+	 * Пересчет всех счетчиков по таблице расходов. Используется для первоначального заполнения 
+	 * и для восстановления счетчиков после изменения расходов в обход приложения.
+	 * @return Число рассчитанных счетчиков.
+	 */
+	public int rebuild() {
+		usageRepo.deleteAllUsages();
+		int rows = usageRepo.insertFromExpenses();
+		dataVersion.expensesChanged();
+		logger.info("Category usage rebuilt, rows = {}", rows);
+		return rows;
+	}
+	
+	/**
+	 * Учет изменения числа расходов категории в накопленных изменениях текущей транзакции.
+	 * @param categoryId Идентификатор категории.
+	 * @param count 1 при добавлении расхода, -1 при удалении.
+	 */
+	private void addDelta(Integer categoryId, long count) {
+		Map<Integer, Long> deltas = currentDeltas();
+		deltas.merge(categoryId, count, Long::sum);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			applyDeltas(deltas);
+		}
+	}
+	
+	/**
+	 * Получение накопленных изменений текущей транзакции. При первом обращении в транзакции регистрируется 
+	 * синхронизация, которая записывает изменения в счетчики перед фиксацией транзакции.
+	 * @return Накопленные изменения по идентификатору категории.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Integer, Long> currentDeltas() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return new HashMap<>();
+		}
+		Map<Integer, Long> deltas = (Map<Integer, Long>) TransactionSynchronizationManager.getResource(this);
+		if (deltas == null) {
+			Map<Integer, Long> newDeltas = new HashMap<>();
+			TransactionSynchronizationManager.bindResource(this, newDeltas);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					applyDeltas(newDeltas);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(CategoryUsageService.this);
+				}
+			});
+			deltas = newDeltas;
+		}
+		return deltas;
+	}
+	
+	/**
+	 * Запись накопленных изменений в счетчики. Изменения, взаимно погасившие друг друга 
+	 * (например, расход перенесен в другую категорию и обратно), не записываются.
+	 * @param deltas Накопленные изменения.
+	 */
+	private void applyDeltas(Map<Integer, Long> deltas) {
+		//счетчики изменяются в порядке идентификаторов категорий, чтобы транзакции с несколькими счетчиками не взаимоблокировались
+		new TreeMap<>(deltas).forEach((categoryId, count) -> {
+			if (count == 0) {
+				return;
+			}
+			USAGE_UPSERT.add(entityManager, new Object[] {categoryId}, new Object[] {count});
+		});
+		deltas.clear();
+	}
+}
@@ -0,0 +1,156 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+import com.expense.jsonview.View;
+import com.expense.serializer.LocalDateSerializer;
+import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Нормализованный список расходов для компактной выдачи: справочник категорий передается один раз на ответ,
+ * а расходы ссылаются на категории по идентификатору. В обычном json ответе каждый расход содержит полную
+ * категорию вместе с родительской, что составляет большую часть объема ответа.
+ * <p>
+ * Поля категорий справочника отмечены теми же представлениями (JsonView), что и поля {@link Category}.
+ * @author Alexandr Trifonov
+ *
+ */
+public class CompactExpenseList {
+	/**
+	 * Справочник категорий, на которые ссылаются расходы, вместе с их родительскими категориями.
+	 */
+	private final Collection<CategoryEntry> categories;
+
+	/**
+	 * Расходы.
+	 */
+	private final List<ExpenseRow> expenses;
+
+	private CompactExpenseList(Collection<CategoryEntry> categories, List<ExpenseRow> expenses) {
+		this.categories = categories;
+		this.expenses = expenses;
+	}
+
+	/**
+	 * Построение нормализованного списка расходов. Порядок расходов сохраняется.
+	 * @param expenses Список расходов.
+	 * @return Нормализованный список расходов.
+	 */
+	public static CompactExpenseList of(List<Expense> expenses) {
+		Map<Integer, CategoryEntry> categories = new LinkedHashMap<>();
+		List<ExpenseRow> rows = new ArrayList<>(expenses.size());
+		for (Expense expense : expenses) {
+			Category category = expense.getCategory();
+			//родительская категория добавляется в справочник перед дочерней
+			if (category.getParent() != null) {
+				categories.computeIfAbsent(category.getParent().getId(), id -> new CategoryEntry(category.getParent()));
+			}
+			categories.computeIfAbsent(category.getId(), id -> new CategoryEntry(category));
+			rows.add(new ExpenseRow(expense));
+		}
+		return new CompactExpenseList(categories.values(), rows);
+	}
+
+	public Collection<CategoryEntry> getCategories() {
+		return categories;
+	}
+
+	public List<ExpenseRow> getExpenses() {
+		return expenses;
+	}
+
+	/**
+	 * Категория справочника. Родительская категория указывается идентификатором.
+	 */
+	public static class CategoryEntry {
+		@JsonView(View.Public.class)
+		private final Integer id;
+
+		@JsonView(View.Public.class)
+		private final String name;
+
+		@JsonView(View.Internal.class)
+		private final Integer parentId;
+
+		private CategoryEntry(Category category) {
+			this.id = category.getId();
+			this.name = category.getName();
+			this.parentId = category.getParent() == null ? null : category.getParent().getId();
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Integer getParentId() {
+			return parentId;
+		}
+	}
+
+	/**
+	 * Расход со ссылкой на категорию по идентификатору.
+	 */
+	public static class ExpenseRow {
+		private final Long id;
+		private final Integer categoryId;
+		private final int count;
+		private final BigDecimal unitPrice;
+		private final BigDecimal totalPrice;
+
+		@JsonSerialize(using = LocalDateSerializer.class)
+		private final LocalDate localDate;
+
+		private final String note;
+
+		private ExpenseRow(Expense expense) {
+			this.id = expense.getId();
+			this.categoryId = expense.getCategory().getId();
+			this.count = expense.getCount();
+			this.unitPrice = expense.getUnitPrice();
+			this.totalPrice = expense.getTotalPrice();
+			this.localDate = expense.getLocalDate();
+			this.note = expense.getNote();
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public Integer getCategoryId() {
+			return categoryId;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public BigDecimal getUnitPrice() {
+			return unitPrice;
+		}
+
+		public BigDecimal getTotalPrice() {
+			return totalPrice;
+		}
+
+		public LocalDate getLocalDate() {
+			return localDate;
+		}
+
+		public String getNote() {
+			return note;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.expense.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Метрики пула соединений с базой данных. Пул передает сюда состояние (активные, свободные, ожидающие соединения) 
+ * и сообщает о каждом получении соединения, поэтому метрики собираются без опроса пула.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+	/**
+	 * Состояние пула или null, если пул еще не создан.
+	 */
+	private volatile PoolStats poolStats;
+	
+	/**
+	 * Число полученных из пула соединений.
+	 */
+	private final LongAdder acquireCount = new LongAdder();
+	
+	/**
+	 * Суммарное время ожидания соединения, нс.
+	 */
+	private final LongAdder acquireNanos = new LongAdder();
+	
+	/**
+	 * Максимальное время ожидания соединения, нс.
+	 */
+	private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * Суммарное время использования соединений, мс.
+	 */
+	private final LongAdder usageMillis = new LongAdder();
+	
+	/**
+	 * Число запросов соединения, не дождавшихся свободного соединения.
+	 */
+	private final LongAdder timeouts = new LongAdder();
+	
+	/**
+	 * Число созданных физических соединений.
+	 */
+	private final LongAdder createdConnections = new LongAdder();
+
+	@Override
+	public IMetricsTracker create(String poolName, PoolStats poolStats) {
+		this.poolStats = poolStats;
+		return new IMetricsTracker() {
+			@Override
+			public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+				createdConnections.increment();
+			}
+
+			@Override
+			public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+				acquireCount.increment();
+				acquireNanos.add(elapsedAcquiredNanos);
+				maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+			}
+
+			@Override
+			public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+				usageMillis.add(elapsedBorrowedMillis);
+			}
+
+			@Override
+			public void recordConnectionTimeout() {
+				timeouts.increment();
+			}
+		};
+	}
+	
+	/**
+	 * Текущие значения метрик пула. Время ожидания соединения приводится в миллисекундах.
+	 * @return Map с названиями метрик и их значениями.
+	 */
+	public Map<String, Number> snapshot() {
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		PoolStats stats = poolStats;
+		metrics.put("active", stats != null ? stats.getActiveConnections() : 0);
+		metrics.put("idle", stats != null ? stats.getIdleConnections() : 0);
+		metrics.put("total", stats != null ? stats.getTotalConnections() : 0);
+		metrics.put("pending", stats != null ? stats.getPendingThreads() : 0);
+		metrics.put("max", stats != null ? stats.getMaxConnections() : 0);
+		metrics.put("min", stats != null ? stats.getMinConnections() : 0);
+		long count = acquireCount.sum();
+		metrics.put("acquireCount", count);
+		metrics.put("acquireWaitMillisTotal", TimeUnit.NANOSECONDS.toMillis(acquireNanos.sum()));
+		metrics.put("acquireWaitMillisAvg", count > 0 ? acquireNanos.sum() / 1_000_000.0 / count : 0.0);
+		metrics.put("acquireWaitMillisMax", maxAcquireNanos.get() / 1_000_000.0);
+		metrics.put("usageMillisAvg", count > 0 ? (double) usageMillis.sum() / count : 0.0);
+		metrics.put("timeouts", timeouts.sum());
+		metrics.put("createdConnections", createdConnections.sum());
+		return metrics;
+	}
+}
@@ -0,0 +1,95 @@
+package com.expense.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Session;
+
+/**
+ * Добавление значений к строке с накопительными счетчиками (дневные итоги, счетчики расходов категорий) с созданием строки
+ * при ее отсутствии. Запись выполняется на соединении текущей транзакции без блокировки родительских строк:
+ * в PostgreSQL - одним оператором INSERT ... ON CONFLICT DO UPDATE, поэтому транзакции, одновременно создающие одну и ту же
+ * строку, ждут друг друга только на этой строке и не взаимоблокируются с блокировкой FOR KEY SHARE, которую ставит
+ * проверка внешнего ключа при вставке расхода. В остальных базах данных (H2 в тестах) - UPDATE, при отсутствии строки INSERT,
+ * а если строку успела создать другая транзакция, повторный UPDATE; это возможно, т.к. ошибка оператора в H2
+ * не прерывает транзакцию.
+ * @author Alexandr Trifonov
+ *
+ */
+class CounterUpsert {
+	/**
+	 * Код SQLSTATE нарушения уникальности.
+	 */
+	private final static String UNIQUE_VIOLATION = "23505";
+
+	private final String upsertSql;
+
+	private final String updateSql;
+
+	private final String insertSql;
+
+	/**
+	 * @param table Таблица.
+	 * @param keyColumns Столбцы первичного ключа.
+	 * @param valueColumns Столбцы счетчиков.
+	 */
+	CounterUpsert(String table, String[] keyColumns, String[] valueColumns) {
+		String columns = String.join(", ", keyColumns) + ", " + String.join(", ", valueColumns);
+		String placeholders = String.join(", ", Collections.nCopies(keyColumns.length + valueColumns.length, "?"));
+		this.insertSql = "insert into " + table + " (" + columns + ") values (" + placeholders + ")";
+		this.upsertSql = insertSql + " on conflict (" + String.join(", ", keyColumns) + ") do update set "
+				+ Arrays.stream(valueColumns).map(column -> column + " = " + table + "." + column + " + excluded." + column)
+						.collect(Collectors.joining(", "));
+		this.updateSql = "update " + table + " set "
+				+ Arrays.stream(valueColumns).map(column -> column + " = " + column + " + ?").collect(Collectors.joining(", "))
+				+ " where " + Arrays.stream(keyColumns).map(column -> column + " = ?").collect(Collectors.joining(" and "));
+	}
+
+	/**
+	 * Добавление значений к строке с указанным ключом в текущей транзакции.
+	 * @param entityManager EntityManager текущей транзакции.
+	 * @param keys Значения столбцов первичного ключа.
+	 * @param values Добавляемые значения счетчиков, могут быть отрицательными.
+	 */
+	void add(EntityManager entityManager, Object[] keys, Object[] values) {
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			if ("PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+				execute(connection, upsertSql, keys, values);
+			} else if (update(connection, keys, values) == 0) {
+				try {
+					execute(connection, insertSql, keys, values);
+				} catch (SQLException e) {
+					if (!UNIQUE_VIOLATION.equals(e.getSQLState()) || update(connection, keys, values) == 0) {
+						throw e;
+					}
+				}
+			}
+		});
+	}
+
+	private int update(Connection connection, Object[] keys, Object[] values) throws SQLException {
+		return execute(connection, updateSql, values, keys);
+	}
+
+	/**
+	 * Выполнение оператора с параметрами из двух массивов по порядку.
+	 */
+	private static int execute(Connection connection, String sql, Object[] first, Object[] second) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int index = 1;
+			for (Object parameter : first) {
+				statement.setObject(index++, parameter);
+			}
+			for (Object parameter : second) {
+				statement.setObject(index++, parameter);
+			}
+			return statement.executeUpdate();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.expense.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.expense.entities.Expense;
+
+/**
+ * Версии данных для условных GET запросов: отдельные счетчики поколений категорий и расходов.
+ * Счетчик увеличивается после фиксации каждой транзакции, изменившей соответствующие данные, 
+ * по счетчикам строятся ETag и Last-Modified ответов, поэтому проверка If-None-Match не обращается к базе данных.
+ * <p>
+ * Счетчики хранятся в памяти экземпляра приложения; время запуска входит в ETag, 
+ * поэтому ETag, выданные до перезапуска, не совпадают с новыми.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class DataVersion implements ExpenseChangeListener {
+	/**
+	 * Время запуска, мс.
+	 */
+	private final long epoch = System.currentTimeMillis();
+	
+	/**
+	 * Поколение категорий.
+	 */
+	private final Generation categories = new Generation("c");
+	
+	/**
+	 * Поколение расходов, в том числе дневных итогов и счетчиков расходов по категориям.
+	 */
+	private final Generation expenses = new Generation("e");
+
+	@Override
+	public void expenseAdded(Expense expense) {
+		expensesChanged();
+	}
+
+	@Override
+	public void expenseRemoved(Expense expense) {
+		expensesChanged();
+	}
+	
+	/**
+	 * Отметка изменения категорий. Поколение увеличивается после фиксации текущей транзакции (или сразу, если транзакции нет).
+	 */
+	public void categoriesChanged() {
+		categories.bumpAfterCommit();
+	}
+	
+	/**
+	 * Отметка изменения расходов. Поколение увеличивается после фиксации текущей транзакции (или сразу, если транзакции нет).
+	 */
+	public void expensesChanged() {
+		expenses.bumpAfterCommit();
+	}
+	
+	/**
+	 * Версия данных, зависящих только от категорий.
+	 * @return Версия категорий.
+	 */
+	public Tag categories() {
+		return new Tag(categories);
+	}
+	
+	/**
+	 * Версия данных, зависящих от категорий и расходов.
+	 * @return Версия категорий и расходов.
+	 */
+	public Tag categoriesAndExpenses() {
+		return new Tag(categories, expenses);
+	}
+	
+	/**
+	 * Версия данных: строгий ETag и время последнего изменения.
+	 */
+	public class Tag {
+		private final String eTag;
+		private final long lastModified;
+		
+		private Tag(Generation... generations) {
+			StringBuilder sb = new StringBuilder("\"").append(Long.toString(epoch, 36));
+			long lastModified = 0;
+			for (Generation generation : generations) {
+				//номер поколения и время изменения читаются вместе, чтобы ETag и Last-Modified соответствовали друг другу
+				synchronized (generation) {
+					sb.append('-').append(generation.name).append(generation.number);
+					lastModified = Math.max(lastModified, generation.lastModified);
+				}
+			}
+			this.eTag = sb.append('"').toString();
+			this.lastModified = lastModified;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * Время последнего изменения, мс. Кратно секунде, так как заголовок Last-Modified имеет точность до секунды.
+		 * @return Время последнего изменения.
+		 */
+		public long getLastModified() {
+			return lastModified;
+		}
+	}
+	
+	/**
+	 * Поколение данных одного вида.
+	 */
+	private class Generation {
+		private final String name;
+		private long number;
+		private long lastModified = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(epoch));
+		
+		Generation(String name) {
+			this.name = name;
+		}
+		
+		/**
+		 * Увеличение поколения. Время изменения увеличивается хотя бы на секунду, чтобы клиент, 
+		 * передавший только If-Modified-Since, не получил 304 после изменения в ту же секунду.
+		 */
+		synchronized void bump() {
+			number++;
+			long now = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+			lastModified = Math.max(now, lastModified + TimeUnit.SECONDS.toMillis(1));
+		}
+		
+		/**
+		 * Увеличение поколения после фиксации текущей транзакции, не более одного раза на транзакцию.
+		 */
+		void bumpAfterCommit() {
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				bump();
+				return;
+			}
+			if (TransactionSynchronizationManager.hasResource(this)) {
+				return;
+			}
+			TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					bump();
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(Generation.this);
+				}
+			});
+		}
+	}
+}
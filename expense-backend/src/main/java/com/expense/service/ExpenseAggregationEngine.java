@@ -0,0 +1,49 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Механизм агрегирования расходов для диаграмм и отчетов: суммы расходов за период дат по категориям.
+ * Реализации: дневные итоги в базе данных ({@link ExpenseRollupService}), колоночное хранилище в памяти ({@link ExpenseColumnStore})
+ * и индекс префиксных сумм по дням в памяти ({@link ExpenseFenwickIndex}).
+ * Используемый механизм выбирается свойством {@value #PROPERTY}, по умолчанию {@value #DEFAULT}.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface ExpenseAggregationEngine {
+	/**
+	 * Свойство с именем используемого механизма агрегирования.
+	 */
+	String PROPERTY = "expense.aggregation.engine";
+
+	/**
+	 * Имя механизма агрегирования по умолчанию.
+	 */
+	String DEFAULT = ExpenseRollupService.NAME;
+
+	/**
+	 * @return Имя механизма агрегирования - значение свойства {@value #PROPERTY}.
+	 */
+	String getName();
+
+	/**
+	 * Получение сумм расходов в указанном периоде дат по родительским категориям: расходы подкатегорий
+	 * учитываются в сумме родительской категории.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Суммы расходов по идентификаторам родительских категорий; категорий без расходов в периоде нет в результате.
+	 */
+	Map<Integer, BigDecimal> totalsByParentCategory(LocalDate startDate, LocalDate finishDate);
+
+	/**
+	 * Получение сумм расходов в указанном периоде дат по каждой из указанных категорий.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Идентификаторы категорий.
+	 * @return Суммы расходов по идентификаторам категорий; категорий без расходов в периоде нет в результате.
+	 */
+	Map<Integer, BigDecimal> totalsByCategory(LocalDate startDate, LocalDate finishDate, Collection<Integer> categoryIds);
+}
@@ -0,0 +1,24 @@
+package com.expense.service;
+
+import com.expense.entities.Expense;
+
+/**
+ * Слушатель изменений расходов. Вызывается {@link ExpenseService} внутри транзакции, в которой изменяется расход.
+ * Изменение расхода передается как удаление прежнего состояния и добавление нового.
+ * Слушатели, которые поддерживают производные данные вне базы данных, должны применять изменения только после фиксации транзакции.
+ * @author Alexandr Trifonov
+ *
+ */
+public interface ExpenseChangeListener {
+	/**
+	 * Расход добавлен.
+	 * @param expense Добавленный расход.
+	 */
+	void expenseAdded(Expense expense);
+	
+	/**
+	 * Расход удален.
+	 * @param expense Удаленный расход.
+	 */
+	void expenseRemoved(Expense expense);
+}
@@ -0,0 +1,776 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+
+/**
+ * Колоночное хранилище расходов в памяти для агрегирования по периоду дат без обращения к базе данных.
+ * Каждый расход хранится тремя примитивами: день (LocalDate.toEpochDay()), идентификатор категории и сумма в копейках,
+ * строки упорядочены по дню. Границы периода находятся двоичным поиском, суммы считаются одним проходом по массивам,
+ * категория строки переводится в группу результата по массиву, поэтому время ответа зависит только от числа расходов в периоде.
+ * Память - около 16 байт на расход.
+ * <p>
+ * Хранилище загружается из таблицы expense при запуске приложения, если оно выбрано механизмом агрегирования
+ * (свойство {@value ExpenseAggregationEngine#PROPERTY}={@value #NAME}), или вызовом {@link #reload()}.
+ * После загрузки изменения расходов через {@link ExpenseService} применяются после фиксации транзакции
+ * в журнал изменений: добавленный расход - строка с положительной суммой, удаленный - с отрицательной.
+ * Массивы журнала выделяются с запасом, поэтому новая строка дописывается за последней строкой снимка без копирования журнала:
+ * строки за пределами снимка читателям этого снимка не видны. При накоплении {@value #COMPACT_THRESHOLD} строк журнал
+ * сливается с основным массивом в фоновом потоке, а строки, добавленные за время слияния, переносятся в журнал нового снимка.
+ * Изменения расходов в обход приложения не отражаются в хранилище до следующей загрузки.
+ * <p>
+ * Повторная загрузка на работающем приложении не теряет изменений: транзакции с изменениями расходов держат блокировку
+ * чтения {@link #commitLock} от начала фиксации до применения изменений, а загрузка берет блокировку записи до начала чтения
+ * таблицы расходов. Поэтому каждое изменение либо уже видно загрузке, либо применяется после начала загрузки -
+ * такие изменения применяются к текущему снимку и откладываются, а после загрузки применяются к новому снимку.
+ * <p>
+ * Чтение выполняется без блокировок по неизменяемому снимку, запись снимка публикуется через volatile поле.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class ExpenseColumnStore implements ExpenseAggregationEngine, ExpenseChangeListener, ApplicationListener<ContextRefreshedEvent> {
+	private static Logger logger = LoggerFactory.getLogger(ExpenseColumnStore.class);
+
+	/**
+	 * Имя механизма агрегирования.
+	 */
+	public final static String NAME = "columnar";
+
+	/**
+	 * Число строк журнала изменений, при котором журнал сливается с основным массивом.
+	 */
+	final static int COMPACT_THRESHOLD = 4096;
+
+	/**
+	 * Число строк, получаемых из курсора базы данных за одно обращение при загрузке.
+	 */
+	private final static int LOAD_FETCH_SIZE = 10_000;
+
+	/**
+	 * Текущий снимок хранилища или null, если хранилище не загружено.
+	 */
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Изменения, примененные во время загрузки и ожидающие применения к загруженному снимку,
+	 * или null, если загрузка не выполняется.
+	 */
+	private volatile List<Change> pendingChanges;
+
+	/**
+	 * Блокировка фазы фиксации: блокировка чтения - от начала фиксации транзакции с изменениями расходов
+	 * до применения изменений, блокировка записи - при загрузке до начала чтения таблицы расходов.
+	 */
+	private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Блокировка, исключающая одновременные загрузки.
+	 */
+	private final Object reloadLock = new Object();
+
+	/**
+	 * Поток слияния журнала изменений с основным массивом.
+	 */
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "expense-column-store-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Слияние журнала в фоновом потоке запланировано или выполняется.
+	 */
+	private boolean compactionScheduled;
+
+	/**
+	 * Снимок дерева категорий для группировки по родительским категориям.
+	 */
+	private CategoryTreeCache treeCache;
+
+	private DataSource dataSource;
+
+	private PlatformTransactionManager transactionManager;
+
+	private Environment env;
+
+	@Autowired
+	public void setTreeCache(CategoryTreeCache treeCache) {
+		this.treeCache = treeCache;
+	}
+
+	@Autowired
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	@Autowired
+	public void setEnvironment(Environment env) {
+		this.env = env;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Загрузка хранилища при запуске приложения, если оно выбрано механизмом агрегирования.
+	 * Событие приходит и от родительского, и от дочернего контекста, загрузка выполняется один раз.
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (snapshot == null && NAME.equals(env.getProperty(ExpenseAggregationEngine.PROPERTY, ExpenseAggregationEngine.DEFAULT))) {
+			reload();
+		}
+	}
+
+	/**
+	 * @return true, если хранилище загружено и отслеживает изменения расходов.
+	 */
+	public boolean isLoaded() {
+		return snapshot != null;
+	}
+
+	/**
+	 * @return Число расходов в хранилище (с учетом журнала изменений) или 0, если хранилище не загружено.
+	 */
+	public long size() {
+		Snapshot current = snapshot;
+		if (current == null) {
+			return 0;
+		}
+		long size = current.size;
+		for (int i = 0; i < current.logSize; i++) {
+			size += current.logCounts[i];
+		}
+		return size;
+	}
+
+	/**
+	 * Загрузка всех расходов из базы данных. Изменения расходов, зафиксированные во время загрузки,
+	 * применяются к загруженному снимку.
+	 * @return Число загруженных расходов.
+	 */
+	public int reload() {
+		synchronized (reloadLock) {
+			long start = System.nanoTime();
+			Builder builder = new Builder();
+			try {
+				TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+				transactionTemplate.setReadOnly(true);
+				transactionTemplate.executeWithoutResult(status -> {
+					JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+					jdbcTemplate.setFetchSize(LOAD_FETCH_SIZE);
+					//фиксации ждут, пока запрос не начнет чтение: зафиксированное до этого видно запросу, остальное откладывается
+					Lock commits = commitLock.writeLock();
+					commits.lock();
+					boolean[] locked = {true};
+					try {
+						synchronized (this) {
+							pendingChanges = new ArrayList<>();
+						}
+						jdbcTemplate.query("select local_date, category_id, total_price from expense order by local_date",
+								rs -> {
+									if (locked[0]) {
+										locked[0] = false;
+										commits.unlock();
+									}
+									builder.add(rs.getDate(1).toLocalDate().toEpochDay(), rs.getInt(2), toCents(rs.getBigDecimal(3)));
+								});
+					} finally {
+						if (locked[0]) {
+							commits.unlock();
+						}
+					}
+				});
+				synchronized (this) {
+					snapshot = new Snapshot(builder.days, builder.categories, builder.cents, builder.size,
+							new int[0], new int[0], new long[0], new int[0], 0);
+					List<Change> pending = pendingChanges;
+					pendingChanges = null;
+					apply(pending);
+					logger.info("Expense column store loaded, rows = {}, changes during load = {}, time = {} ms",
+							builder.size, pending.size(), (System.nanoTime() - start) / 1_000_000);
+				}
+			} finally {
+				synchronized (this) {
+					pendingChanges = null;
+				}
+			}
+			return builder.size;
+		}
+	}
+
+	/**
+	 * Выгрузка хранилища: память освобождается, изменения расходов больше не отслеживаются.
+	 */
+	public synchronized void clear() {
+		snapshot = null;
+		pendingChanges = null;
+	}
+
+	/**
+	 * Остановка потока слияния при закрытии контекста.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		compactor.shutdownNow();
+	}
+
+	@Override
+	public void expenseAdded(Expense expense) {
+		addChange(expense, 1);
+	}
+
+	@Override
+	public void expenseRemoved(Expense expense) {
+		addChange(expense, -1);
+	}
+
+	@Override
+	public Map<Integer, BigDecimal> totalsByParentCategory(LocalDate startDate, LocalDate finishDate) {
+		Collection<Category> categories = treeCache.get().getAll();
+		int[] groupOf = newGroupIndex(categories);
+		List<Integer> groupIds = new ArrayList<>();
+		Map<Integer, Integer> groupByParentId = new HashMap<>();
+		for (Category category : categories) {
+			int parentId = category.getParent() != null ? category.getParent().getId() : category.getId();
+			groupOf[category.getId()] = groupByParentId.computeIfAbsent(parentId, id -> {
+				groupIds.add(id);
+				return groupIds.size() - 1;
+			});
+		}
+		return totals(startDate, finishDate, groupOf, groupIds);
+	}
+
+	@Override
+	public Map<Integer, BigDecimal> totalsByCategory(LocalDate startDate, LocalDate finishDate, Collection<Integer> categoryIds) {
+		int maxId = categoryIds.stream().mapToInt(Integer::intValue).max().orElse(-1);
+		int[] groupOf = new int[maxId + 1];
+		Arrays.fill(groupOf, -1);
+		List<Integer> groupIds = new ArrayList<>(categoryIds.size());
+		for (Integer id : categoryIds) {
+			if (groupOf[id] < 0) {
+				groupOf[id] = groupIds.size();
+				groupIds.add(id);
+			}
+		}
+		return totals(startDate, finishDate, groupOf, groupIds);
+	}
+
+	/**
+	 * Сумма расходов указанных категорий в периоде дат.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Идентификаторы категорий.
+	 * @return Сумма расходов.
+	 */
+	public BigDecimal sum(LocalDate startDate, LocalDate finishDate, Collection<Integer> categoryIds) {
+		Aggregate aggregate = aggregate(startDate, finishDate, singleGroup(categoryIds), 1);
+		return BigDecimal.valueOf(aggregate.cents[0], 2);
+	}
+
+	/**
+	 * Число расходов указанных категорий в периоде дат.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Идентификаторы категорий.
+	 * @return Число расходов.
+	 */
+	public long count(LocalDate startDate, LocalDate finishDate, Collection<Integer> categoryIds) {
+		return aggregate(startDate, finishDate, singleGroup(categoryIds), 1).counts[0];
+	}
+
+	/**
+	 * Суммы расходов по группам категорий.
+	 * @param groupOf Номер группы по идентификатору категории, -1 - категория не учитывается.
+	 * @param groupIds Идентификатор категории результата по номеру группы.
+	 * @return Суммы по идентификаторам категорий результата для групп, в которых есть расходы.
+	 */
+	private Map<Integer, BigDecimal> totals(LocalDate startDate, LocalDate finishDate, int[] groupOf, List<Integer> groupIds) {
+		Aggregate aggregate = aggregate(startDate, finishDate, groupOf, groupIds.size());
+		Map<Integer, BigDecimal> totals = new HashMap<>();
+		for (int group = 0; group < groupIds.size(); group++) {
+			if (aggregate.counts[group] != 0) {
+				totals.put(groupIds.get(group), BigDecimal.valueOf(aggregate.cents[group], 2));
+			}
+		}
+		return totals;
+	}
+
+	/**
+	 * Суммирование строк основного массива и журнала изменений в периоде дат по группам категорий.
+	 * @param groupOf Номер группы по идентификатору категории, -1 - категория не учитывается.
+	 * @param groups Число групп.
+	 * @return Суммы в копейках и число расходов по номерам групп.
+	 */
+	private Aggregate aggregate(LocalDate startDate, LocalDate finishDate, int[] groupOf, int groups) {
+		Snapshot current = snapshot;
+		if (current == null) {
+			throw new IllegalStateException("Expense column store is not loaded");
+		}
+		int from = (int) startDate.toEpochDay();
+		int to = (int) finishDate.toEpochDay();
+		long[] cents = new long[groups];
+		long[] counts = new long[groups];
+		int[] categories = current.categories;
+		long[] amounts = current.cents;
+		int end = upperBound(current.days, current.size, to);
+		for (int i = lowerBound(current.days, current.size, from); i < end; i++) {
+			int category = categories[i];
+			int group = category < groupOf.length ? groupOf[category] : -1;
+			if (group >= 0) {
+				cents[group] += amounts[i];
+				counts[group]++;
+			}
+		}
+		for (int i = 0; i < current.logSize; i++) {
+			int day = current.logDays[i];
+			int category = current.logCategories[i];
+			int group = category < groupOf.length ? groupOf[category] : -1;
+			if (day >= from && day <= to && group >= 0) {
+				cents[group] += current.logCents[i];
+				counts[group] += current.logCounts[i];
+			}
+		}
+		return new Aggregate(cents, counts);
+	}
+
+	/**
+	 * Индекс групп, в котором все категории относятся к группе 0.
+	 */
+	private static int[] singleGroup(Collection<Integer> categoryIds) {
+		int maxId = categoryIds.stream().mapToInt(Integer::intValue).max().orElse(-1);
+		int[] groupOf = new int[maxId + 1];
+		Arrays.fill(groupOf, -1);
+		categoryIds.forEach(id -> groupOf[id] = 0);
+		return groupOf;
+	}
+
+	/**
+	 * Пустой индекс групп размером до наибольшего идентификатора категории.
+	 */
+	private static int[] newGroupIndex(Collection<Category> categories) {
+		int maxId = categories.stream().mapToInt(Category::getId).max().orElse(-1);
+		int[] groupOf = new int[maxId + 1];
+		Arrays.fill(groupOf, -1);
+		return groupOf;
+	}
+
+	/**
+	 * Первая строка с днем не меньше указанного.
+	 */
+	private static int lowerBound(int[] days, int size, int day) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (days[mid] < day) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Первая строка с днем больше указанного.
+	 */
+	private static int upperBound(int[] days, int size, int day) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (days[mid] <= day) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Сумма расхода в копейках.
+	 */
+	static long toCents(BigDecimal amount) {
+		return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * Учет изменения расхода: в транзакции изменения накапливаются и применяются после ее фиксации,
+	 * без транзакции - сразу.
+	 * @param expense Расход.
+	 * @param sign 1 при добавлении расхода, -1 при удалении.
+	 */
+	private void addChange(Expense expense, int sign) {
+		if (snapshot == null && pendingChanges == null) {
+			return;
+		}
+		Change change = new Change((int) expense.getLocalDate().toEpochDay(), expense.getCategory().getId(),
+				sign * toCents(expense.getTotalPrice()), sign);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			commitLock.readLock().lock();
+			try {
+				apply(Arrays.asList(change));
+			} finally {
+				commitLock.readLock().unlock();
+			}
+			return;
+		}
+		currentChanges().add(change);
+	}
+
+	/**
+	 * Получение накопленных изменений текущей транзакции. При первом обращении в транзакции регистрируется
+	 * синхронизация, которая применяет изменения после фиксации транзакции. От начала фиксации до завершения транзакции
+	 * удерживается блокировка чтения {@link #commitLock}.
+	 * @return Накопленные изменения.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Change> currentChanges() {
+		List<Change> changes = (List<Change>) TransactionSynchronizationManager.getResource(this);
+		if (changes == null) {
+			List<Change> newChanges = new ArrayList<>();
+			TransactionSynchronizationManager.bindResource(this, newChanges);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				private boolean locked;
+
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					commitLock.readLock().lock();
+					locked = true;
+				}
+
+				@Override
+				public void afterCommit() {
+					apply(newChanges);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					if (locked) {
+						commitLock.readLock().unlock();
+					}
+					TransactionSynchronizationManager.unbindResourceIfPossible(ExpenseColumnStore.this);
+				}
+			});
+			changes = newChanges;
+		}
+		return changes;
+	}
+
+	/**
+	 * Добавление изменений в журнал нового снимка. Строки дописываются в массивы журнала текущего снимка,
+	 * массивы копируются только при исчерпании запаса. При накоплении {@value #COMPACT_THRESHOLD} строк планируется
+	 * слияние журнала в фоновом потоке. Во время загрузки изменения также откладываются для загружаемого снимка.
+	 * @param changes Изменения.
+	 */
+	private synchronized void apply(List<Change> changes) {
+		if (pendingChanges != null) {
+			pendingChanges.addAll(changes);
+		}
+		Snapshot current = snapshot;
+		if (current == null || changes.isEmpty()) {
+			return;
+		}
+		int logSize = current.logSize + changes.size();
+		Snapshot next = withLogCapacity(current, logSize);
+		int i = current.logSize;
+		for (Change change : changes) {
+			next.logDays[i] = change.day;
+			next.logCategories[i] = change.category;
+			next.logCents[i] = change.cents;
+			next.logCounts[i] = change.count;
+			i++;
+		}
+		snapshot = new Snapshot(next.days, next.categories, next.cents, next.size,
+				next.logDays, next.logCategories, next.logCents, next.logCounts, logSize);
+		if (logSize >= COMPACT_THRESHOLD && !compactionScheduled) {
+			compactionScheduled = true;
+			compactor.execute(this::compactInBackground);
+		}
+	}
+
+	/**
+	 * Слияние журнала изменений с основным массивом, не дожидаясь накопления {@value #COMPACT_THRESHOLD} строк.
+	 * Выполняется в вызывающем потоке.
+	 */
+	public synchronized void compact() {
+		Snapshot current = snapshot;
+		if (current != null && current.logSize > 0) {
+			snapshot = compact(current);
+		}
+	}
+
+	/**
+	 * Слияние журнала в фоновом потоке. Новый основной массив строится без блокировки по снимку на момент начала слияния,
+	 * под блокировкой к журналу результата дописываются только строки, добавленные за время слияния.
+	 * Если за это время хранилище было перезагружено, выгружено или журнал уже слит, результат отбрасывается.
+	 */
+	private void compactInBackground() {
+		try {
+			Snapshot base = snapshot;
+			if (base == null || base.logSize == 0) {
+				return;
+			}
+			long start = System.nanoTime();
+			Snapshot compacted = compact(base);
+			synchronized (this) {
+				Snapshot current = snapshot;
+				if (current != null && current.days == base.days) {
+					snapshot = appendLog(compacted, current, base.logSize);
+				}
+			}
+			logger.debug("Expense column store compacted, log rows = {}, time = {} ms", base.logSize, (System.nanoTime() - start) / 1_000_000);
+		} catch (RuntimeException e) {
+			logger.error("Expense column store compaction failed. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+		} finally {
+			synchronized (this) {
+				compactionScheduled = false;
+			}
+		}
+	}
+
+	/**
+	 * Снимок с массивами журнала емкостью не меньше указанной: те же массивы, если запаса достаточно,
+	 * иначе - копии, увеличенные в полтора раза.
+	 * @param current Снимок.
+	 * @param logSize Требуемое число строк журнала.
+	 * @return Снимок с тем же числом строк журнала.
+	 */
+	private static Snapshot withLogCapacity(Snapshot current, int logSize) {
+		int capacity = current.logDays.length;
+		if (logSize <= capacity) {
+			return current;
+		}
+		capacity = Math.max(Math.max(logSize, 16), capacity + (capacity >> 1));
+		return new Snapshot(current.days, current.categories, current.cents, current.size,
+				Arrays.copyOf(current.logDays, capacity), Arrays.copyOf(current.logCategories, capacity),
+				Arrays.copyOf(current.logCents, capacity), Arrays.copyOf(current.logCounts, capacity), current.logSize);
+	}
+
+	/**
+	 * Дописывание к журналу снимка строк журнала другого снимка.
+	 * @param target Снимок, к журналу которого дописываются строки. Массивы журнала не должны быть опубликованы.
+	 * @param source Снимок с дописываемыми строками.
+	 * @param from Первая дописываемая строка журнала source.
+	 * @return Снимок с дописанными строками.
+	 */
+	private static Snapshot appendLog(Snapshot target, Snapshot source, int from) {
+		int rows = source.logSize - from;
+		if (rows == 0) {
+			return target;
+		}
+		Snapshot next = withLogCapacity(target, target.logSize + rows);
+		System.arraycopy(source.logDays, from, next.logDays, target.logSize, rows);
+		System.arraycopy(source.logCategories, from, next.logCategories, target.logSize, rows);
+		System.arraycopy(source.logCents, from, next.logCents, target.logSize, rows);
+		System.arraycopy(source.logCounts, from, next.logCounts, target.logSize, rows);
+		return new Snapshot(next.days, next.categories, next.cents, next.size,
+				next.logDays, next.logCategories, next.logCents, next.logCounts, target.logSize + rows);
+	}
+
+	/**
+	 * Слияние журнала изменений с основным массивом: удаленный расход исключает строку основного массива
+	 * или журнала с тем же днем, категорией и суммой, добавленные расходы вставляются по порядку дней.
+	 * Удаления, для которых строка не найдена, остаются в журнале.
+	 * @param snapshot Снимок с журналом изменений.
+	 * @return Снимок с новым основным массивом.
+	 */
+	private static Snapshot compact(Snapshot snapshot) {
+		boolean[] removed = new boolean[snapshot.size];
+		boolean[] cancelled = new boolean[snapshot.logSize];
+		Builder leftover = new Builder();
+		for (int i = 0; i < snapshot.logSize; i++) {
+			if (snapshot.logCounts[i] > 0) {
+				continue;
+			}
+			int day = snapshot.logDays[i];
+			int category = snapshot.logCategories[i];
+			long cents = -snapshot.logCents[i];
+			boolean found = false;
+			int end = upperBound(snapshot.days, snapshot.size, day);
+			for (int j = lowerBound(snapshot.days, snapshot.size, day); j < end && !found; j++) {
+				if (!removed[j] && snapshot.categories[j] == category && snapshot.cents[j] == cents) {
+					removed[j] = true;
+					found = true;
+				}
+			}
+			for (int j = 0; j < snapshot.logSize && !found; j++) {
+				if (!cancelled[j] && snapshot.logCounts[j] > 0 && snapshot.logDays[j] == day
+						&& snapshot.logCategories[j] == category && snapshot.logCents[j] == cents) {
+					cancelled[j] = true;
+					found = true;
+				}
+			}
+			if (!found) {
+				leftover.add(day, category, -cents);
+			}
+		}
+		Integer[] added = new Integer[snapshot.logSize];
+		int addedSize = 0;
+		for (int i = 0; i < snapshot.logSize; i++) {
+			if (snapshot.logCounts[i] > 0 && !cancelled[i]) {
+				added[addedSize++] = i;
+			}
+		}
+		Arrays.sort(added, 0, addedSize, (a, b) -> Integer.compare(snapshot.logDays[a], snapshot.logDays[b]));
+		Builder merged = new Builder(snapshot.size + addedSize);
+		int j = 0;
+		for (int i = 0; i < snapshot.size; i++) {
+			for (; j < addedSize && snapshot.logDays[added[j]] < snapshot.days[i]; j++) {
+				merged.add(snapshot.logDays[added[j]], snapshot.logCategories[added[j]], snapshot.logCents[added[j]]);
+			}
+			if (!removed[i]) {
+				merged.add(snapshot.days[i], snapshot.categories[i], snapshot.cents[i]);
+			}
+		}
+		for (; j < addedSize; j++) {
+			merged.add(snapshot.logDays[added[j]], snapshot.logCategories[added[j]], snapshot.logCents[added[j]]);
+		}
+		if (leftover.size > 0) {
+			logger.warn("Expense column store compaction: {} removed expenses not found", leftover.size);
+		}
+		int[] leftoverCounts = new int[leftover.size];
+		Arrays.fill(leftoverCounts, -1);
+		return new Snapshot(merged.days, merged.categories, merged.cents, merged.size,
+				Arrays.copyOf(leftover.days, leftover.size), Arrays.copyOf(leftover.categories, leftover.size),
+				Arrays.copyOf(leftover.cents, leftover.size), leftoverCounts, leftover.size);
+	}
+
+	/**
+	 * Неизменяемый снимок хранилища: основной массив, упорядоченный по дню, и журнал изменений.
+	 * Массивы могут быть длиннее числа строк; массивы журнала общие для последовательных снимков,
+	 * и строки за пределами logSize снимка могут дописываться после его публикации.
+	 */
+	private static final class Snapshot {
+		final int[] days;
+		final int[] categories;
+		final long[] cents;
+		final int size;
+		final int[] logDays;
+		final int[] logCategories;
+		final long[] logCents;
+		/**
+		 * 1 - добавленный расход, -1 - удаленный.
+		 */
+		final int[] logCounts;
+		final int logSize;
+
+		Snapshot(int[] days, int[] categories, long[] cents, int size,
+				int[] logDays, int[] logCategories, long[] logCents, int[] logCounts, int logSize) {
+			this.days = days;
+			this.categories = categories;
+			this.cents = cents;
+			this.size = size;
+			this.logDays = logDays;
+			this.logCategories = logCategories;
+			this.logCents = logCents;
+			this.logCounts = logCounts;
+			this.logSize = logSize;
+		}
+	}
+
+	/**
+	 * Построение массивов строк с увеличением емкости.
+	 */
+	private static final class Builder {
+		int[] days;
+		int[] categories;
+		long[] cents;
+		int size;
+
+		Builder() {
+			this(1024);
+		}
+
+		Builder(int capacity) {
+			int initial = Math.max(capacity, 16);
+			days = new int[initial];
+			categories = new int[initial];
+			cents = new long[initial];
+		}
+
+		void add(long day, int category, long amount) {
+			if (size == days.length) {
+				int capacity = days.length + (days.length >> 1);
+				days = Arrays.copyOf(days, capacity);
+				categories = Arrays.copyOf(categories, capacity);
+				cents = Arrays.copyOf(cents, capacity);
+			}
+			days[size] = (int) day;
+			categories[size] = category;
+			cents[size] = amount;
+			size++;
+		}
+	}
+
+	/**
+	 * Изменение расхода, ожидающее фиксации транзакции.
+	 */
+	private static final class Change {
+		final int day;
+		final int category;
+		final long cents;
+		final int count;
+
+		Change(int day, int category, long cents, int count) {
+			this.day = day;
+			this.category = category;
+			this.cents = cents;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Суммы в копейках и число расходов по номерам групп.
+	 */
+	private static final class Aggregate {
+		final long[] cents;
+		final long[] counts;
+
+		Aggregate(long[] cents, long[] counts) {
+			this.cents = cents;
+			this.counts = counts;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+import com.expense.repos.ExpenseSpecifications;
+
+/**
+ * Построение условий отбора и сортировки расходов по параметрам запроса. Обращений к базе данных нет
+ * (категории берутся из снимка дерева категорий), поэтому класс не транзакционный.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class ExpenseCriteria {
+	/**
+	 * Константа для получения параметра запроса с периодом дат.
+	 */
+	private final static String DATES = "dates";
+	/**
+	 * Константа для получения параметра запроса с диапазоном цен.
+	 */
+	private final static String PRICES = "prices";
+	/**
+	 * Константа для получения параметра запроса с символьной последовательностью для поиска примечаний к расходам.
+	 */
+	private final static String NOTE = "note";
+	/**
+	 * Константа для получения параметра запроса с идентификатором категории.
+	 */
+	private final static String CATEGORY_ID = "categoryId";
+	/**
+	 * Константа для получения параметра запроса для формирования объекта сортировки.
+	 */
+	final static String ORDER_BY = "orderBy";
+	/**
+	 * Константа для получения параметра запроса с размером страницы при постраничном получении расходов.
+	 */
+	final static String PAGE_SIZE = "pageSize";
+
+	/**
+	 * Объект уровня обслуживания для доступа к объектам Категория.
+	 */
+	private CategoryService categoryService;
+
+	@Autowired
+	public void setCategoryService(CategoryService categoryService) {
+		this.categoryService = categoryService;
+	}
+
+	/**
+	 * Проверка, запрошено ли постраничное получение расходов.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return true, если указан размер страницы.
+	 */
+	public boolean isPageRequested(Map<String, String> params) {
+		return params.containsKey(PAGE_SIZE);
+	}
+
+	/**
+	 * Построение объекта сортировки расходов. Идентификатор расхода добавляется последним полем сортировки,
+	 * чтобы порядок строк с одинаковым значением поля сортировки был стабильным.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return Объект сортировки.
+	 */
+	public Sort sort(Map<String, String> params) {
+		return Sort.by(params.get(ORDER_BY)).and(Sort.by("id"));
+	}
+
+	/**
+	 * Построение спецификации отбора расходов по параметрам запроса.
+	 * Каждый фильтр добавляется в спецификацию только при наличии соответствующего параметра,
+	 * поэтому новый фильтр добавляется одной строкой и не требует нового метода в репозитории.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return Спецификация отбора расходов.
+	 */
+	public Specification<Expense> specification(Map<String, String> params) {
+		String[] dates = params.get(DATES).split(",");
+		LocalDate startDate = LocalDate.parse(dates[0]);
+		LocalDate finishDate = LocalDate.parse(dates[1]);
+		return Specification.where(ExpenseSpecifications.localDateBetween(startDate, finishDate))
+				.and(categoryFilter(params.get(CATEGORY_ID)))
+				.and(priceFilter(params.get(PRICES)))
+				.and(noteFilter(params.get(NOTE)));
+	}
+
+	/**
+	 * Фильтр по категории. Для родительской категории отбираются расходы по всем её подкатегориям и по самой категории.
+	 * @param categoryParam Идентификатор категории или null
+	 * @return Спецификация отбора по категории или null, если параметр не указан.
+	 */
+	private Specification<Expense> categoryFilter(String categoryParam) {
+		if (categoryParam == null) {
+			return null;
+		}
+		Category category = categoryService.findCategory(Integer.parseInt(categoryParam));
+		List<Category> categories = new ArrayList<>();
+		if (category.getParent() == null) {
+			categories.addAll(categoryService.getChilds(category));
+		}
+		categories.add(category); //категорию тоже нужно добавить в список категорий, т.к. есть  расходы без подкатегории и расход сохраняется с category_id = id категории
+		return ExpenseSpecifications.categoryIn(categories);
+	}
+
+	/**
+	 * Фильтр по диапазону цен.
+	 * @param pricesParam Диапазон цен в виде "от,до" или null
+	 * @return Спецификация отбора по диапазону цен или null, если параметр не указан.
+	 */
+	private Specification<Expense> priceFilter(String pricesParam) {
+		if (pricesParam == null) {
+			return null;
+		}
+		String[] prices = pricesParam.split(",");
+		return ExpenseSpecifications.totalPriceBetween(new BigDecimal(prices[0]), new BigDecimal(prices[1]));
+	}
+
+	/**
+	 * Фильтр по примечанию.
+	 * @param noteParam Символьная последовательность для поиска в примечании или null
+	 * @return Спецификация отбора по примечанию или null, если параметр не указан.
+	 */
+	private Specification<Expense> noteFilter(String noteParam) {
+		if (noteParam == null) {
+			return null;
+		}
+		return ExpenseSpecifications.noteContainsIgnoreCase(noteParam);
+	}
+}
@@ -0,0 +1,150 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import com.expense.entities.Expense;
+import com.expense.repos.ExpenseSpecifications;
+
+/**
+ * Позиция (курсор) для постраничного получения расходов методом keyset.
+ * Курсор хранит поле сортировки, значение этого поля и идентификатор последнего расхода на странице.
+ * Клиент получает курсор в виде непрозрачной строки и передает её для получения следующей страницы.
+ * @author Alexandr Trifonov
+ *
+ */
+public final class ExpenseCursor {
+	/**
+	 * Разделитель частей курсора.
+	 */
+	private final static char SEPARATOR = ':';
+	
+	/**
+	 * Поля, по которым поддерживается сортировка при постраничном получении. 
+	 * Допускаются только поля без значений null, иначе условие keyset перестает быть однозначным.
+	 */
+	private final static Map<String, KeysetProperty<?>> KEYSET_PROPERTIES = new HashMap<>();
+	
+	static {
+		KEYSET_PROPERTIES.put("localDate", new KeysetProperty<>(Expense::getLocalDate, LocalDate::parse));
+		KEYSET_PROPERTIES.put("totalPrice", new KeysetProperty<>(Expense::getTotalPrice, BigDecimal::new));
+		KEYSET_PROPERTIES.put("unitPrice", new KeysetProperty<>(Expense::getUnitPrice, BigDecimal::new));
+		KEYSET_PROPERTIES.put("count", new KeysetProperty<>(Expense::getCount, Integer::valueOf));
+		KEYSET_PROPERTIES.put("id", new KeysetProperty<>(Expense::getId, Long::valueOf));
+	}
+	
+	/**
+	 * Поле сортировки.
+	 */
+	private final String orderBy;
+	/**
+	 * Значение поля сортировки в строковом виде.
+	 */
+	private final String value;
+	/**
+	 * Идентификатор расхода.
+	 */
+	private final long id;
+	
+	private ExpenseCursor(String orderBy, String value, long id) {
+		this.orderBy = orderBy;
+		this.value = value;
+		this.id = id;
+	}
+	
+	/**
+	 * Проверка, поддерживается ли постраничное получение при сортировке по указанному полю.
+	 * @param orderBy Поле сортировки.
+	 * @return true, если поле поддерживается.
+	 */
+	public static boolean supports(String orderBy) {
+		return KEYSET_PROPERTIES.containsKey(orderBy);
+	}
+	
+	/**
+	 * Создание курсора, указывающего на позицию после указанного расхода.
+	 * @param orderBy Поле сортировки.
+	 * @param last Последний расход на странице.
+	 * @return Курсор.
+	 */
+	public static ExpenseCursor after(String orderBy, Expense last) {
+		return new ExpenseCursor(orderBy, property(orderBy).valueOf(last), last.getId());
+	}
+	
+	/**
+	 * Разбор курсора из строки, полученной от клиента.
+	 * @param token Строковое представление курсора.
+	 * @return Курсор.
+	 * @throws IllegalArgumentException если строка не является корректным курсором.
+	 */
+	public static ExpenseCursor decode(String token) throws IllegalArgumentException {
+		String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		int first = decoded.indexOf(SEPARATOR);
+		int last = decoded.lastIndexOf(SEPARATOR);
+		if (first < 0 || first == last) {
+			throw new IllegalArgumentException("Malformed expense cursor");
+		}
+		String orderBy = decoded.substring(0, first);
+		property(orderBy);
+		return new ExpenseCursor(orderBy, decoded.substring(first + 1, last), Long.parseLong(decoded.substring(last + 1)));
+	}
+	
+	/**
+	 * Строковое представление курсора для передачи клиенту.
+	 * @return Строковое представление курсора.
+	 */
+	public String encode() {
+		String raw = orderBy + SEPARATOR + value + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Спецификация отбора расходов, следующих после позиции курсора.
+	 * @return Спецификация отбора.
+	 */
+	public Specification<Expense> toSpecification() {
+		return property(orderBy).after(orderBy, value, id);
+	}
+	
+	public String getOrderBy() {
+		return orderBy;
+	}
+	
+	private static KeysetProperty<?> property(String orderBy) throws IllegalArgumentException {
+		KeysetProperty<?> property = KEYSET_PROPERTIES.get(orderBy);
+		if (property == null) {
+			throw new IllegalArgumentException("Paging is not supported for order by " + orderBy);
+		}
+		return property;
+	}
+	
+	/**
+	 * Описание поля, по которому поддерживается keyset.
+	 * @param <T> Тип поля.
+	 */
+	private static class KeysetProperty<T extends Comparable<? super T>> {
+		private final Function<Expense, T> getter;
+		private final Function<String, T> parser;
+		
+		KeysetProperty(Function<Expense, T> getter, Function<String, T> parser) {
+			this.getter = getter;
+			this.parser = parser;
+		}
+		
+		String valueOf(Expense expense) {
+			T value = getter.apply(expense);
+			return value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+		}
+		
+		Specification<Expense> after(String orderBy, String value, long id) {
+			return ExpenseSpecifications.after(orderBy, parser.apply(value), id);
+		}
+	}
+}
@@ -0,0 +1,648 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+
+/**
+ * Индекс префиксных сумм (дерево Фенвика) расходов по дням для каждой категории: сумма и число расходов категории
+ * за любой период дат получаются за O(log d), где d - число дней в индексе, независимо от числа расходов.
+ * Суммы хранятся в копейках. Диапазон дней индекса расширяется при появлении расхода за его пределами, но не больше чем
+ * до {@value #MAX_DAYS_PROPERTY} дней (по умолчанию {@value #DEFAULT_MAX_DAYS}): дневные суммы за пределами диапазона
+ * хранятся отдельно по дням и суммируются перебором, поэтому ошибочная дата вроде 9999-12-31 не раздувает деревья.
+ * Память - 16 байт на день диапазона на категорию.
+ * <p>
+ * Индекс загружается из таблицы expense при запуске приложения, если он выбран механизмом агрегирования
+ * (свойство {@value ExpenseAggregationEngine#PROPERTY}={@value #NAME}), или вызовом {@link #reload()}.
+ * После загрузки добавление, изменение и удаление расходов через {@link ExpenseService} применяются к индексу
+ * точечными обновлениями после фиксации транзакции. Изменения расходов в обход приложения не отражаются
+ * в индексе до следующей загрузки.
+ * <p>
+ * Повторная загрузка на работающем приложении не теряет изменений, как и в {@link ExpenseColumnStore}: транзакции
+ * с изменениями расходов держат блокировку чтения {@link #commitLock} от начала фиксации до применения изменений,
+ * загрузка берет блокировку записи до начала чтения таблицы расходов, а изменения, примененные во время загрузки,
+ * откладываются и применяются к загруженному индексу.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class ExpenseFenwickIndex implements ExpenseAggregationEngine, ExpenseChangeListener, ApplicationListener<ContextRefreshedEvent> {
+	private static Logger logger = LoggerFactory.getLogger(ExpenseFenwickIndex.class);
+
+	/**
+	 * Имя механизма агрегирования.
+	 */
+	public final static String NAME = "fenwick";
+
+	/**
+	 * Запас дней при создании и расширении диапазона индекса, чтобы расходы на ближайшие даты не требовали расширения.
+	 */
+	private final static int DAYS_MARGIN = 366;
+
+	/**
+	 * Число строк, получаемых из курсора базы данных за одно обращение при загрузке.
+	 */
+	private final static int LOAD_FETCH_SIZE = 10_000;
+
+	/**
+	 * Свойство с наибольшим числом дней в диапазоне индекса.
+	 */
+	public final static String MAX_DAYS_PROPERTY = "expense.aggregation.fenwick.maxDays";
+
+	/**
+	 * Наибольшее число дней в диапазоне индекса по умолчанию - около 20 лет.
+	 */
+	public final static int DEFAULT_MAX_DAYS = 7320;
+
+	/**
+	 * Блокировка: чтение сумм - под блокировкой чтения, загрузка и обновления - под блокировкой записи.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Блокировка фазы фиксации: блокировка чтения - от начала фиксации транзакции с изменениями расходов
+	 * до применения изменений, блокировка записи - при загрузке до начала чтения таблицы расходов.
+	 */
+	private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Блокировка, исключающая одновременные загрузки.
+	 */
+	private final Object reloadLock = new Object();
+
+	/**
+	 * Изменения, примененные во время загрузки и ожидающие применения к загруженному индексу,
+	 * или null, если загрузка не выполняется. Изменяется под блокировкой записи {@link #lock}.
+	 */
+	private volatile List<DayTotal> pendingChanges;
+
+	/**
+	 * Деревья по идентификатору категории или null, если индекс не загружен.
+	 */
+	private Map<Integer, DayTree> trees;
+
+	/**
+	 * Первый день диапазона индекса (LocalDate.toEpochDay()).
+	 */
+	private int firstDay;
+
+	/**
+	 * Число дней в диапазоне индекса.
+	 */
+	private int days;
+
+	/**
+	 * Наибольшее число дней в диапазоне индекса.
+	 */
+	private int maxDays;
+
+	/**
+	 * Дневные суммы за пределами диапазона индекса: день - идентификатор категории - сумма в копейках и число расходов.
+	 */
+	private NavigableMap<Integer, Map<Integer, long[]>> outliers;
+
+	/**
+	 * Снимок дерева категорий для группировки по родительским категориям.
+	 */
+	private CategoryTreeCache treeCache;
+
+	private DataSource dataSource;
+
+	private PlatformTransactionManager transactionManager;
+
+	private Environment env;
+
+	@Autowired
+	public void setTreeCache(CategoryTreeCache treeCache) {
+		this.treeCache = treeCache;
+	}
+
+	@Autowired
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Autowired
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	@Autowired
+	public void setEnvironment(Environment env) {
+		this.env = env;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Загрузка индекса при запуске приложения, если он выбран механизмом агрегирования.
+	 * Событие приходит и от родительского, и от дочернего контекста, загрузка выполняется один раз.
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (!isLoaded() && NAME.equals(env.getProperty(ExpenseAggregationEngine.PROPERTY, ExpenseAggregationEngine.DEFAULT))) {
+			reload();
+		}
+	}
+
+	/**
+	 * @return true, если индекс загружен и отслеживает изменения расходов.
+	 */
+	public boolean isLoaded() {
+		lock.readLock().lock();
+		try {
+			return trees != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Загрузка индекса по расходам из базы данных. Изменения расходов, зафиксированные во время загрузки,
+	 * применяются к загруженному индексу.
+	 * @return Число пар (день, категория) с расходами.
+	 */
+	public int reload() {
+		synchronized (reloadLock) {
+			try {
+				return load();
+			} finally {
+				lock.writeLock().lock();
+				try {
+					pendingChanges = null;
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Загрузка индекса. Расходы читаются построчно и суммируются по дням в памяти, а не группировкой в базе данных:
+	 * блокировка фиксаций снимается с первой строкой, а не после группировки всей таблицы.
+	 * @return Число пар (день, категория) с расходами.
+	 */
+	private int load() {
+		long start = System.nanoTime();
+		Map<Long, DayTotal> byDay = new HashMap<>();
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		transactionTemplate.executeWithoutResult(status -> {
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			jdbcTemplate.setFetchSize(LOAD_FETCH_SIZE);
+			//фиксации ждут, пока запрос не начнет чтение: зафиксированное до этого видно запросу, остальное откладывается
+			Lock commits = commitLock.writeLock();
+			commits.lock();
+			boolean[] locked = {true};
+			try {
+				lock.writeLock().lock();
+				try {
+					pendingChanges = new ArrayList<>();
+				} finally {
+					lock.writeLock().unlock();
+				}
+				jdbcTemplate.query("select local_date, category_id, total_price from expense",
+						rs -> {
+							if (locked[0]) {
+								locked[0] = false;
+								commits.unlock();
+							}
+							int day = (int) rs.getDate(1).toLocalDate().toEpochDay();
+							int category = rs.getInt(2);
+							long cents = ExpenseColumnStore.toCents(rs.getBigDecimal(3));
+							byDay.merge(((long) day << 32) | (category & 0xFFFFFFFFL), new DayTotal(day, category, cents, 1),
+									(total, row) -> new DayTotal(day, category, total.cents + cents, total.count + 1));
+						});
+			} finally {
+				if (locked[0]) {
+					commits.unlock();
+				}
+			}
+		});
+		List<DayTotal> totals = new ArrayList<>(byDay.values());
+		int newMaxDays = Math.max(env.getProperty(MAX_DAYS_PROPERTY, Integer.class, DEFAULT_MAX_DAYS), DAYS_MARGIN + 1);
+		int newFirstDay = firstDayOfDensestWindow(totals, newMaxDays - DAYS_MARGIN);
+		int lastDay = totals.stream().mapToInt(total -> total.day)
+				.filter(day -> day >= newFirstDay && day < newFirstDay + newMaxDays - DAYS_MARGIN).max().orElse(newFirstDay);
+		int newDays = lastDay - newFirstDay + 1 + DAYS_MARGIN;
+		Map<Integer, long[][]> points = new HashMap<>();
+		NavigableMap<Integer, Map<Integer, long[]>> newOutliers = new TreeMap<>();
+		for (DayTotal total : totals) {
+			if (total.day < newFirstDay || total.day >= newFirstDay + newDays) {
+				addOutlier(newOutliers, total);
+				continue;
+			}
+			long[][] point = points.computeIfAbsent(total.category, id -> new long[2][newDays + 1]);
+			point[0][total.day - newFirstDay + 1] += total.cents;
+			point[1][total.day - newFirstDay + 1] += total.count;
+		}
+		Map<Integer, DayTree> newTrees = new HashMap<>();
+		points.forEach((category, point) -> newTrees.put(category, DayTree.of(point[0], point[1])));
+		int changesDuringLoad;
+		lock.writeLock().lock();
+		try {
+			trees = newTrees;
+			firstDay = newFirstDay;
+			days = newDays;
+			maxDays = newMaxDays;
+			outliers = newOutliers;
+			List<DayTotal> pending = pendingChanges;
+			pendingChanges = null;
+			apply(pending);
+			changesDuringLoad = pending.size();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		logger.info("Expense Fenwick index loaded, categories = {}, days = {}, day totals = {}, outside range = {}, "
+				+ "changes during load = {}, time = {} ms", newTrees.size(), newDays, totals.size(), newOutliers.size(),
+				changesDuringLoad, (System.nanoTime() - start) / 1_000_000);
+		return totals.size();
+	}
+
+	/**
+	 * Выбор диапазона дней, в который попадает больше всего дневных сумм.
+	 * @param totals Дневные суммы.
+	 * @param width Число дней в диапазоне.
+	 * @return Первый день диапазона.
+	 */
+	private static int firstDayOfDensestWindow(List<DayTotal> totals, int width) {
+		int[] sortedDays = totals.stream().mapToInt(total -> total.day).sorted().toArray();
+		if (sortedDays.length == 0) {
+			return (int) LocalDate.now().toEpochDay();
+		}
+		int best = 0;
+		int bestCount = 0;
+		int end = 0;
+		for (int i = 0; i < sortedDays.length; i++) {
+			while (end < sortedDays.length && (long) sortedDays[end] - sortedDays[i] < width) {
+				end++;
+			}
+			if (end - i > bestCount) {
+				bestCount = end - i;
+				best = i;
+			}
+		}
+		return sortedDays[best];
+	}
+
+	/**
+	 * Выгрузка индекса: память освобождается, изменения расходов больше не отслеживаются.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			trees = null;
+			outliers = null;
+			pendingChanges = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void expenseAdded(Expense expense) {
+		addChange(expense, 1);
+	}
+
+	@Override
+	public void expenseRemoved(Expense expense) {
+		addChange(expense, -1);
+	}
+
+	@Override
+	public Map<Integer, BigDecimal> totalsByParentCategory(LocalDate startDate, LocalDate finishDate) {
+		Map<Integer, List<Integer>> categoriesByParentId = new HashMap<>();
+		for (Category category : treeCache.get().getAll()) {
+			int parentId = category.getParent() != null ? category.getParent().getId() : category.getId();
+			categoriesByParentId.computeIfAbsent(parentId, id -> new ArrayList<>()).add(category.getId());
+		}
+		return totals(startDate, finishDate, categoriesByParentId);
+	}
+
+	@Override
+	public Map<Integer, BigDecimal> totalsByCategory(LocalDate startDate, LocalDate finishDate, Collection<Integer> categoryIds) {
+		Map<Integer, List<Integer>> categoriesById = new HashMap<>();
+		categoryIds.forEach(id -> categoriesById.put(id, Collections.singletonList(id)));
+		return totals(startDate, finishDate, categoriesById);
+	}
+
+	/**
+	 * Суммы расходов по группам категорий.
+	 * @param groups Идентификаторы категорий группы по идентификатору категории результата.
+	 * @return Суммы по идентификаторам категорий результата для групп, в которых есть расходы.
+	 */
+	private Map<Integer, BigDecimal> totals(LocalDate startDate, LocalDate finishDate, Map<Integer, List<Integer>> groups) {
+		Map<Integer, BigDecimal> totals = new HashMap<>();
+		lock.readLock().lock();
+		try {
+			if (trees == null) {
+				throw new IllegalStateException("Expense Fenwick index is not loaded");
+			}
+			int startDay = (int) startDate.toEpochDay();
+			int finishDay = (int) finishDate.toEpochDay();
+			int from = Math.max(startDay - firstDay + 1, 1);
+			int to = Math.min(finishDay - firstDay + 1, days);
+			Collection<Map<Integer, long[]>> outlierDays = startDay <= finishDay
+					? outliers.subMap(startDay, true, finishDay, true).values() : Collections.emptyList();
+			groups.forEach((resultId, categoryIds) -> {
+				long cents = 0;
+				long count = 0;
+				for (Integer categoryId : categoryIds) {
+					DayTree tree = trees.get(categoryId);
+					if (tree != null && from <= to) {
+						cents += tree.cents(to) - tree.cents(from - 1);
+						count += tree.count(to) - tree.count(from - 1);
+					}
+					for (Map<Integer, long[]> outlierDay : outlierDays) {
+						long[] outlier = outlierDay.get(categoryId);
+						if (outlier != null) {
+							cents += outlier[0];
+							count += outlier[1];
+						}
+					}
+				}
+				if (count != 0) {
+					totals.put(resultId, BigDecimal.valueOf(cents, 2));
+				}
+			});
+		} finally {
+			lock.readLock().unlock();
+		}
+		return totals;
+	}
+
+	/**
+	 * Учет изменения расхода: в транзакции изменения накапливаются и применяются после ее фиксации,
+	 * без транзакции - сразу.
+	 * @param expense Расход.
+	 * @param sign 1 при добавлении расхода, -1 при удалении.
+	 */
+	private void addChange(Expense expense, int sign) {
+		if (!isLoaded() && pendingChanges == null) {
+			return;
+		}
+		DayTotal change = new DayTotal((int) expense.getLocalDate().toEpochDay(), expense.getCategory().getId(),
+				sign * ExpenseColumnStore.toCents(expense.getTotalPrice()), sign);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			commitLock.readLock().lock();
+			try {
+				apply(Collections.singletonList(change));
+			} finally {
+				commitLock.readLock().unlock();
+			}
+			return;
+		}
+		currentChanges().add(change);
+	}
+
+	/**
+	 * Получение накопленных изменений текущей транзакции. При первом обращении в транзакции регистрируется
+	 * синхронизация, которая применяет изменения после фиксации транзакции. От начала фиксации до завершения транзакции
+	 * удерживается блокировка чтения {@link #commitLock}.
+	 * @return Накопленные изменения.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<DayTotal> currentChanges() {
+		List<DayTotal> changes = (List<DayTotal>) TransactionSynchronizationManager.getResource(this);
+		if (changes == null) {
+			List<DayTotal> newChanges = new ArrayList<>();
+			TransactionSynchronizationManager.bindResource(this, newChanges);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				private boolean locked;
+
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					commitLock.readLock().lock();
+					locked = true;
+				}
+
+				@Override
+				public void afterCommit() {
+					apply(newChanges);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					if (locked) {
+						commitLock.readLock().unlock();
+					}
+					TransactionSynchronizationManager.unbindResourceIfPossible(ExpenseFenwickIndex.this);
+				}
+			});
+			changes = newChanges;
+		}
+		return changes;
+	}
+
+	/**
+	 * Точечные обновления индекса. Изменения за пределами диапазона, который нельзя расширить, учитываются в отдельных дневных суммах.
+	 * Во время загрузки изменения также откладываются для загружаемого индекса.
+	 * @param changes Изменения.
+	 */
+	private void apply(List<DayTotal> changes) {
+		lock.writeLock().lock();
+		try {
+			if (pendingChanges != null) {
+				pendingChanges.addAll(changes);
+			}
+			if (trees == null) {
+				return;
+			}
+			for (DayTotal change : changes) {
+				if (ensureRange(change.day)) {
+					trees.computeIfAbsent(change.category, id -> new DayTree(days))
+							.add(change.day - firstDay + 1, change.cents, change.count);
+				} else {
+					addOutlier(outliers, change);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Расширение диапазона дней индекса, если указанный день в него не входит. Запас {@value #DAYS_MARGIN} дней
+	 * сокращается, чтобы диапазон не превысил наибольшее число дней. Дневные суммы вне прежнего диапазона, попавшие
+	 * в новый, переносятся в деревья. Вызывается под блокировкой записи.
+	 * @param day День (LocalDate.toEpochDay()).
+	 * @return false, если день не входит в диапазон и диапазон нельзя расширить до него.
+	 */
+	private boolean ensureRange(int day) {
+		if (day >= firstDay && day < firstDay + days) {
+			return true;
+		}
+		long newFirstDay = Math.min(firstDay, (long) day - DAYS_MARGIN);
+		long newEnd = Math.max(firstDay + days, (long) day + DAYS_MARGIN);
+		if (newEnd - newFirstDay > maxDays) {
+			if (Math.max(firstDay + days, (long) day + 1) - Math.min(firstDay, day) > maxDays) {
+				return false;
+			}
+			if (day < firstDay) {
+				newEnd = firstDay + days;
+				newFirstDay = newEnd - maxDays;
+			} else {
+				newFirstDay = firstDay;
+				newEnd = newFirstDay + maxDays;
+			}
+		}
+		int newDays = (int) (newEnd - newFirstDay);
+		int shift = (int) (firstDay - newFirstDay);
+		Map<Integer, DayTree> newTrees = new HashMap<>();
+		trees.forEach((category, tree) -> newTrees.put(category, tree.resize(shift, newDays)));
+		trees = newTrees;
+		firstDay = (int) newFirstDay;
+		days = newDays;
+		Map<Integer, Map<Integer, long[]>> inRange = outliers.subMap(firstDay, true, firstDay + days, false);
+		inRange.forEach((outlierDay, byCategory) -> byCategory.forEach((category, outlier) ->
+				trees.computeIfAbsent(category, id -> new DayTree(days)).add(outlierDay - firstDay + 1, outlier[0], outlier[1])));
+		inRange.clear();
+		logger.info("Expense Fenwick index range extended, first day = {}, days = {}", LocalDate.ofEpochDay(firstDay), days);
+		return true;
+	}
+
+	/**
+	 * Учет дневной суммы за пределами диапазона индекса. Пустые дневные суммы удаляются.
+	 * @param outliers Дневные суммы за пределами диапазона.
+	 * @param total Дневная сумма или изменение.
+	 */
+	private static void addOutlier(NavigableMap<Integer, Map<Integer, long[]>> outliers, DayTotal total) {
+		Map<Integer, long[]> byCategory = outliers.computeIfAbsent(total.day, day -> new HashMap<>());
+		long[] outlier = byCategory.computeIfAbsent(total.category, category -> new long[2]);
+		outlier[0] += total.cents;
+		outlier[1] += total.count;
+		if (outlier[1] == 0 && outlier[0] == 0) {
+			byCategory.remove(total.category);
+			if (byCategory.isEmpty()) {
+				outliers.remove(total.day);
+			}
+		}
+	}
+
+	/**
+	 * Деревья Фенвика сумм в копейках и числа расходов одной категории по дням. Позиции - с 1.
+	 */
+	private static final class DayTree {
+		private final long[] cents;
+		private final long[] counts;
+
+		DayTree(int days) {
+			this.cents = new long[days + 1];
+			this.counts = new long[days + 1];
+		}
+
+		private DayTree(long[] cents, long[] counts) {
+			this.cents = cents;
+			this.counts = counts;
+		}
+
+		/**
+		 * Построение деревьев за O(d) по значениям дней.
+		 * @param cents Суммы по позициям дней, массив становится деревом.
+		 * @param counts Число расходов по позициям дней, массив становится деревом.
+		 */
+		static DayTree of(long[] cents, long[] counts) {
+			for (int i = 1; i < cents.length; i++) {
+				int parent = i + (i & -i);
+				if (parent < cents.length) {
+					cents[parent] += cents[i];
+					counts[parent] += counts[i];
+				}
+			}
+			return new DayTree(cents, counts);
+		}
+
+		void add(int position, long amount, long count) {
+			for (int i = position; i < cents.length; i += i & -i) {
+				cents[i] += amount;
+				counts[i] += count;
+			}
+		}
+
+		/**
+		 * @return Сумма в копейках по позициям с 1 по указанную.
+		 */
+		long cents(int position) {
+			long sum = 0;
+			for (int i = position; i > 0; i -= i & -i) {
+				sum += cents[i];
+			}
+			return sum;
+		}
+
+		/**
+		 * @return Число расходов по позициям с 1 по указанную.
+		 */
+		long count(int position) {
+			long sum = 0;
+			for (int i = position; i > 0; i -= i & -i) {
+				sum += counts[i];
+			}
+			return sum;
+		}
+
+		/**
+		 * Перенос значений дней в деревья нового размера.
+		 * @param shift Сдвиг позиций дней.
+		 * @param days Число дней в новых деревьях.
+		 * @return Новые деревья.
+		 */
+		DayTree resize(int shift, int days) {
+			long[] newCents = new long[days + 1];
+			long[] newCounts = new long[days + 1];
+			for (int i = 1; i < cents.length; i++) {
+				newCents[i + shift] = cents(i) - cents(i - 1);
+				newCounts[i + shift] = count(i) - count(i - 1);
+			}
+			return of(newCents, newCounts);
+		}
+	}
+
+	/**
+	 * Сумма и число расходов категории за день: строка загрузки или изменение, ожидающее фиксации транзакции.
+	 */
+	private static final class DayTotal {
+		final int day;
+		final int category;
+		final long cents;
+		final long count;
+
+		DayTotal(int day, int category, long cents, long count) {
+			this.day = day;
+			this.category = category;
+			this.cents = cents;
+			this.count = count;
+		}
+	}
+}
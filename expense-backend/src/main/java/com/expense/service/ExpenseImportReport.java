@@ -0,0 +1,154 @@
+package com.expense.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат массовой загрузки расходов: итоговые числа принятых и отклоненных расходов и результаты по каждой порции.
+ * Номера расходов отсчитываются от нуля в порядке следования во входном массиве.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ExpenseImportReport {
+	/**
+	 * Результаты по порциям.
+	 */
+	private final List<Chunk> chunks = new ArrayList<>();
+	
+	/**
+	 * Сообщение об ошибке разбора входных данных, после которой загрузка прекращена, или null.
+	 */
+	private String error;
+
+	public List<Chunk> getChunks() {
+		return Collections.unmodifiableList(chunks);
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	void setError(String error) {
+		this.error = error;
+	}
+	
+	void addChunk(Chunk chunk) {
+		chunks.add(chunk);
+	}
+	
+	/**
+	 * Число добавленных расходов.
+	 * @return Число добавленных расходов во всех порциях.
+	 */
+	public int getAccepted() {
+		return chunks.stream().mapToInt(Chunk::getAccepted).sum();
+	}
+	
+	/**
+	 * Число отклоненных расходов.
+	 * @return Число расходов, не прошедших проверку, и расходов из порций, которые не удалось сохранить.
+	 */
+	public int getRejected() {
+		return chunks.stream().mapToInt(chunk -> chunk.getRejected().size() + (chunk.getError() != null ? chunk.getSize() : 0)).sum();
+	}
+	
+	/**
+	 * Результат загрузки одной порции расходов. Порция сохраняется в отдельной транзакции и включает 
+	 * до chunkSize прошедших проверку расходов, а также отклоненные расходы, прочитанные вместе с ними.
+	 */
+	public static class Chunk {
+		/**
+		 * Номер первого расхода порции во входном массиве.
+		 */
+		private final int firstIndex;
+		
+		/**
+		 * Число расходов порции, прошедших проверку.
+		 */
+		private int size;
+		
+		/**
+		 * Число сохраненных расходов порции.
+		 */
+		private int accepted;
+		
+		/**
+		 * Расходы порции, не прошедшие проверку.
+		 */
+		private final List<Rejection> rejected = new ArrayList<>();
+		
+		/**
+		 * Сообщение об ошибке сохранения порции или null.
+		 */
+		private String error;
+		
+		Chunk(int firstIndex) {
+			this.firstIndex = firstIndex;
+		}
+
+		public int getFirstIndex() {
+			return firstIndex;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		void setSize(int size) {
+			this.size = size;
+		}
+
+		public int getAccepted() {
+			return accepted;
+		}
+
+		void setAccepted(int accepted) {
+			this.accepted = accepted;
+		}
+
+		public List<Rejection> getRejected() {
+			return Collections.unmodifiableList(rejected);
+		}
+		
+		void reject(int index, String message) {
+			rejected.add(new Rejection(index, message));
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		void setError(String error) {
+			this.error = error;
+		}
+	}
+	
+	/**
+	 * Расход, не прошедший проверку.
+	 */
+	public static class Rejection {
+		/**
+		 * Номер расхода во входном массиве.
+		 */
+		private final int index;
+		
+		/**
+		 * Причина отклонения.
+		 */
+		private final String message;
+		
+		Rejection(int index, String message) {
+			this.index = index;
+			this.message = message;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+}
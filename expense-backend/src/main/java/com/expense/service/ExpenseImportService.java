@@ -0,0 +1,176 @@
+package com.expense.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Класс из уровня обслуживания для массовой загрузки расходов из массива JSON.
+ * Массив читается потоковым парсером по одному расходу, поэтому размер загрузки не ограничен памятью.
+ * Прошедшие проверку расходы сохраняются порциями, каждая порция в отдельной транзакции пакетами JDBC 
+ * (см. {@link ExpenseService#addExpenses(List)}). Ошибка сохранения порции не отменяет уже сохраненные порции.
+ * @author Alexandr Trifonov
+ *
+ */
+@Service
+public class ExpenseImportService {
+	private static Logger logger = LoggerFactory.getLogger(ExpenseImportService.class);
+	
+	/**
+	 * Размер порции по умолчанию.
+	 */
+	public final static int DEFAULT_CHUNK_SIZE = 1000;
+	
+	/**
+	 * Максимальный размер порции.
+	 */
+	public final static int MAX_CHUNK_SIZE = 10000;
+	
+	/**
+	 * ObjectMapper для чтения расходов.
+	 */
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	/**
+	 * Объект уровня обслуживания для доступа к объектам Расход.
+	 */
+	private ExpenseService expenseService;
+	
+	/**
+	 * Объект уровня обслуживания для доступа к объектам Категория.
+	 */
+	private CategoryService categoryService;
+	
+	@Autowired
+	public void setExpenseService(ExpenseService expenseService) {
+		this.expenseService = expenseService;
+	}
+	
+	@Autowired
+	public void setCategoryService(CategoryService categoryService) {
+		this.categoryService = categoryService;
+	}
+	
+	/**
+	 * Загрузка расходов из массива JSON. Каждый расход проверяется: категория должна существовать, дата должна быть указана,
+	 * цена единицы не может быть отрицательной, количество должно быть положительным, идентификатор не указывается.
+	 * Полная цена рассчитывается по цене единицы и количеству. При ошибке разбора JSON загрузка прекращается,
+	 * расходы, прочитанные до ошибки, сохраняются.
+	 * @param in Поток с массивом расходов.
+	 * @param chunkSize Число расходов в порции.
+	 * @return Результат загрузки.
+	 * @throws IllegalArgumentException если размер порции вне диапазона от 1 до {@link #MAX_CHUNK_SIZE}.
+	 * @throws IOException при ошибке чтения потока.
+	 */
+	public ExpenseImportReport importExpenses(InputStream in, int chunkSize) throws IOException {
+		if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+			throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+		}
+		ExpenseImportReport report = new ExpenseImportReport();
+		List<Expense> pending = new ArrayList<>(chunkSize);
+		int index = 0;
+		ExpenseImportReport.Chunk chunk = new ExpenseImportReport.Chunk(index);
+		try (JsonParser parser = mapper.getFactory().createParser(in)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new JsonParseException(parser, "JSON array of expenses expected");
+			}
+			while (parser.nextToken() != JsonToken.END_ARRAY) {
+				JsonNode node = mapper.readTree(parser);
+				try {
+					pending.add(validate(node));
+				} catch (IllegalArgumentException | JsonProcessingException e) {
+					chunk.reject(index, e.getMessage());
+				}
+				index++;
+				if (pending.size() == chunkSize) {
+					save(report, chunk, pending);
+					chunk = new ExpenseImportReport.Chunk(index);
+				}
+			}
+		} catch (JsonProcessingException e) {
+			logger.warn("importExpenses. malformed input at expense {}: {}", index, e.getOriginalMessage());
+			report.setError(e.getOriginalMessage() + " (expense " + index + ")");
+		}
+		if (!pending.isEmpty() || !chunk.getRejected().isEmpty()) {
+			save(report, chunk, pending);
+		}
+		logger.info("importExpenses. accepted = {}, rejected = {}", report.getAccepted(), report.getRejected());
+		return report;
+	}
+	
+	/**
+	 * Сохранение порции расходов в отдельной транзакции.
+	 * @param report Результат загрузки.
+	 * @param chunk Результат загрузки порции.
+	 * @param pending Расходы порции, прошедшие проверку. Список очищается.
+	 */
+	private void save(ExpenseImportReport report, ExpenseImportReport.Chunk chunk, List<Expense> pending) {
+		chunk.setSize(pending.size());
+		try {
+			if (!pending.isEmpty()) {
+				chunk.setAccepted(expenseService.addExpenses(pending).size());
+			}
+		} catch (Exception e) {
+			logger.error("importExpenses. chunk from expense {} failed. error = {}, error class = {}", 
+					chunk.getFirstIndex(), e.getMessage(), e.getClass(), e);
+			chunk.setError(e.getMessage());
+		}
+		report.addChunk(chunk);
+		pending.clear();
+	}
+	
+	/**
+	 * Проверка расхода и подготовка его к сохранению.
+	 * @param node Расход в виде дерева JSON.
+	 * @return Расход с категорией из снимка дерева категорий и рассчитанной полной ценой.
+	 * @throws JsonProcessingException если расход не удалось прочитать.
+	 * @throws IllegalArgumentException если расход не прошел проверку.
+	 */
+	private Expense validate(JsonNode node) throws JsonProcessingException {
+		if (!node.isObject()) {
+			throw new IllegalArgumentException("JSON object expected");
+		}
+		Expense expense = mapper.treeToValue(node, Expense.class);
+		if (expense.getId() != null) {
+			throw new IllegalArgumentException("id must not be specified");
+		}
+		if (expense.getCategory() == null || expense.getCategory().getId() == null) {
+			throw new IllegalArgumentException("category.id is required");
+		}
+		if (expense.getLocalDate() == null) {
+			throw new IllegalArgumentException("localDate is required");
+		}
+		if (expense.getUnitPrice() == null || expense.getUnitPrice().compareTo(BigDecimal.ZERO) < 0) {
+			throw new IllegalArgumentException("unitPrice must be non-negative");
+		}
+		if (expense.getCount() <= 0) {
+			throw new IllegalArgumentException("count must be positive");
+		}
+		Category category;
+		try {
+			category = categoryService.findCategory(expense.getCategory().getId());
+		} catch (NoSuchElementException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+		expense.setCategory(category);
+		expense.setTotalPrice();
+		return expense;
+	}
+}
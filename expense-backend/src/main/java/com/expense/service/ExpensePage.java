@@ -0,0 +1,39 @@
+package com.expense.service;
+
+import java.util.List;
+
+import com.expense.entities.Expense;
+
+/**
+ * Страница расходов при постраничном получении методом keyset.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ExpensePage {
+	/**
+	 * Расходы на странице.
+	 */
+	private final List<Expense> content;
+	
+	/**
+	 * Курсор для получения следующей страницы или null, если страница последняя.
+	 */
+	private final String nextCursor;
+
+	public ExpensePage(List<Expense> content, String nextCursor) {
+		this.content = content;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<Expense> getContent() {
+		return content;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+}
@@ -0,0 +1,179 @@
+package com.expense.service;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Обслуживание месячных секций таблицы expense в PostgreSQL (см. функции create_expense_partitions и
+ * detach_expense_partitions в schema.sql). При запуске приложения и по расписанию db.partitions.cron создаются секции
+ * с текущего месяца на db.partitions.monthsAhead месяцев вперед, чтобы новые расходы не попадали в секцию по умолчанию.
+ * При db.partitions.retentionMonths больше 0 секции старше этого числа месяцев отключаются от таблицы,
+ * а при db.partitions.dropDetached=true - удаляются.
+ * <p>
+ * Расходы отключенных секций больше не входят в таблицу expense, поэтому после отключения производные данные
+ * приводятся к оставшимся расходам: дневные итоги пересчитываются за месяцы отключенных секций, счетчики расходов категорий
+ * пересчитываются целиком, загруженные механизмы агрегирования в памяти перезагружаются.
+ * <p>
+ * Обслуживание выполняется, если db.partitions.enabled=true и база данных - PostgreSQL; ошибки записываются в журнал
+ * и не прерывают запуск приложения.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class ExpensePartitionMaintenance implements ApplicationListener<ContextRefreshedEvent> {
+	private static Logger logger = LoggerFactory.getLogger(ExpensePartitionMaintenance.class);
+
+	/**
+	 * Формат месяца в имени секции expense_YYYY_MM.
+	 */
+	private final static DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+
+	private DataSource dataSource;
+
+	private Environment env;
+
+	private ExpenseRollupService rollupService;
+
+	private CategoryUsageService usageService;
+
+	private ExpenseColumnStore columnStore;
+
+	private ExpenseFenwickIndex fenwickIndex;
+
+	/**
+	 * Обслуживание при запуске уже выполнялось: событие приходит и от родительского, и от дочернего контекста.
+	 */
+	private boolean startedUp;
+
+	@Autowired
+	public void setDataSource(DataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Autowired
+	public void setEnvironment(Environment env) {
+		this.env = env;
+	}
+
+	@Autowired
+	public void setRollupService(ExpenseRollupService rollupService) {
+		this.rollupService = rollupService;
+	}
+
+	@Autowired
+	public void setUsageService(CategoryUsageService usageService) {
+		this.usageService = usageService;
+	}
+
+	@Autowired
+	public void setColumnStore(ExpenseColumnStore columnStore) {
+		this.columnStore = columnStore;
+	}
+
+	@Autowired
+	public void setFenwickIndex(ExpenseFenwickIndex fenwickIndex) {
+		this.fenwickIndex = fenwickIndex;
+	}
+
+	@Override
+	public synchronized void onApplicationEvent(ContextRefreshedEvent event) {
+		if (!startedUp) {
+			startedUp = true;
+			maintainIfEnabled();
+		}
+	}
+
+	/**
+	 * Обслуживание секций по расписанию.
+	 */
+	@Scheduled(cron = "${db.partitions.cron:0 0 3 * * *}")
+	public void scheduledMaintenance() {
+		maintainIfEnabled();
+	}
+
+	private void maintainIfEnabled() {
+		if (!env.getProperty("db.partitions.enabled", Boolean.class, false)) {
+			return;
+		}
+		try {
+			if (!isPostgreSql()) {
+				logger.info("Expense partition maintenance skipped: database is not PostgreSQL");
+				return;
+			}
+			maintain(LocalDate.now());
+		} catch (Exception e) {
+			logger.error("Expense partition maintenance failed. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+		}
+	}
+
+	/**
+	 * Создание секций на db.partitions.monthsAhead месяцев вперед и отключение секций старше db.partitions.retentionMonths месяцев.
+	 * @param today Текущая дата.
+	 * @return Число созданных секций.
+	 */
+	public synchronized int maintain(LocalDate today) {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		LocalDate thisMonth = today.withDayOfMonth(1);
+		int monthsAhead = env.getProperty("db.partitions.monthsAhead", Integer.class, 3);
+		Integer created = jdbcTemplate.queryForObject("select expense.create_expense_partitions(?, ?)", Integer.class,
+				Date.valueOf(thisMonth), Date.valueOf(thisMonth.plusMonths(monthsAhead)));
+		logger.info("Expense partitions up to {} checked, created = {}", thisMonth.plusMonths(monthsAhead), created);
+		int retentionMonths = env.getProperty("db.partitions.retentionMonths", Integer.class, 0);
+		if (retentionMonths > 0) {
+			boolean dropDetached = env.getProperty("db.partitions.dropDetached", Boolean.class, false);
+			List<String> detached = jdbcTemplate.queryForList("select expense.detach_expense_partitions(?, ?)", String.class,
+					Date.valueOf(thisMonth.minusMonths(retentionMonths)), dropDetached);
+			if (!detached.isEmpty()) {
+				logger.info("Expense partitions {}: {}", dropDetached ? "dropped" : "detached", detached);
+				refreshDerivedData(detached);
+			}
+		}
+		return created == null ? 0 : created;
+	}
+
+	/**
+	 * Приведение производных данных к расходам, оставшимся после отключения секций. При ошибке производные данные
+	 * восстанавливаются пересчетом: POST /api/expense-rollup/rebuild и POST /api/category-usage/rebuild.
+	 * @param detached Имена отключенных секций (expense_YYYY_MM).
+	 */
+	void refreshDerivedData(List<String> detached) {
+		YearMonth firstMonth = null;
+		YearMonth lastMonth = null;
+		for (String partition : detached) {
+			YearMonth month = YearMonth.parse(partition.substring("expense_".length()), PARTITION_MONTH);
+			firstMonth = firstMonth == null || month.isBefore(firstMonth) ? month : firstMonth;
+			lastMonth = lastMonth == null || month.isAfter(lastMonth) ? month : lastMonth;
+		}
+		rollupService.rebuild(firstMonth.atDay(1), lastMonth.atEndOfMonth());
+		usageService.rebuild();
+		if (columnStore.isLoaded()) {
+			columnStore.reload();
+		}
+		if (fenwickIndex.isLoaded()) {
+			fenwickIndex.reload();
+		}
+	}
+
+	private boolean isPostgreSql() throws SQLException {
+		try (Connection connection = dataSource.getConnection()) {
+			return "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+		}
+	}
+}
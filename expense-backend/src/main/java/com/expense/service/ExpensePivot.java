@@ -0,0 +1,195 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.expense.entities.Category;
+
+/**
+ * Сводная таблица расходов: строки - родительские категории с промежуточными итогами и их подкатегории,
+ * столбцы - месяцы периода. Суммы хранятся по категориям, строки таблицы формируются по одной при обходе
+ * {@link #forEachRow(Consumer)}, поэтому таблицу можно выдавать клиенту потоком.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ExpensePivot {
+	/**
+	 * Максимальное число месяцев в таблице.
+	 */
+	public final static int MAX_MONTHS = 1200;
+
+	/**
+	 * Название строки с расходами, сохраненными без подкатегории.
+	 */
+	public final static String NO_SUBCATEGORY = "Без подкатегории";
+
+	/**
+	 * Месяцы периода по порядку.
+	 */
+	private final List<YearMonth> months = new ArrayList<>();
+
+	/**
+	 * Номер столбца по месяцу.
+	 */
+	private final Map<YearMonth, Integer> monthIndex = new HashMap<>();
+
+	/**
+	 * Родительские категории по порядку строк.
+	 */
+	private final List<Category> parents;
+
+	/**
+	 * Подкатегории по идентификатору родительской категории.
+	 */
+	private final Map<Integer, List<Category>> children;
+
+	/**
+	 * Суммы по месяцам по идентификатору категории.
+	 */
+	private final Map<Integer, BigDecimal[]> totals = new HashMap<>();
+
+	/**
+	 * Создание таблицы без сумм.
+	 * @param firstMonth Первый месяц периода.
+	 * @param lastMonth Последний месяц периода.
+	 * @param parents Родительские категории по порядку строк.
+	 * @param children Подкатегории по порядку строк по идентификатору родительской категории.
+	 * @throws IllegalArgumentException Если последний месяц раньше первого или месяцев больше {@value #MAX_MONTHS}.
+	 */
+	public ExpensePivot(YearMonth firstMonth, YearMonth lastMonth, List<Category> parents, Map<Integer, List<Category>> children) {
+		if (lastMonth.isBefore(firstMonth)) {
+			throw new IllegalArgumentException("dateTo " + lastMonth + " is before dateFrom " + firstMonth);
+		}
+		for (YearMonth month = firstMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+			if (months.size() == MAX_MONTHS) {
+				throw new IllegalArgumentException("Too many months in the period, maximum is " + MAX_MONTHS);
+			}
+			monthIndex.put(month, months.size());
+			months.add(month);
+		}
+		this.parents = parents;
+		this.children = children;
+	}
+
+	/**
+	 * Добавление суммы расходов категории за месяц.
+	 * @param categoryId Идентификатор категории.
+	 * @param month Месяц.
+	 * @param amount Сумма расходов.
+	 */
+	public void add(int categoryId, YearMonth month, BigDecimal amount) {
+		BigDecimal[] values = totals.computeIfAbsent(categoryId, id -> zeros());
+		int column = monthIndex.get(month);
+		values[column] = values[column].add(amount);
+	}
+
+	/**
+	 * @return Месяцы периода по порядку в формате yyyy-MM.
+	 */
+	public List<String> getMonths() {
+		List<String> result = new ArrayList<>(months.size());
+		months.forEach(month -> result.add(month.toString()));
+		return result;
+	}
+
+	/**
+	 * Обход строк таблицы по порядку: для каждой родительской категории - строка с промежуточным итогом, строки подкатегорий
+	 * и строка расходов без подкатегории, если такие расходы есть.
+	 * @param consumer Получатель строк.
+	 */
+	public void forEachRow(Consumer<Row> consumer) {
+		for (Category parent : parents) {
+			List<Category> subcategories = children.getOrDefault(parent.getId(), Collections.emptyList());
+			BigDecimal[] subtotal = zeros();
+			BigDecimal[] own = totals.get(parent.getId());
+			addTo(subtotal, own);
+			subcategories.forEach(sub -> addTo(subtotal, totals.get(sub.getId())));
+			consumer.accept(new Row(parent.getName(), null, subtotal));
+			for (Category sub : subcategories) {
+				consumer.accept(new Row(parent.getName(), sub.getName(), totals.getOrDefault(sub.getId(), zeros())));
+			}
+			if (own != null && !subcategories.isEmpty()) {
+				consumer.accept(new Row(parent.getName(), NO_SUBCATEGORY, own));
+			}
+		}
+	}
+
+	/**
+	 * @return Строка общего итога по всем категориям.
+	 */
+	public Row getTotalRow() {
+		BigDecimal[] total = zeros();
+		totals.values().forEach(values -> addTo(total, values));
+		return new Row(null, null, total);
+	}
+
+	private BigDecimal[] zeros() {
+		BigDecimal[] values = new BigDecimal[months.size()];
+		Arrays.fill(values, BigDecimal.ZERO);
+		return values;
+	}
+
+	private static void addTo(BigDecimal[] sum, BigDecimal[] values) {
+		if (values != null) {
+			for (int i = 0; i < sum.length; i++) {
+				sum[i] = sum[i].add(values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Строка сводной таблицы.
+	 */
+	public static class Row {
+		/**
+		 * Родительская категория или null в строке общего итога.
+		 */
+		private final String category;
+
+		/**
+		 * Подкатегория или null в строке промежуточного итога родительской категории и в строке общего итога.
+		 */
+		private final String subcategory;
+
+		/**
+		 * Суммы по месяцам.
+		 */
+		private final BigDecimal[] values;
+
+		Row(String category, String subcategory, BigDecimal[] values) {
+			this.category = category;
+			this.subcategory = subcategory;
+			this.values = values;
+		}
+
+		public String getCategory() {
+			return category;
+		}
+
+		public String getSubcategory() {
+			return subcategory;
+		}
+
+		public List<BigDecimal> getValues() {
+			return Arrays.asList(values);
+		}
+
+		/**
+		 * @return Сумма строки за весь период.
+		 */
+		public BigDecimal getTotal() {
+			BigDecimal total = BigDecimal.ZERO;
+			for (BigDecimal value : values) {
+				total = total.add(value);
+			}
+			return total;
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.expense.entities.Expense;
+import com.expense.entities.ExpenseDailyRollupId;
+import com.expense.repos.CategoryDayTotal;
+import com.expense.repos.CategoryMonthTotal;
+import com.expense.repos.CategoryTotal;
+import com.expense.repos.ExpenseDailyRollupRepository;
+
+/**
+ * Класс из уровня обслуживания для поддержки и чтения дневных итогов расходов (таблица expense_daily_rollup).
+ * Изменения расходов накапливаются в пределах транзакции и записываются в итоги одним обновлением на пару (дата, категория)
+ * непосредственно перед фиксацией транзакции, в которой изменялись расходы.
+ * Дневные итоги - механизм агрегирования по умолчанию ({@value #NAME}).
+ * @author Alexandr Trifonov
+ *
+ */
+@Transactional
+@Service
+public class ExpenseRollupService implements ExpenseChangeListener, ExpenseAggregationEngine {
+	private static Logger logger = LoggerFactory.getLogger(ExpenseRollupService.class);
+	
+	/**
+	 * Имя механизма агрегирования.
+	 */
+	public final static String NAME = "rollup";
+	
+	/**
+	 * Репозиторий дневных итогов.
+	 */
+	private ExpenseDailyRollupRepository rollupRepo;
+	
+	/**
+	 * Версии данных для условных GET запросов.
+	 */
+	private DataVersion dataVersion;
+	
+	/**
+	 * Добавление к дневному итогу с созданием итога при его отсутствии.
+	 */
+	private final static CounterUpsert ROLLUP_UPSERT = new CounterUpsert("expense_daily_rollup", 
+			new String[] {"local_date", "category_id"}, new String[] {"total_price", "expense_count"});
+	
+	/**
+	 * EntityManager текущей транзакции для записи дневных итогов.
+	 */
+	@PersistenceContext
+	private EntityManager entityManager;
+	
+	@Autowired
+	public void setRollupRepo(ExpenseDailyRollupRepository rollupRepo) {
+		this.rollupRepo = rollupRepo;
+	}
+	
+	@Autowired
+	public void setDataVersion(DataVersion dataVersion) {
+		this.dataVersion = dataVersion;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void expenseAdded(Expense expense) {
+		addDelta(expense, 1);
+	}
+
+	@Override
+	public void expenseRemoved(Expense expense) {
+		addDelta(expense, -1);
+	}
+	
+	/**
+	 * Пересчет всех дневных итогов по таблице расходов. Используется для первоначального заполнения 
+	 * и для восстановления итогов после изменения расходов в обход приложения.
+	 * @return Число рассчитанных дневных итогов.
+	 */
+	public int rebuild() {
+		rollupRepo.deleteAllRollups();
+		int rows = rollupRepo.insertFromExpenses();
+		dataVersion.expensesChanged();
+		logger.info("Expense daily rollup rebuilt, rows = {}", rows);
+		return rows;
+	}
+	
+	/**
+	 * Пересчет дневных итогов в периоде дат по таблице расходов. Используется после отключения секций таблицы расходов,
+	 * чтобы итоги не учитывали расходы отключенных секций.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Число рассчитанных дневных итогов.
+	 */
+	public int rebuild(LocalDate startDate, LocalDate finishDate) {
+		rollupRepo.deleteRollupsBetween(startDate, finishDate);
+		int rows = rollupRepo.insertFromExpensesBetween(startDate, finishDate);
+		dataVersion.expensesChanged();
+		logger.info("Expense daily rollup rebuilt from {} to {}, rows = {}", startDate, finishDate, rows);
+		return rows;
+	}
+	
+	/**
+	 * Получение сумм расходов в указанном периоде дат по родительским категориям.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Суммы расходов по родительским категориям.
+	 */
+	@Transactional(readOnly = true)
+	public List<CategoryTotal> sumByParentCategory(LocalDate startDate, LocalDate finishDate) {
+		return rollupRepo.sumTotalPriceByParentCategory(startDate, finishDate);
+	}
+	
+	/**
+	 * Получение сумм расходов в указанном периоде дат по каждой из указанных категорий.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Список идентификаторов категорий.
+	 * @return Суммы расходов по категориям.
+	 */
+	@Transactional(readOnly = true)
+	public List<CategoryTotal> sumByCategory(LocalDate startDate, LocalDate finishDate, List<Integer> categoryIds) {
+		return rollupRepo.sumTotalPriceByCategory(startDate, finishDate, categoryIds);
+	}
+	
+	/**
+	 * Получение сумм расходов по дням в указанном периоде дат по родительским категориям.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Суммы расходов по дням и родительским категориям.
+	 */
+	@Transactional(readOnly = true)
+	public List<CategoryDayTotal> dailyByParentCategory(LocalDate startDate, LocalDate finishDate) {
+		return rollupRepo.sumDailyTotalPriceByParentCategory(startDate, finishDate);
+	}
+	
+	/**
+	 * Получение сумм расходов по дням в указанном периоде дат по каждой из указанных категорий.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @param categoryIds Список идентификаторов категорий.
+	 * @return Суммы расходов по дням и категориям.
+	 */
+	@Transactional(readOnly = true)
+	public List<CategoryDayTotal> dailyByCategory(LocalDate startDate, LocalDate finishDate, List<Integer> categoryIds) {
+		return rollupRepo.findDailyTotalPriceByCategory(startDate, finishDate, categoryIds);
+	}
+	
+	/**
+	 * Получение сумм расходов по месяцам в указанном периоде дат по каждой категории.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @return Суммы расходов по категориям и месяцам.
+	 */
+	@Transactional(readOnly = true)
+	public List<CategoryMonthTotal> monthlyByCategory(LocalDate startDate, LocalDate finishDate) {
+		return rollupRepo.sumMonthlyTotalPriceByCategory(startDate, finishDate);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, BigDecimal> totalsByParentCategory(LocalDate startDate, LocalDate finishDate) {
+		return toMap(sumByParentCategory(startDate, finishDate));
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, BigDecimal> totalsByCategory(LocalDate startDate, LocalDate finishDate, Collection<Integer> categoryIds) {
+		return toMap(sumByCategory(startDate, finishDate, new ArrayList<>(categoryIds)));
+	}
+	
+	/**
+	 * Преобразование результата агрегирующего запроса в Map.
+	 * @param totals Суммы расходов по категориям.
+	 * @return Map с идентификаторами категорий и суммами расходов по ним.
+	 */
+	private static Map<Integer, BigDecimal> toMap(List<CategoryTotal> totals) {
+		return totals.stream().collect(Collectors.toMap(CategoryTotal::getCategoryId, CategoryTotal::getTotal));
+	}
+	
+	/**
+	 * Учет изменения расхода в накопленных изменениях текущей транзакции.
+	 * @param expense Расход.
+	 * @param sign 1 при добавлении расхода, -1 при удалении.
+	 */
+	private void addDelta(Expense expense, int sign) {
+		ExpenseDailyRollupId key = new ExpenseDailyRollupId(expense.getLocalDate(), expense.getCategory().getId());
+		BigDecimal amount = sign > 0 ? expense.getTotalPrice() : expense.getTotalPrice().negate();
+		Map<ExpenseDailyRollupId, Delta> deltas = currentDeltas();
+		deltas.computeIfAbsent(key, k -> new Delta()).add(amount, sign);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			applyDeltas(deltas);
+		}
+	}
+	
+	/**
+	 * Получение накопленных изменений текущей транзакции. При первом обращении в транзакции регистрируется 
+	 * синхронизация, которая записывает изменения в итоги перед фиксацией транзакции.
+	 * @return Накопленные изменения.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<ExpenseDailyRollupId, Delta> currentDeltas() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return new HashMap<>();
+		}
+		Map<ExpenseDailyRollupId, Delta> deltas = (Map<ExpenseDailyRollupId, Delta>) TransactionSynchronizationManager.getResource(this);
+		if (deltas == null) {
+			Map<ExpenseDailyRollupId, Delta> newDeltas = new HashMap<>();
+			TransactionSynchronizationManager.bindResource(this, newDeltas);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					applyDeltas(newDeltas);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(ExpenseRollupService.this);
+				}
+			});
+			deltas = newDeltas;
+		}
+		return deltas;
+	}
+	
+	/**
+	 * Запись накопленных изменений в дневные итоги.
+	 * @param deltas Накопленные изменения.
+	 */
+	private void applyDeltas(Map<ExpenseDailyRollupId, Delta> deltas) {
+		//итоги изменяются в одном порядке во всех транзакциях, чтобы транзакции с несколькими итогами не взаимоблокировались
+		List<ExpenseDailyRollupId> keys = new ArrayList<>(deltas.keySet());
+		keys.sort(Comparator.comparing(ExpenseDailyRollupId::getLocalDate).thenComparing(ExpenseDailyRollupId::getCategoryId));
+		keys.forEach(key -> {
+			Delta delta = deltas.get(key);
+			if (delta.isEmpty()) {
+				return;
+			}
+			ROLLUP_UPSERT.add(entityManager, new Object[] {Date.valueOf(key.getLocalDate()), key.getCategoryId()}, 
+					new Object[] {delta.amount, delta.count});
+			if (delta.count < 0) {
+				rollupRepo.deleteIfEmpty(key.getLocalDate(), key.getCategoryId());
+			}
+		});
+		deltas.clear();
+	}
+	
+	/**
+	 * Изменение дневного итога: сумма и число расходов.
+	 */
+	private static class Delta {
+		private BigDecimal amount = BigDecimal.ZERO;
+		private long count;
+		
+		void add(BigDecimal amount, int count) {
+			this.amount = this.amount.add(amount);
+			this.count += count;
+		}
+		
+		boolean isEmpty() {
+			return count == 0 && amount.signum() == 0;
+		}
+	}
+}
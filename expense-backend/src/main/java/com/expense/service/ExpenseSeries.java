@@ -0,0 +1,224 @@
+package com.expense.service;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Ряды сумм расходов по категориям и интервалам времени (день, неделя, месяц, год) для графиков динамики расходов.
+ * Интервалы идут подряд от интервала начальной даты до интервала конечной даты, интервалы без расходов содержат 0.
+ * Интервал обозначается своей первой датой; неделя начинается с понедельника.
+ * Ряды различаются по идентификатору категории, название категории - только подпись ряда, поэтому ряды с одинаковыми
+ * подписями не сливаются.
+ * @author Alexandr Trifonov
+ *
+ */
+public class ExpenseSeries {
+	/**
+	 * Максимальное число интервалов в ряду.
+	 */
+	public final static int MAX_BUCKETS = 10_000;
+
+	/**
+	 * Интервал времени ряда.
+	 */
+	public enum Granularity {
+		DAY, WEEK, MONTH, YEAR;
+
+		/**
+		 * Получение интервала по значению параметра запроса без учета регистра.
+		 * @param value Значение параметра: day, week, month или year.
+		 * @return Интервал.
+		 * @throws IllegalArgumentException Если значение не соответствует ни одному интервалу.
+		 */
+		public static Granularity parse(String value) {
+			try {
+				return valueOf(value.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown granularity: " + value + ", expected day, week, month or year");
+			}
+		}
+
+		/**
+		 * @param date Дата.
+		 * @return Первая дата интервала, в который входит дата.
+		 */
+		LocalDate truncate(LocalDate date) {
+			switch (this) {
+			case WEEK:
+				return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+			case MONTH:
+				return date.withDayOfMonth(1);
+			case YEAR:
+				return date.withDayOfYear(1);
+			default:
+				return date;
+			}
+		}
+
+		/**
+		 * @param bucket Первая дата интервала.
+		 * @return Первая дата следующего интервала.
+		 */
+		LocalDate next(LocalDate bucket) {
+			switch (this) {
+			case WEEK:
+				return bucket.plusWeeks(1);
+			case MONTH:
+				return bucket.plusMonths(1);
+			case YEAR:
+				return bucket.plusYears(1);
+			default:
+				return bucket.plusDays(1);
+			}
+		}
+	}
+
+	private final Granularity granularity;
+
+	/**
+	 * Первые даты интервалов по порядку.
+	 */
+	private final List<LocalDate> buckets = new ArrayList<>();
+
+	/**
+	 * Номер интервала по его первой дате.
+	 */
+	private final Map<LocalDate, Integer> bucketIndex = new HashMap<>();
+
+	/**
+	 * Названия рядов по идентификатору категории.
+	 */
+	private final Map<Integer, String> names = new HashMap<>();
+
+	/**
+	 * Суммы по интервалам по идентификатору категории.
+	 */
+	private final Map<Integer, BigDecimal[]> totals = new HashMap<>();
+
+	/**
+	 * Создание рядов без сумм.
+	 * @param granularity Интервал времени.
+	 * @param startDate Начальная дата периода.
+	 * @param finishDate Конечная дата периода.
+	 * @throws IllegalArgumentException Если конечная дата раньше начальной или интервалов больше {@value #MAX_BUCKETS}.
+	 */
+	public ExpenseSeries(Granularity granularity, LocalDate startDate, LocalDate finishDate) {
+		if (finishDate.isBefore(startDate)) {
+			throw new IllegalArgumentException("dateTo " + finishDate + " is before dateFrom " + startDate);
+		}
+		this.granularity = granularity;
+		for (LocalDate bucket = granularity.truncate(startDate); !bucket.isAfter(finishDate); bucket = granularity.next(bucket)) {
+			if (buckets.size() == MAX_BUCKETS) {
+				throw new IllegalArgumentException("Too many " + granularity.name().toLowerCase(Locale.ROOT)
+						+ " buckets in the period, maximum is " + MAX_BUCKETS);
+			}
+			bucketIndex.put(bucket, buckets.size());
+			buckets.add(bucket);
+		}
+	}
+
+	/**
+	 * Добавление ряда с нулевыми суммами, если его еще нет.
+	 * @param categoryId Идентификатор категории ряда.
+	 * @param name Название ряда.
+	 */
+	public void addSeries(Integer categoryId, String name) {
+		names.putIfAbsent(categoryId, name);
+		totals.computeIfAbsent(categoryId, key -> {
+			BigDecimal[] values = new BigDecimal[buckets.size()];
+			Arrays.fill(values, BigDecimal.ZERO);
+			return values;
+		});
+	}
+
+	/**
+	 * Добавление суммы к интервалу ряда. Суммы категорий без ряда не учитываются.
+	 * @param categoryId Идентификатор категории ряда.
+	 * @param date Дата расходов.
+	 * @param amount Сумма расходов.
+	 */
+	public void add(Integer categoryId, LocalDate date, BigDecimal amount) {
+		BigDecimal[] values = totals.get(categoryId);
+		if (values != null) {
+			int bucket = bucketIndex.get(granularity.truncate(date));
+			values[bucket] = values[bucket].add(amount);
+		}
+	}
+
+	/**
+	 * @return Интервал времени: day, week, month или year.
+	 */
+	public String getGranularity() {
+		return granularity.name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return Первые даты интервалов по порядку в формате ISO (yyyy-MM-dd).
+	 */
+	public List<String> getBuckets() {
+		List<String> result = new ArrayList<>(buckets.size());
+		buckets.forEach(bucket -> result.add(bucket.toString()));
+		return result;
+	}
+
+	/**
+	 * @return Ряды, упорядоченные по названию, при одинаковых названиях - по идентификатору категории.
+	 */
+	public List<Series> getSeries() {
+		List<Series> result = new ArrayList<>(totals.size());
+		totals.forEach((categoryId, values) -> {
+			List<Double> series = new ArrayList<>(values.length);
+			for (BigDecimal value : values) {
+				series.add(value.doubleValue());
+			}
+			result.add(new Series(categoryId, names.get(categoryId), series));
+		});
+		result.sort(Comparator.comparing(Series::getName).thenComparing(Series::getCategoryId));
+		return result;
+	}
+
+	/**
+	 * Ряд сумм одной категории.
+	 */
+	public static class Series {
+		private final Integer categoryId;
+		private final String name;
+		private final List<Double> values;
+
+		Series(Integer categoryId, String name, List<Double> values) {
+			this.categoryId = categoryId;
+			this.name = name;
+			this.values = values;
+		}
+
+		/**
+		 * @return Идентификатор категории.
+		 */
+		public Integer getCategoryId() {
+			return categoryId;
+		}
+
+		/**
+		 * @return Название ряда (категории) для подписи.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Суммы по интервалам по порядку.
+		 */
+		public List<Double> getValues() {
+			return values;
+		}
+	}
+}
@@ -2,19 +2,27 @@ package com.expense.service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.expense.entities.Category;
 import com.expense.entities.Expense;
+import com.expense.repos.CategoryDayTotal;
 import com.expense.repos.ExpenseRepository;
 
 /**
@@ -36,9 +44,25 @@ public class ExpenseService {
 	private CategoryService categoryService;
 	
 	/**
-	 * Константа для получения параметра запроса с периодом дат.
+	 * Построение условий отбора и сортировки расходов по параметрам запроса.
 	 */
-	private final static String DATES = "dates";
+	private ExpenseCriteria criteria;
+	
+	/**
+	 * Механизм агрегирования расходов для диаграмм.
+	 */
+	private ExpenseAggregationEngine aggregationEngine;
+	
+	/**
+	 * Объект уровня обслуживания для доступа к дневным итогам расходов.
+	 */
+	private ExpenseRollupService rollupService;
+	
+	/**
+	 * Слушатели изменений расходов.
+	 */
+	private List<ExpenseChangeListener> changeListeners = Collections.emptyList();
+	
 	/**
 	 * Константа для получения параметра запроса с начальной датой.
 	 */
@@ -48,21 +72,29 @@ public class ExpenseService {
 	 */
 	private final static String DATE_TO = "dateTo";
 	/**
-	 * Константа для получения параметра запроса с диапазоном цен.
-	 */
-	private final static String PRICES = "prices";
-	/**
-	 * Константа для получения параметра запроса с символьной последовательностью для поиска примечаний к расходам.
+	 * Константа для получения параметра запроса с интервалом времени рядов расходов.
 	 */
-	private final static String NOTE = "note";
+	private final static String GRANULARITY = "granularity";
 	/**
 	 * Константа для получения параметра запроса с идентификатором категории.
 	 */
 	private final static String CATEGORY_ID = "categoryId";
 	/**
-	 * Константа для получения параметра запроса для формирования объекта сортировки.
+	 * Название столбца диаграммы для расходов, сохраненных без подкатегории.
+	 */
+	private final static String NO_SUBCATEGORY = "Без подкатегории";
+	/**
+	 * Константа для получения параметра запроса с курсором следующей страницы.
+	 */
+	private final static String CURSOR = "cursor";
+	/**
+	 * Максимальный размер страницы при постраничном получении расходов.
+	 */
+	private final static int MAX_PAGE_SIZE = 1000;
+	/**
+	 * Число строк, получаемых из курсора базы данных за одно обращение при потоковой выдаче расходов.
 	 */
-	private final static String ORDER_BY = "orderBy";
+	private final static int STREAM_FETCH_SIZE = 500;
 	
 	@Autowired
 	public void setExpenseRepo(ExpenseRepository expenseRepo) {
@@ -75,6 +107,35 @@ public class ExpenseService {
 		this.categoryService = categoryService;
 	}
 	
+	@Autowired
+	public void setCriteria(ExpenseCriteria criteria) {
+		this.criteria = criteria;
+	}
+	
+	@Autowired
+	public void setRollupService(ExpenseRollupService rollupService) {
+		this.rollupService = rollupService;
+	}
+	
+	/**
+	 * Выбор механизма агрегирования по свойству {@value ExpenseAggregationEngine#PROPERTY}.
+	 * @param engines Все механизмы агрегирования.
+	 * @param env Окружение со свойствами приложения.
+	 */
+	@Autowired
+	public void setAggregationEngines(List<ExpenseAggregationEngine> engines, Environment env) {
+		String name = env.getProperty(ExpenseAggregationEngine.PROPERTY, ExpenseAggregationEngine.DEFAULT);
+		this.aggregationEngine = engines.stream()
+				.filter(engine -> engine.getName().equals(name))
+				.findFirst()
+				.orElseThrow(() -> new IllegalStateException("Unknown expense aggregation engine: " + name));
+	}
+	
+	@Autowired(required = false)
+	public void setChangeListeners(List<ExpenseChangeListener> changeListeners) {
+		this.changeListeners = changeListeners;
+	}
+	
 	/**
 	 * Получение расхода по идентификатору.
 	 * @param id Идентификатор расхода
@@ -82,7 +143,7 @@ public class ExpenseService {
 	 */
 	@Transactional(readOnly = true)
 	public Expense getExpense(long id) {
-		return expenseRepo.findById(id).get();
+		return expenseRepo.findWithCategoryById(id).get();
 	}
 	
 	/**
@@ -91,7 +152,21 @@ public class ExpenseService {
 	 * @return Добавленный расход.
 	 */
 	public Expense addExpense(Expense expense) {
-		return expenseRepo.save(expense);
+		Expense savedExpense = expenseRepo.save(expense);
+		changeListeners.forEach(listener -> listener.expenseAdded(savedExpense));
+		return savedExpense;
+	}
+	
+	/**
+	 * Добавление списка расходов в одной транзакции. Расходы вставляются пакетами JDBC.
+	 * @param expenses Список расходов.
+	 * @return Список добавленных расходов.
+	 */
+	public List<Expense> addExpenses(List<Expense> expenses) {
+		List<Expense> savedExpenses = new ArrayList<>(expenses.size());
+		expenseRepo.saveAll(expenses).forEach(savedExpenses::add);
+		changeListeners.forEach(listener -> savedExpenses.forEach(listener::expenseAdded));
+		return savedExpenses;
 	}
 	
 	/**
@@ -101,7 +176,8 @@ public class ExpenseService {
 	 * @return Обновленный расход.
 	 */
 	public Expense updateExpense(long id, Expense patchExpense) {		
-		Expense expense = getExpense(id);
+		Expense expense = expenseRepo.findById(id).get();
+		Expense previousExpense = expense.copy();
 		if (patchExpense.getCategory() != null) {
 			expense.setCategory(patchExpense.getCategory());
 		}
@@ -116,7 +192,12 @@ public class ExpenseService {
 		if (patchExpense.getNote() != null) {
 			expense.setNote(patchExpense.getNote());
 		}	
-		return expenseRepo.save(expense);
+		Expense savedExpense = expenseRepo.save(expense);
+		changeListeners.forEach(listener -> {
+			listener.expenseRemoved(previousExpense);
+			listener.expenseAdded(savedExpense);
+		});
+		return savedExpense;
 	}
 	
 	/**
@@ -124,7 +205,9 @@ public class ExpenseService {
 	 * @param id Идентификатор расхода
 	 */
 	public void deleteExpense(long id) {
-		expenseRepo.deleteById(id);
+		Expense expense = expenseRepo.findById(id).get();
+		expenseRepo.delete(expense);
+		changeListeners.forEach(listener -> listener.expenseRemoved(expense));
 	}
 	
 	/**
@@ -134,74 +217,62 @@ public class ExpenseService {
 	 */
 	@Transactional(readOnly = true)
 	public List<Expense> getCertainExpense(Map<String, String> params) {
-		String categoryParam = params.get(CATEGORY_ID);
-		String pricesParam = params.get(PRICES);
-		String noteParam = params.get(NOTE);		
-		String datesParam = params.get(DATES);
-		String orderByParam = params.get(ORDER_BY);		
-		
-		Sort sort = Sort.by(orderByParam);
-		List<Expense> expenseList = new LinkedList<>();
-		String[] dates = datesParam.split(",");
-		LocalDate startDate = LocalDate.parse(dates[0]);
-		LocalDate finishDate = LocalDate.parse(dates[1]);
-		
-		Category category = new Category();
-		List<Category> subcategories = new LinkedList<>();
-		if (categoryParam != null) {
-			category = categoryService.findCategory(Integer.parseInt(categoryParam));			
-			if (category.getParent() == null) {
-				subcategories = categoryService.getChilds(category);
-				subcategories.add(category); //категорию тоже нужно добавить в список категорий, т.к. есть  расходы без подкатегории и расход сохраняется с category_id = id категории
-			}
-		}
-		
-		Double totalPriceFrom = 0.0;
-		Double totalPriceTo = 0.0;
-		if (pricesParam != null) {
-			String[] prices = pricesParam.split(",");
-			totalPriceFrom = Double.parseDouble(prices[0]);
-			totalPriceTo = Double.parseDouble(prices[1]);
+		return expenseRepo.findAll(criteria.specification(params), criteria.sort(params));
+	}
+	
+	/**
+	 * Потоковая обработка расходов, удовлетворяющих спецификации. Расходы читаются из курсора базы данных 
+	 * и передаются обработчику по одному, не накапливаясь в памяти.
+	 * @param specification Спецификация отбора расходов, см. {@link ExpenseCriteria#specification(Map)}
+	 * @param sort Объект сортировки, см. {@link ExpenseCriteria#sort(Map)}
+	 * @param consumer Обработчик расходов.
+	 */
+	@Transactional(readOnly = true)
+	public void streamCertainExpense(Specification<Expense> specification, Sort sort, Consumer<Expense> consumer) {
+		try (Stream<Expense> expenses = expenseRepo.stream(specification, sort, STREAM_FETCH_SIZE)) {
+			expenses.forEach(consumer);
 		}
+	}
 	
-		if (categoryParam == null && pricesParam == null &&  noteParam == null) {
-			expenseList = expenseRepo.findAllByLocalDateBetween(startDate, finishDate, sort);
-		} else if (categoryParam != null && pricesParam == null &&  noteParam == null) {
-			if (category.getParent() == null) {				
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryIn(startDate, finishDate, subcategories, sort);
-			} else {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategory(startDate, finishDate, category, sort);
-			}
-		} else if (categoryParam != null && pricesParam != null && noteParam == null) {			
-			if (category.getParent() == null) {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryInAndTotalPriceBetween(startDate, finishDate, subcategories, totalPriceFrom, totalPriceTo, sort);
-			} else {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryAndTotalPriceBetween(startDate, finishDate, category, totalPriceFrom, totalPriceTo, sort);
-			}
-		} else if (categoryParam != null && pricesParam == null && noteParam != null) {
-			if (category.getParent() == null) {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryInAndNoteIgnoreCaseContaining(startDate, finishDate, subcategories, noteParam, sort);
-			} else {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryAndNoteIgnoreCaseContaining(startDate, finishDate, category, noteParam, sort);
-			}
-		} else if (categoryParam == null && pricesParam != null && noteParam == null) {			
-			expenseList = expenseRepo.findAllByLocalDateBetweenAndTotalPriceBetween(startDate, finishDate, totalPriceFrom, totalPriceTo, sort);
-		} else if (categoryParam == null && pricesParam != null && noteParam != null) {			
-			expenseList = expenseRepo.findAllByLocalDateBetweenAndNoteIgnoreCaseContainingAndTotalPriceBetween(startDate, finishDate, noteParam, totalPriceFrom, totalPriceTo, sort);
-		} else if (categoryParam == null && pricesParam == null && noteParam != null) {
-			expenseList = expenseRepo.findAllByLocalDateBetweenAndNoteIgnoreCaseContaining(startDate, finishDate, noteParam, sort);
-		} else if (categoryParam != null && pricesParam != null && noteParam != null) {			
-			if (category.getParent() == null) {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryInAndNoteIgnoreCaseContainingAndTotalPriceBetween(startDate, finishDate, subcategories, noteParam, totalPriceFrom, totalPriceTo, sort);
-			} else {
-				expenseList = expenseRepo.findAllByLocalDateBetweenAndCategoryAndNoteIgnoreCaseContainingAndTotalPriceBetween(startDate, finishDate, category, noteParam, totalPriceFrom, totalPriceTo, sort);
+	/**
+	 * Получение страницы расходов, удовлетворяющих указанным параметрам. 
+	 * Страницы выбираются методом keyset: следующая страница начинается после позиции, переданной в курсоре,
+	 * поэтому получение любой страницы стоит столько же, сколько получение первой.
+	 * @param params Map с названиями параметров и их значениями, включая размер страницы и, для не первой страницы, курсор.
+	 * @return Страница расходов и курсор следующей страницы.
+	 */
+	@Transactional(readOnly = true)
+	public ExpensePage getCertainExpensePage(Map<String, String> params) {
+		int pageSize = Integer.parseInt(params.get(ExpenseCriteria.PAGE_SIZE));
+		if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		String orderBy = params.get(ExpenseCriteria.ORDER_BY);
+		if (!ExpenseCursor.supports(orderBy)) {
+			throw new IllegalArgumentException("Paging is not supported for order by " + orderBy);
+		}
+		Specification<Expense> specification = criteria.specification(params);
+		String cursorParam = params.get(CURSOR);
+		if (cursorParam != null) {
+			ExpenseCursor cursor = ExpenseCursor.decode(cursorParam);
+			if (!cursor.getOrderBy().equals(orderBy)) {
+				throw new IllegalArgumentException("Cursor does not match order by " + orderBy);
 			}
+			specification = specification.and(cursor.toSpecification());
+		}
+		//запрашивается на одну строку больше размера страницы, чтобы узнать, есть ли следующая страница
+		List<Expense> expenseList = expenseRepo.findFirst(specification, criteria.sort(params), pageSize + 1);
+		if (expenseList.size() <= pageSize) {
+			return new ExpensePage(expenseList, null);
 		}
-		return expenseList;
+		List<Expense> content = expenseList.subList(0, pageSize);
+		return new ExpensePage(content, ExpenseCursor.after(orderBy, content.get(pageSize - 1)).encode());
 	}
 	
 	/**
 	 * Получение Map с категориями и суммой расходов по ним за указанный период.
+	 * Суммы считает выбранный механизм агрегирования: дневные итоги расходов (время ответа зависит от числа дней и категорий,
+	 * а не от числа расходов) или колоночное хранилище в памяти.
 	 * @param params Map с названиями параметров и их значениями
 	 * @return Map с категориями и суммой расходов по ним за указанный период.
 	 */
@@ -212,37 +283,77 @@ public class ExpenseService {
 		LocalDate finishDate = LocalDate.parse(params.get(DATE_TO));
 		Map<String, Double> expenseByCategory = new TreeMap<>();
 		if (categoryId != null) {
-			Category category = new Category();
-			List<Category> subcategories = new LinkedList<>();
-			
-			category = categoryService.findCategory(Integer.parseInt(categoryId));
-			subcategories = categoryService.getChilds(category);
+			Category category = categoryService.findCategory(Integer.parseInt(categoryId));
+			List<Category> subcategories = new ArrayList<>(categoryService.getChilds(category));
 			subcategories.add(category); //для случая, когда в расходе не указана подкатегория и расход сохраняется с category_id = id категории
-			List<Expense> expenses = expenseRepo.findAllByLocalDateBetweenAndCategoryIn(startDate, finishDate, subcategories);
-			subcategories.forEach(sub -> {
-				String name = sub.getName();
-				BigDecimal sumBigDec = expenses.stream().filter(e -> e.getCategory().getName().equals(name)).map(Expense::getTotalPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
-				double sum = sumBigDec.doubleValue();
-				expenseByCategory.put(name, sum);
-			});
-			double sumNoSubcategory = expenseByCategory.get(category.getName());
-			expenseByCategory.put("Без подкатегории", sumNoSubcategory);
-			expenseByCategory.remove(category.getName());
+			List<Integer> ids = subcategories.stream().map(Category::getId).collect(Collectors.toList());
+			Map<Integer, BigDecimal> totals = aggregationEngine.totalsByCategory(startDate, finishDate, ids);
+			subcategories.forEach(sub -> expenseByCategory.put(sub.getName(), totals.getOrDefault(sub.getId(), BigDecimal.ZERO).doubleValue()));
+			expenseByCategory.put(NO_SUBCATEGORY, expenseByCategory.remove(category.getName()));
 		} else {
-			List<Category> categories = categoryService.getParentCategories();
-			List<Expense> expenses = expenseRepo.findAllByLocalDateBetween(startDate, finishDate);
-			categories.forEach(category -> {
-				List<Category> subcategories = categoryService.getChilds(category);
-				subcategories.add(category);
-				String name = category.getName();
-				BigDecimal sumBigDec = expenses.stream().filter(e -> subcategories.contains(e.getCategory())).map(Expense::getTotalPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
-				double sum = sumBigDec.doubleValue();
-				expenseByCategory.put(name, sum);
-			});				
+			Map<Integer, BigDecimal> totals = aggregationEngine.totalsByParentCategory(startDate, finishDate);
+			categoryService.getParentCategories().forEach(category -> 
+				expenseByCategory.put(category.getName(), totals.getOrDefault(category.getId(), BigDecimal.ZERO).doubleValue()));
 		}
 		return expenseByCategory;
 	}
 	
+	/**
+	 * Получение рядов сумм расходов по категориям и интервалам времени за указанный период.
+	 * Ряды строятся за один проход по дневным итогам расходов: один запрос к базе данных независимо от числа интервалов.
+	 * Ряды различаются по идентификатору категории; ряд расходов без подкатегории - ряд самой категории с подписью "Без подкатегории".
+	 * Без параметра categoryId ряды строятся по родительским категориям, с ним - по подкатегориям указанной категории,
+	 * как в {@link #getDataForBar(Map)}.
+	 * @param params Map с названиями параметров и их значениями: dateFrom, dateTo, granularity (day, week, month или year,
+	 * по умолчанию month) и categoryId.
+	 * @return Ряды сумм расходов.
+	 */
+	@Transactional(readOnly = true)
+	public ExpenseSeries getDataForSeries(Map<String, String> params) {
+		String categoryId = params.get(CATEGORY_ID);
+		LocalDate startDate = LocalDate.parse(params.get(DATE_FROM));
+		LocalDate finishDate = LocalDate.parse(params.get(DATE_TO));
+		ExpenseSeries.Granularity granularity = ExpenseSeries.Granularity.parse(params.getOrDefault(GRANULARITY, "month"));
+		ExpenseSeries series = new ExpenseSeries(granularity, startDate, finishDate);
+		List<CategoryDayTotal> totals;
+		if (categoryId != null) {
+			Category category = categoryService.findCategory(Integer.parseInt(categoryId));
+			List<Integer> ids = new ArrayList<>();
+			for (Category sub : categoryService.getChilds(category)) {
+				series.addSeries(sub.getId(), sub.getName());
+				ids.add(sub.getId());
+			}
+			series.addSeries(category.getId(), NO_SUBCATEGORY); //расходы, сохраненные без подкатегории
+			ids.add(category.getId());
+			totals = rollupService.dailyByCategory(startDate, finishDate, ids);
+		} else {
+			categoryService.getParentCategories().forEach(parent -> series.addSeries(parent.getId(), parent.getName()));
+			totals = rollupService.dailyByParentCategory(startDate, finishDate);
+		}
+		totals.forEach(total -> series.add(total.getCategoryId(), total.getLocalDate(), total.getTotal()));
+		return series;
+	}
+	
+	/**
+	 * Получение сводной таблицы расходов по категориям и месяцам за указанный период.
+	 * Суммы получаются одним агрегирующим запросом к дневным итогам расходов, строки таблицы - по дереву категорий.
+	 * @param params Map с названиями параметров и их значениями: dateFrom и dateTo.
+	 * @return Сводная таблица расходов.
+	 */
+	@Transactional(readOnly = true)
+	public ExpensePivot getPivot(Map<String, String> params) {
+		LocalDate startDate = LocalDate.parse(params.get(DATE_FROM));
+		LocalDate finishDate = LocalDate.parse(params.get(DATE_TO));
+		List<Category> parents = categoryService.getParentCategories();
+		Map<Integer, List<Category>> children = new HashMap<>();
+		parents.forEach(parent -> children.put(parent.getId(), categoryService.getChilds(parent)));
+		ExpensePivot pivot = new ExpensePivot(YearMonth.from(startDate), YearMonth.from(finishDate), parents, children);
+		rollupService.monthlyByCategory(startDate, finishDate).forEach(total -> 
+			pivot.add(total.getCategoryId(), YearMonth.of(total.getYear(), total.getMonth()), total.getTotal()));
+		return pivot;
+	}
+	
+	@Transactional(readOnly = true)
 	public List<Expense> getAllExpense() {
 		List<Expense> expensies = new ArrayList<>();
 		Iterable<Expense> expenseIterable = expenseRepo.findAll();
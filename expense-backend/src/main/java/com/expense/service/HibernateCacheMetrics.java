@@ -0,0 +1,56 @@
+package com.expense.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import com.expense.entities.Category;
+
+/**
+ * Метрики кэша второго уровня Hibernate по статистике фабрики сессий (hibernate.generate_statistics).
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class HibernateCacheMetrics {
+	/**
+	 * Фабрика EntityManager для получения статистики.
+	 */
+	@PersistenceUnit
+	private EntityManagerFactory entityManagerFactory;
+	
+	/**
+	 * Текущие значения метрик: попадания, промахи и записи в кэш в целом и в регионе категорий.
+	 * @return Map с названиями метрик и их значениями.
+	 */
+	public Map<String, Number> snapshot() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		metrics.put("secondLevelHits", statistics.getSecondLevelCacheHitCount());
+		metrics.put("secondLevelMisses", statistics.getSecondLevelCacheMissCount());
+		metrics.put("secondLevelPuts", statistics.getSecondLevelCachePutCount());
+		putRegion(metrics, "category", statistics.getDomainDataRegionStatistics(Category.CACHE_REGION));
+		metrics.put("entityLoads", statistics.getEntityLoadCount());
+		metrics.put("queryExecutions", statistics.getQueryExecutionCount());
+		return metrics;
+	}
+	
+	/**
+	 * Добавление метрик одного региона кэша.
+	 * @param metrics Метрики.
+	 * @param prefix Префикс названий метрик региона.
+	 * @param region Статистика региона или null, если регион еще не создан.
+	 */
+	private void putRegion(Map<String, Number> metrics, String prefix, CacheRegionStatistics region) {
+		metrics.put(prefix + "Hits", region != null ? region.getHitCount() : 0L);
+		metrics.put(prefix + "Misses", region != null ? region.getMissCount() : 0L);
+		metrics.put(prefix + "Puts", region != null ? region.getPutCount() : 0L);
+	}
+}
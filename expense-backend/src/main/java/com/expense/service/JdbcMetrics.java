@@ -0,0 +1,180 @@
+package com.expense.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Счетчики обращений к базе данных: выполненные запросы SQL и прочитанные строки, всего и в пределах текущего HTTP запроса
+ * (или другого отрезка работы потока между {@link #begin()} и {@link #end()}, например, в тестах).
+ * Запросы текущего потока подсчитываются и по видам (select, insert, update, delete), чтобы тесты могли ограничивать число запросов.
+ * Счетчики увеличивает источник данных с подсчетом (см. com.expense.config.CountingDataSource),
+ * границы HTTP запроса отмечает перехватчик метрик (см. com.expense.web.RequestMetricsInterceptor).
+ * <p>
+ * Счетчики запроса хранятся в ThreadLocal, поэтому обращения к базе данных из других потоков
+ * (например, при потоковой выдаче расходов) учитываются только в общих счетчиках.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class JdbcMetrics {
+	/**
+	 * Счетчики текущего HTTP запроса или null вне запроса.
+	 */
+	private final ThreadLocal<Counts> current = new ThreadLocal<>();
+
+	/**
+	 * Всего выполнено запросов SQL (пакет выполняется как один запрос).
+	 */
+	private final LongAdder statements = new LongAdder();
+
+	/**
+	 * Всего прочитано строк.
+	 */
+	private final LongAdder rows = new LongAdder();
+
+	/**
+	 * Начало подсчета обращений к базе данных в текущем потоке.
+	 */
+	public void begin() {
+		current.set(new Counts());
+	}
+
+	/**
+	 * Окончание подсчета обращений к базе данных в текущем потоке.
+	 * @return Счетчики с момента вызова {@link #begin()} или null, если подсчет не начинался.
+	 */
+	public Counts end() {
+		Counts counts = current.get();
+		current.remove();
+		return counts;
+	}
+
+	/**
+	 * Счетчики текущего потока без окончания подсчета.
+	 * @return Счетчики с момента вызова {@link #begin()} или null, если подсчет не начинался.
+	 */
+	public Counts peek() {
+		return current.get();
+	}
+
+	/**
+	 * Отметка выполнения запроса SQL.
+	 * @param sql Текст запроса или null, если он неизвестен (например, пакет выражений Statement).
+	 */
+	public void statementExecuted(String sql) {
+		statements.increment();
+		Counts counts = current.get();
+		if (counts != null) {
+			counts.statements++;
+			if (sql != null) {
+				counts.countKind(sql);
+			}
+		}
+	}
+
+	/**
+	 * Отметка чтения строки результата.
+	 */
+	public void rowFetched() {
+		rows.increment();
+		Counts counts = current.get();
+		if (counts != null) {
+			counts.rows++;
+		}
+	}
+
+	/**
+	 * @return Всего выполнено запросов SQL.
+	 */
+	public long getStatements() {
+		return statements.sum();
+	}
+
+	/**
+	 * @return Всего прочитано строк.
+	 */
+	public long getRows() {
+		return rows.sum();
+	}
+
+	/**
+	 * Счетчики обращений к базе данных одного потока.
+	 */
+	public static class Counts {
+		private long statements;
+		private long selects;
+		private long inserts;
+		private long updates;
+		private long deletes;
+		private long rows;
+		
+		/**
+		 * Учет запроса по виду - по первому слову текста запроса.
+		 */
+		private void countKind(String sql) {
+			String trimmed = sql.trim();
+			if (startsWithIgnoreCase(trimmed, "select") || startsWithIgnoreCase(trimmed, "with")) {
+				selects++;
+			} else if (startsWithIgnoreCase(trimmed, "insert")) {
+				inserts++;
+			} else if (startsWithIgnoreCase(trimmed, "update")) {
+				updates++;
+			} else if (startsWithIgnoreCase(trimmed, "delete")) {
+				deletes++;
+			}
+		}
+		
+		private static boolean startsWithIgnoreCase(String sql, String prefix) {
+			return sql.regionMatches(true, 0, prefix, 0, prefix.length());
+		}
+
+		/**
+		 * @return Число выполненных запросов SQL.
+		 */
+		public long getStatements() {
+			return statements;
+		}
+
+		/**
+		 * @return Число запросов select (в том числе с with).
+		 */
+		public long getSelects() {
+			return selects;
+		}
+
+		/**
+		 * @return Число запросов insert.
+		 */
+		public long getInserts() {
+			return inserts;
+		}
+
+		/**
+		 * @return Число запросов update.
+		 */
+		public long getUpdates() {
+			return updates;
+		}
+
+		/**
+		 * @return Число запросов delete.
+		 */
+		public long getDeletes() {
+			return deletes;
+		}
+
+		/**
+		 * @return Число прочитанных строк.
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		@Override
+		public String toString() {
+			return "statements=" + statements + ", selects=" + selects + ", inserts=" + inserts + ", updates=" + updates 
+					+ ", deletes=" + deletes + ", rows=" + rows;
+		}
+	}
+}
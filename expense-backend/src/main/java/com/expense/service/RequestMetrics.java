@@ -0,0 +1,106 @@
+package com.expense.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Метрики обработки запросов: гистограммы времени выполнения методов контроллеров и репозиториев,
+ * числа запросов SQL и прочитанных строк на один HTTP запрос.
+ * Гистограммы создаются при первой записи для каждого сочетания меток и хранятся до остановки приложения;
+ * число сочетаний ограничено числом методов контроллеров и репозиториев.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class RequestMetrics {
+	/**
+	 * Время обработки HTTP запросов, с; метки handler, method, status.
+	 */
+	private final ConcurrentMap<String, BucketHistogram> requestSeconds = new ConcurrentHashMap<>();
+
+	/**
+	 * Число запросов SQL на HTTP запрос; метка handler.
+	 */
+	private final ConcurrentMap<String, BucketHistogram> requestStatements = new ConcurrentHashMap<>();
+
+	/**
+	 * Число прочитанных строк на HTTP запрос; метка handler.
+	 */
+	private final ConcurrentMap<String, BucketHistogram> requestRows = new ConcurrentHashMap<>();
+
+	/**
+	 * Время выполнения методов репозиториев, с; метки repository, method.
+	 */
+	private final ConcurrentMap<String, BucketHistogram> repositorySeconds = new ConcurrentHashMap<>();
+
+	/**
+	 * Запись обработанного HTTP запроса.
+	 * @param handler Обработчик в виде Контроллер.метод.
+	 * @param method HTTP метод.
+	 * @param status Код ответа.
+	 * @param nanos Время обработки, нс.
+	 * @param counts Обращения к базе данных за время обработки или null, если они не подсчитывались.
+	 */
+	public void recordRequest(String handler, String method, int status, long nanos, JdbcMetrics.Counts counts) {
+		String handlerLabel = "handler=\"" + handler + "\"";
+		histogram(requestSeconds, handlerLabel + ",method=\"" + method + "\",status=\"" + status + "\"", BucketHistogram.SECONDS)
+				.record(seconds(nanos));
+		if (counts != null) {
+			histogram(requestStatements, handlerLabel, BucketHistogram.COUNTS).record(counts.getStatements());
+			histogram(requestRows, handlerLabel, BucketHistogram.COUNTS).record(counts.getRows());
+		}
+	}
+
+	/**
+	 * Запись вызова метода репозитория.
+	 * @param repository Имя интерфейса репозитория.
+	 * @param method Имя метода.
+	 * @param nanos Время выполнения, нс.
+	 */
+	public void recordRepository(String repository, String method, long nanos) {
+		histogram(repositorySeconds, "repository=\"" + repository + "\",method=\"" + method + "\"", BucketHistogram.SECONDS)
+				.record(seconds(nanos));
+	}
+
+	/**
+	 * Запись метрик в текстовом формате Prometheus.
+	 * @param out Текст метрик.
+	 */
+	public void writeTo(StringBuilder out) {
+		writeFamily(out, "expense_http_request_duration_seconds", "HTTP request handling time by controller method", requestSeconds);
+		writeFamily(out, "expense_http_request_jdbc_statements", "SQL statements executed per HTTP request", requestStatements);
+		writeFamily(out, "expense_http_request_jdbc_rows", "Result rows fetched per HTTP request", requestRows);
+		writeFamily(out, "expense_repository_duration_seconds", "Repository method execution time", repositorySeconds);
+	}
+
+	/**
+	 * Число записанных HTTP запросов к обработчику.
+	 * @param handler Обработчик в виде Контроллер.метод.
+	 * @return Число запросов с любым методом и кодом ответа.
+	 */
+	public long getRequestCount(String handler) {
+		String prefix = "handler=\"" + handler + "\",";
+		return requestSeconds.entrySet().stream().filter(e -> e.getKey().startsWith(prefix)).mapToLong(e -> e.getValue().getCount()).sum();
+	}
+
+	private static void writeFamily(StringBuilder out, String name, String help, Map<String, BucketHistogram> histograms) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		new TreeMap<>(histograms).forEach((labels, histogram) -> histogram.writeTo(out, name, labels));
+	}
+
+	private static BucketHistogram histogram(ConcurrentMap<String, BucketHistogram> histograms, String labels, double[] bounds) {
+		//get без блокировки в обычном случае, computeIfAbsent только при первой записи
+		BucketHistogram histogram = histograms.get(labels);
+		return histogram != null ? histogram : histograms.computeIfAbsent(labels, l -> new BucketHistogram(bounds));
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+	}
+}
@@ -17,10 +17,13 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import com.expense.entities.Category;
 import com.expense.jsonview.View;
 import com.expense.service.CategoryService;
+import com.expense.service.CategoryUsageService;
+import com.expense.service.DataVersion;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -58,21 +61,47 @@ public class CategoryController {
 	 */
 	private CategoryService categoryService;
 	
+	/**
+	 * Сервис счетчиков расходов по категориям.
+	 */
+	private CategoryUsageService usageService;
+	
+	/**
+	 * Версии данных для условных GET запросов.
+	 */
+	private DataVersion dataVersion;
+	
 	@Autowired
 	public void setCategoryService(CategoryService categoryService) {
 		this.categoryService = categoryService;
 	}
+	
+	@Autowired
+	public void setUsageService(CategoryUsageService usageService) {
+		this.usageService = usageService;
+	}
+	
+	@Autowired
+	public void setDataVersion(DataVersion dataVersion) {
+		this.dataVersion = dataVersion;
+	}
 
 	/**
 	 * Обработка запросов для получения всех родительских категорий.
+	 * @param webRequest Запрос для проверки заголовков If-None-Match и If-Modified-Since: если данные не изменялись, возвращается 304.
 	 * @return Список родительских категорий.
 	 */
 	@JsonView(View.Public.class)
 	@GetMapping(path = "/category", produces = "application/json")
-	public ResponseEntity<?> getAllParentCategory() {
+	public ResponseEntity<?> getAllParentCategory(WebRequest webRequest) {
 		ResponseEntity<?> responseEntity;
 		HttpHeaders httpHeaders = new HttpHeaders();		
 		try {			
+			DataVersion.Tag tag = dataVersion.categories();
+			if (webRequest.checkNotModified(tag.getETag(), tag.getLastModified())) {
+				//данные не изменялись: ответ 304 с ETag и Last-Modified уже сформирован
+				return null;
+			}
 			responseEntity = new ResponseEntity<List<Category>>(categoryService.getParentCategories(), httpHeaders, HttpStatus.OK);
 		} catch(Exception e) {
 			logger.error("getAllParentCategory. error = {}, error class = {}", e.getMessage(), e.getClass(), e);			
@@ -172,13 +201,19 @@ public class CategoryController {
 	/**
 	 * Обработка запросов на получение всех подкатегорий для данной категории.
 	 * @param idStr Идентификатор категории.
+	 * @param webRequest Запрос для проверки заголовков If-None-Match и If-Modified-Since: если данные не изменялись, возвращается 304.
 	 * @return Список подкатегорий.
 	 */
 	@JsonView(View.Internal.class)
 	@GetMapping(path = "/category-child/{id}", produces = "application/json")
-	public ResponseEntity<?> getCategoryChild(@PathVariable("id") String idStr) {
+	public ResponseEntity<?> getCategoryChild(@PathVariable("id") String idStr, WebRequest webRequest) {
 		ResponseEntity<?> responseEntity;
 		try {			
+			DataVersion.Tag tag = dataVersion.categories();
+			if (webRequest.checkNotModified(tag.getETag(), tag.getLastModified())) {
+				//данные не изменялись: ответ 304 с ETag и Last-Modified уже сформирован
+				return null;
+			}
 			Integer id = Integer.parseInt(idStr);
 			Category parent = categoryService.findCategory(id);
 			responseEntity = new ResponseEntity<List<Category>>(categoryService.getChilds(parent), HttpStatus.OK);
@@ -201,13 +236,19 @@ public class CategoryController {
 	
 	/**
 	 * Обработка запросов на получение всех категорий без расходов (в том числе при наличии подкатегорий без расходов по подкатегориям). 
+	 * @param webRequest Запрос для проверки заголовков If-None-Match и If-Modified-Since: если данные не изменялись, возвращается 304.
 	 * @return Список категорий без расходов.
 	 */
 	@JsonView(View.Public.class)
 	@GetMapping(path = "/free-category", produces = "application/json")
-	public ResponseEntity<?> getFreeCategory() {
+	public ResponseEntity<?> getFreeCategory(WebRequest webRequest) {
 		ResponseEntity<?> responseEntity;
 		try {			
+			DataVersion.Tag tag = dataVersion.categoriesAndExpenses();
+			if (webRequest.checkNotModified(tag.getETag(), tag.getLastModified())) {
+				//данные не изменялись: ответ 304 с ETag и Last-Modified уже сформирован
+				return null;
+			}
 			responseEntity = new ResponseEntity<Iterable<Category>>(categoryService.getParentCategoriesNoExpense(), HttpStatus.OK);
 		} catch(Exception e) {
 			logger.error("getFreeCategory. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
@@ -222,13 +263,19 @@ public class CategoryController {
 	/**
 	 * Обработка запросов на получение всех подкатегорий без расходов для данной категории. 
 	 * @param parentIdStr Идентификатор родительской категории.
+	 * @param webRequest Запрос для проверки заголовков If-None-Match и If-Modified-Since: если данные не изменялись, возвращается 304.
 	 * @return Список подкатегорий без расходов.
 	 */
 	@JsonView(View.Internal.class)
 	@GetMapping(path = "/free-category-child/{id}", produces = "application/json")
-	public ResponseEntity<?> getFreeCategoryChild(@PathVariable("id") String parentIdStr) {
+	public ResponseEntity<?> getFreeCategoryChild(@PathVariable("id") String parentIdStr, WebRequest webRequest) {
 		ResponseEntity<?> responseEntity;
 		try {			
+			DataVersion.Tag tag = dataVersion.categoriesAndExpenses();
+			if (webRequest.checkNotModified(tag.getETag(), tag.getLastModified())) {
+				//данные не изменялись: ответ 304 с ETag и Last-Modified уже сформирован
+				return null;
+			}
 			Integer parentId = Integer.parseInt(parentIdStr);			
 			responseEntity = new ResponseEntity<List<Category>>(categoryService.getChildCategoriesNoExpense(parentId), HttpStatus.OK);
 		} catch(NumberFormatException e) {
@@ -247,6 +294,28 @@ public class CategoryController {
 		return responseEntity;
 	}
 	
+	/**
+	 * Обработка запросов на пересчет счетчиков расходов по категориям по всем расходам.
+	 * Используется для первоначального заполнения счетчиков и для их восстановления после изменения расходов в обход приложения.
+	 * @return Число рассчитанных счетчиков.
+	 */
+	@PostMapping(path = "/category-usage/rebuild", produces = "application/json")
+	public ResponseEntity<?> rebuildUsage() {
+		ResponseEntity<?> responseEntity;
+		try {
+			ObjectNode body = mapper.createObjectNode();
+			body.put("rows", usageService.rebuild());
+			responseEntity = new ResponseEntity<String>(body.toString(), HttpStatus.OK);
+		} catch (Exception e) {
+			logger.error("rebuildUsage. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());			
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return responseEntity;
+	}
+	
 	/*
 	@JsonView(View.Internal.class)
 	@GetMapping(path = "/category/{id}", produces = "application/json")
@@ -1,15 +1,29 @@
 package com.expense.web;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -20,10 +34,26 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.expense.entities.Expense;
+import com.expense.service.CompactExpenseList;
+import com.expense.service.DataVersion;
+import com.expense.service.ExpenseColumnStore;
+import com.expense.service.ExpenseCriteria;
+import com.expense.service.ExpenseFenwickIndex;
+import com.expense.service.ExpenseImportReport;
+import com.expense.service.ExpenseImportService;
+import com.expense.service.ExpensePage;
+import com.expense.service.ExpensePivot;
+import com.expense.service.ExpenseRollupService;
+import com.expense.service.ExpenseSeries;
 import com.expense.service.ExpenseService;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
@@ -59,16 +89,102 @@ public class ExpenseController {
 	 */
 	private final static String SERVER_ERROR = "SERVER_ERROR";
 	
+	/**
+	 * ObjectWriter для потоковой записи расходов. Сброс буфера после каждого расхода отключен, буфер сбрасывается порциями.
+	 */
+	private ObjectWriter expenseWriter = mapper.writerFor(Expense.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	
+	/**
+	 * Число расходов, после записи которых буфер ответа сбрасывается клиенту при потоковой выдаче.
+	 */
+	private final static int STREAM_FLUSH_ROWS = 500;
+	
+	/**
+	 * Заголовок ответа с курсором следующей страницы расходов.
+	 */
+	private final static String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	
+	/**
+	 * Тип содержимого двоичного формата Smile. Преобразователь MappingJackson2SmileHttpMessageConverter регистрируется 
+	 * Spring MVC автоматически при наличии jackson-dataformat-smile.
+	 */
+	final static String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+	
+	/**
+	 * Тип содержимого сводной таблицы расходов в формате CSV.
+	 */
+	final static String CSV_MEDIA_TYPE = "text/csv";
+	
 	/**
 	 * Сервис для доступа к объектам Расход
 	 */
 	private ExpenseService expenseService;
 	
+	/**
+	 * Построение условий отбора и сортировки расходов по параметрам запроса
+	 */
+	private ExpenseCriteria criteria;
+	
+	/**
+	 * Сервис для доступа к дневным итогам расходов
+	 */
+	private ExpenseRollupService rollupService;
+	
+	/**
+	 * Колоночное хранилище расходов в памяти
+	 */
+	private ExpenseColumnStore columnStore;
+	
+	/**
+	 * Индекс префиксных сумм расходов по дням
+	 */
+	private ExpenseFenwickIndex fenwickIndex;
+	
+	/**
+	 * Сервис для массовой загрузки расходов
+	 */
+	private ExpenseImportService importService;
+	
+	/**
+	 * Версии данных для условных GET запросов.
+	 */
+	private DataVersion dataVersion;
+	
 	@Autowired
 	public void setExpenseService(ExpenseService expenseService) {
 		this.expenseService = expenseService;
 	}
 	
+	@Autowired
+	public void setCriteria(ExpenseCriteria criteria) {
+		this.criteria = criteria;
+	}
+	
+	@Autowired
+	public void setRollupService(ExpenseRollupService rollupService) {
+		this.rollupService = rollupService;
+	}
+	
+	@Autowired
+	public void setColumnStore(ExpenseColumnStore columnStore) {
+		this.columnStore = columnStore;
+	}
+	
+	@Autowired
+	public void setFenwickIndex(ExpenseFenwickIndex fenwickIndex) {
+		this.fenwickIndex = fenwickIndex;
+	}
+	
+	@Autowired
+	public void setImportService(ExpenseImportService importService) {
+		this.importService = importService;
+	}
+	
+	@Autowired
+	public void setDataVersion(DataVersion dataVersion) {
+		this.dataVersion = dataVersion;
+	}
+	
 	/**
 	 * Обработка запросов для получения расхода по идентификатору.
 	 * @param idStr Идентификатор расхода.
@@ -124,6 +240,38 @@ public class ExpenseController {
 		return responseEntity;
 	}
 	
+	/**
+	 * Обработка запросов для массовой загрузки расходов. Тело запроса - массив расходов в том же формате, 
+	 * что и для добавления одного расхода. Массив читается потоково и сохраняется порциями по chunkSize расходов,
+	 * каждая порция в отдельной транзакции. В ответе возвращаются результаты по каждой порции и номера отклоненных расходов.
+	 * @param body Поток тела запроса.
+	 * @param chunkSizeStr Число расходов в порции.
+	 * @return Результат загрузки со статусом HttpStatus.OK или HttpStatus.BAD_REQUEST, если тело запроса не удалось разобрать до конца.
+	 */
+	@PostMapping(path = "/expense-bulk", consumes = "application/json", produces = "application/json")
+	public ResponseEntity<?> addExpenseBulk(InputStream body, 
+			@RequestParam(name = "chunkSize", required = false) String chunkSizeStr) {
+		ResponseEntity<?> responseEntity;
+		try {
+			int chunkSize = chunkSizeStr != null ? Integer.parseInt(chunkSizeStr) : ExpenseImportService.DEFAULT_CHUNK_SIZE;
+			ExpenseImportReport report = importService.importExpenses(body, chunkSize);
+			responseEntity = new ResponseEntity<ExpenseImportReport>(report, 
+					report.getError() == null ? HttpStatus.OK : HttpStatus.BAD_REQUEST);
+		} catch(IllegalArgumentException e) {
+			logger.error("addExpenseBulk. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", USER_ERROR);
+			errorBody.put("error_message", e.getMessage());
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.BAD_REQUEST);
+		} catch(Exception e) {
+			logger.error("addExpenseBulk. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return responseEntity;
+	}
 	
 	/**
 	 * Обработка запросов для обновления расхода с указанным идентификатором.
@@ -185,15 +333,27 @@ public class ExpenseController {
 	
 	/**
 	 * Обработка запросов для получения списка расходов, удовлетворяющих указанным параметрам.
+	 * Если указан параметр pageSize, возвращается одна страница расходов, а курсор следующей страницы 
+	 * передается в заголовке X-Next-Cursor (заголовок отсутствует на последней странице). 
+	 * Для получения следующей страницы курсор передается в параметре cursor вместе с прежними параметрами.
 	 * @param params Map с названиями параметров и их значениями
 	 * @return Список расходов, удовлетворяющих указанным параметрам.
 	 */
 	@GetMapping(path = "/expense-certain", produces = "application/json")
 	public ResponseEntity<?> getCertainExpense(@RequestParam Map<String, String> params) {
 		ResponseEntity<?> responseEntity;
-		try {					
-			responseEntity = new ResponseEntity<List<Expense>>(expenseService.getCertainExpense(params), HttpStatus.OK);			
-		} catch(NumberFormatException | DateTimeParseException e) {
+		try {
+			if (criteria.isPageRequested(params)) {
+				ExpensePage page = expenseService.getCertainExpensePage(params);
+				HttpHeaders httpHeaders = new HttpHeaders();
+				if (page.hasNext()) {
+					httpHeaders.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+				}
+				responseEntity = new ResponseEntity<List<Expense>>(page.getContent(), httpHeaders, HttpStatus.OK);
+			} else {
+				responseEntity = new ResponseEntity<List<Expense>>(expenseService.getCertainExpense(params), HttpStatus.OK);
+			}
+		} catch(IllegalArgumentException | DateTimeParseException e) {
 			logger.error("getCertainExpense. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
 			ObjectNode errorBody = mapper.createObjectNode();
 			errorBody.put("error", USER_ERROR);
@@ -209,15 +369,137 @@ public class ExpenseController {
 		return responseEntity;
 	}
 	
+	/**
+	 * Обработка запросов для получения списка расходов в компактном двоичном формате Smile (заголовок Accept: application/x-jackson-smile).
+	 * Расходы выдаются в нормализованном виде {@link CompactExpenseList}: справочник категорий и строки расходов со ссылками на категории.
+	 * Параметры, постраничная выдача и заголовок X-Next-Cursor те же, что в {@link #getCertainExpense(Map)}, ошибки возвращаются в json.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return Нормализованный список расходов, удовлетворяющих указанным параметрам.
+	 */
+	@GetMapping(path = "/expense-certain", produces = SMILE_MEDIA_TYPE)
+	public ResponseEntity<?> getCompactCertainExpense(@RequestParam Map<String, String> params) {
+		ResponseEntity<?> responseEntity;
+		try {
+			if (criteria.isPageRequested(params)) {
+				ExpensePage page = expenseService.getCertainExpensePage(params);
+				HttpHeaders httpHeaders = new HttpHeaders();
+				if (page.hasNext()) {
+					httpHeaders.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+				}
+				responseEntity = new ResponseEntity<CompactExpenseList>(CompactExpenseList.of(page.getContent()), httpHeaders, HttpStatus.OK);
+			} else {
+				responseEntity = new ResponseEntity<CompactExpenseList>(CompactExpenseList.of(expenseService.getCertainExpense(params)), HttpStatus.OK);
+			}
+		} catch(IllegalArgumentException | DateTimeParseException e) {
+			logger.error("getCompactCertainExpense. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", USER_ERROR);
+			errorBody.put("error_message", e.getMessage());
+			//тип содержимого задается явно, иначе текст ошибки был бы помечен как Smile
+			responseEntity = ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(errorBody.toString());
+		} catch (Exception e) {
+			logger.error("getCompactCertainExpense. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());
+			responseEntity = ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON).body(errorBody.toString());
+		}
+		return responseEntity;
+	}
+	
+	/**
+	 * Обработка запросов для потоковой выдачи списка расходов, удовлетворяющих указанным параметрам (параметр stream=true).
+	 * Расходы читаются из курсора базы данных и записываются в ответ по одному, поэтому потребление памяти не зависит 
+	 * от числа расходов, а первые байты ответа отправляются клиенту до завершения чтения всех строк.
+	 * Параметры проверяются до начала выдачи, ошибки в параметрах возвращаются так же, как в {@link #getCertainExpense(Map)}.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return Поток расходов в виде json массива.
+	 */
+	@GetMapping(path = "/expense-certain", params = "stream=true", produces = "application/json")
+	public ResponseEntity<StreamingResponseBody> streamCertainExpense(@RequestParam Map<String, String> params) {
+		ResponseEntity<StreamingResponseBody> responseEntity;
+		try {
+			Specification<Expense> specification = criteria.specification(params);
+			Sort sort = criteria.sort(params);
+			StreamingResponseBody body = outputStream -> writeExpenseStream(specification, sort, outputStream);
+			responseEntity = new ResponseEntity<StreamingResponseBody>(body, HttpStatus.OK);
+		} catch(IllegalArgumentException | DateTimeParseException e) {
+			logger.error("streamCertainExpense. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			responseEntity = streamingError(HttpStatus.BAD_REQUEST, USER_ERROR, e.getMessage());
+		} catch (Exception e) {
+			logger.error("streamCertainExpense. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			responseEntity = streamingError(HttpStatus.INTERNAL_SERVER_ERROR, SERVER_ERROR, e.getMessage());
+		}
+		return responseEntity;
+	}
+	
+	/**
+	 * Ответ с ошибкой для методов потоковой выдачи. Тело ответа тоже записывается как StreamingResponseBody: 
+	 * Spring MVC выбирает обработчик потоковой выдачи по объявленному типу ResponseEntity&lt;StreamingResponseBody&gt;,
+	 * а с ResponseEntity&lt;?&gt; тело сериализовалось бы как json объект.
+	 * @param status Статус ответа.
+	 * @param error Код ошибки (USER_ERROR или SERVER_ERROR).
+	 * @param message Сообщение об ошибке.
+	 * @return Ответ с json объектом ошибки.
+	 */
+	private ResponseEntity<StreamingResponseBody> streamingError(HttpStatus status, String error, String message) {
+		ObjectNode errorBody = mapper.createObjectNode();
+		errorBody.put("error", error);
+		errorBody.put("error_message", message);
+		byte[] bytes = errorBody.toString().getBytes(StandardCharsets.UTF_8);
+		return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(outputStream -> outputStream.write(bytes));
+	}
+	
+	/**
+	 * Запись потока расходов в ответ в виде json массива. Буфер ответа сбрасывается клиенту каждые STREAM_FLUSH_ROWS строк.
+	 * @param specification Спецификация отбора расходов.
+	 * @param sort Объект сортировки.
+	 * @param outputStream Поток ответа.
+	 * @throws IOException при ошибке записи в поток ответа.
+	 */
+	private void writeExpenseStream(Specification<Expense> specification, Sort sort, OutputStream outputStream) throws IOException {
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+			//при обрыве выдачи массив не должен закрываться автоматически, иначе клиент получит неполный, но корректный json
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+			generator.writeStartArray();
+			AtomicInteger rows = new AtomicInteger();
+			try {
+				expenseService.streamCertainExpense(specification, sort, expense -> {
+					try {
+						expenseWriter.writeValue(generator, expense);
+						if (rows.incrementAndGet() % STREAM_FLUSH_ROWS == 0) {
+							generator.flush();
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			generator.writeEndArray();
+		} catch (IOException | RuntimeException e) {
+			//заголовки ответа уже отправлены, поэтому ошибку можно только залогировать и оборвать ответ
+			logger.error("streamCertainExpense. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			throw e;
+		}
+	}
+	
 	/**
 	 * Обработка запросов для получения Map с категориями и суммой расходов по ним за указанный период.
 	 * @param params Map с названиями параметров и их значениями
+	 * @param webRequest Запрос для проверки заголовков If-None-Match и If-Modified-Since: если данные не изменялись, возвращается 304.
 	 * @return Map с категориями и суммой расходов по ним за указанный период.
 	 */
 	@GetMapping(path = "/expense-bar-data", produces = "application/json")
-	public ResponseEntity<?> getExpenseData(@RequestParam Map<String, String> params) {
+	public ResponseEntity<?> getExpenseData(@RequestParam Map<String, String> params, WebRequest webRequest) {
 		ResponseEntity<?> responseEntity;
 		try {
+			DataVersion.Tag tag = dataVersion.categoriesAndExpenses();
+			if (webRequest.checkNotModified(tag.getETag(), tag.getLastModified())) {
+				//данные не изменялись: ответ 304 с ETag и Last-Modified уже сформирован
+				return null;
+			}
 			responseEntity = new ResponseEntity<Map<String, Double>>(expenseService.getDataForBar(params), HttpStatus.OK);
 		} catch(NumberFormatException | DateTimeParseException e) {
 			logger.error("getExpenseData. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
@@ -236,6 +518,231 @@ public class ExpenseController {
 	}
 	
 	
+	/**
+	 * Обработка запросов для получения рядов сумм расходов по категориям и интервалам времени (day, week, month, year)
+	 * за указанный период: один запрос вместо запроса /expense-bar-data на каждый интервал.
+	 * @param params Map с названиями параметров и их значениями
+	 * @param webRequest Запрос для проверки заголовков If-None-Match и If-Modified-Since: если данные не изменялись, возвращается 304.
+	 * @return Ряды сумм расходов.
+	 */
+	@GetMapping(path = "/expense-series", produces = "application/json")
+	public ResponseEntity<?> getExpenseSeries(@RequestParam Map<String, String> params, WebRequest webRequest) {
+		ResponseEntity<?> responseEntity;
+		try {
+			DataVersion.Tag tag = dataVersion.categoriesAndExpenses();
+			if (webRequest.checkNotModified(tag.getETag(), tag.getLastModified())) {
+				//данные не изменялись: ответ 304 с ETag и Last-Modified уже сформирован
+				return null;
+			}
+			responseEntity = new ResponseEntity<ExpenseSeries>(expenseService.getDataForSeries(params), HttpStatus.OK);
+		} catch(IllegalArgumentException | DateTimeParseException e) {
+			logger.error("getExpenseSeries. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", USER_ERROR);
+			errorBody.put("error_message", e.getMessage());
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.BAD_REQUEST);
+		} catch (Exception e) {
+			logger.error("getExpenseSeries. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());			
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return responseEntity;
+	}
+	
+	/**
+	 * Обработка запросов для получения сводной таблицы расходов по категориям и месяцам в формате json.
+	 * Таблица считается одним запросом к базе данных до начала выдачи, строки записываются в ответ по одной.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return Поток json объекта с месяцами (months), строками таблицы (rows) и строкой общего итога (total).
+	 */
+	@GetMapping(path = "/expense-pivot", produces = "application/json")
+	public ResponseEntity<StreamingResponseBody> getExpensePivot(@RequestParam Map<String, String> params) {
+		return expensePivot(params, MediaType.APPLICATION_JSON, this::writePivotJson);
+	}
+	
+	/**
+	 * Обработка запросов для получения сводной таблицы расходов по категориям и месяцам в формате CSV (заголовок Accept: text/csv).
+	 * Столбцы: категория, подкатегория, суммы по месяцам, итог строки; последняя строка - общий итог.
+	 * @param params Map с названиями параметров и их значениями
+	 * @return Поток CSV.
+	 */
+	@GetMapping(path = "/expense-pivot", produces = CSV_MEDIA_TYPE)
+	public ResponseEntity<StreamingResponseBody> getExpensePivotCsv(@RequestParam Map<String, String> params) {
+		return expensePivot(params, new MediaType("text", "csv", StandardCharsets.UTF_8), this::writePivotCsv);
+	}
+	
+	/**
+	 * Расчет сводной таблицы и потоковая выдача ее в указанном формате. Ошибки в параметрах возвращаются до начала выдачи.
+	 */
+	private ResponseEntity<StreamingResponseBody> expensePivot(Map<String, String> params, MediaType mediaType, PivotWriter writer) {
+		ResponseEntity<StreamingResponseBody> responseEntity;
+		try {
+			ExpensePivot pivot = expenseService.getPivot(params);
+			StreamingResponseBody body = outputStream -> writer.write(pivot, outputStream);
+			responseEntity = ResponseEntity.ok().contentType(mediaType).body(body);
+		} catch(IllegalArgumentException | DateTimeParseException e) {
+			logger.error("getExpensePivot. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			responseEntity = streamingError(HttpStatus.BAD_REQUEST, USER_ERROR, e.getMessage());
+		} catch (Exception e) {
+			logger.error("getExpensePivot. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			responseEntity = streamingError(HttpStatus.INTERNAL_SERVER_ERROR, SERVER_ERROR, e.getMessage());
+		}
+		return responseEntity;
+	}
+	
+	/**
+	 * Запись сводной таблицы в ответ в формате json. Буфер ответа сбрасывается клиенту после каждой родительской категории.
+	 * @param pivot Сводная таблица.
+	 * @param outputStream Поток ответа.
+	 * @throws IOException при ошибке записи в поток ответа.
+	 */
+	private void writePivotJson(ExpensePivot pivot, OutputStream outputStream) throws IOException {
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+			//при обрыве выдачи объект не должен закрываться автоматически, иначе клиент получит неполный, но корректный json
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("months");
+			for (String month : pivot.getMonths()) {
+				generator.writeString(month);
+			}
+			generator.writeEndArray();
+			generator.writeArrayFieldStart("rows");
+			try {
+				pivot.forEachRow(row -> {
+					try {
+						writePivotRow(generator, row);
+						if (row.getSubcategory() == null) {
+							generator.flush();
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			generator.writeEndArray();
+			generator.writeFieldName("total");
+			writePivotRow(generator, pivot.getTotalRow());
+			generator.writeEndObject();
+		} catch (IOException | RuntimeException e) {
+			//заголовки ответа уже отправлены, поэтому ошибку можно только залогировать и оборвать ответ
+			logger.error("getExpensePivot. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			throw e;
+		}
+	}
+	
+	private static void writePivotRow(JsonGenerator generator, ExpensePivot.Row row) throws IOException {
+		generator.writeStartObject();
+		if (row.getCategory() != null) {
+			generator.writeStringField("category", row.getCategory());
+			generator.writeStringField("subcategory", row.getSubcategory());
+		}
+		generator.writeArrayFieldStart("values");
+		for (BigDecimal value : row.getValues()) {
+			generator.writeNumber(value);
+		}
+		generator.writeEndArray();
+		generator.writeNumberField("total", row.getTotal());
+		generator.writeEndObject();
+	}
+	
+	/**
+	 * Запись сводной таблицы в ответ в формате CSV (RFC 4180, кодировка UTF-8). Буфер ответа сбрасывается клиенту 
+	 * после каждой родительской категории.
+	 * @param pivot Сводная таблица.
+	 * @param outputStream Поток ответа.
+	 * @throws IOException при ошибке записи в поток ответа.
+	 */
+	private void writePivotCsv(ExpensePivot pivot, OutputStream outputStream) throws IOException {
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+			StringBuilder header = new StringBuilder("Категория,Подкатегория");
+			pivot.getMonths().forEach(month -> header.append(',').append(month));
+			writer.write(header.append(",Итого\r\n").toString());
+			try {
+				pivot.forEachRow(row -> {
+					try {
+						writer.write(csvRow(row.getCategory(), row.getSubcategory(), row));
+						if (row.getSubcategory() == null) {
+							writer.flush();
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			writer.write(csvRow("Итого", null, pivot.getTotalRow()));
+			writer.flush();
+		} catch (IOException | RuntimeException e) {
+			//заголовки ответа уже отправлены, поэтому ошибку можно только залогировать и оборвать ответ
+			logger.error("getExpensePivotCsv. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			throw e;
+		}
+	}
+	
+	private static String csvRow(String category, String subcategory, ExpensePivot.Row row) {
+		StringBuilder line = new StringBuilder();
+		line.append(csvField(category)).append(',').append(csvField(subcategory));
+		row.getValues().forEach(value -> line.append(',').append(value.toPlainString()));
+		return line.append(',').append(row.getTotal().toPlainString()).append("\r\n").toString();
+	}
+	
+	/**
+	 * Поле CSV: значения с запятой, кавычками или переводом строки заключаются в кавычки, кавычки удваиваются.
+	 */
+	private static String csvField(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+	
+	/**
+	 * Запись сводной таблицы в поток ответа в одном из форматов.
+	 */
+	@FunctionalInterface
+	private interface PivotWriter {
+		void write(ExpensePivot pivot, OutputStream outputStream) throws IOException;
+	}
+	
+	/**
+	 * Обработка запросов на пересчет дневных итогов расходов по всем расходам.
+	 * Используется для первоначального заполнения итогов и для их восстановления после изменения расходов в обход приложения.
+	 * Загруженные колоночное хранилище расходов и индекс префиксных сумм загружаются заново.
+	 * @return Число рассчитанных дневных итогов, число расходов в колоночном хранилище и число дневных сумм в индексе,
+	 * если они загружены.
+	 */
+	@PostMapping(path = "/expense-rollup/rebuild", produces = "application/json")
+	public ResponseEntity<?> rebuildRollup() {
+		ResponseEntity<?> responseEntity;
+		try {
+			ObjectNode body = mapper.createObjectNode();
+			body.put("rows", rollupService.rebuild());
+			if (columnStore.isLoaded()) {
+				body.put("columnRows", columnStore.reload());
+			}
+			if (fenwickIndex.isLoaded()) {
+				body.put("fenwickRows", fenwickIndex.reload());
+			}
+			responseEntity = new ResponseEntity<String>(body.toString(), HttpStatus.OK);
+		} catch (Exception e) {
+			logger.error("rebuildRollup. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());			
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return responseEntity;
+	}
+	
 	/*
 	@GetMapping(path = "/expense", produces = "application/json")
 	public ResponseEntity<?> getAllExpense() {
@@ -0,0 +1,174 @@
+package com.expense.web;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.expense.service.ConnectionPoolMetrics;
+import com.expense.service.HibernateCacheMetrics;
+import com.expense.service.JdbcMetrics;
+import com.expense.service.RequestMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * REST контроллер для получения метрик работы приложения.
+ * @author Alexandr Trifonov
+ *
+ */
+@RestController
+@RequestMapping("/api")
+public class MetricsController {
+	/**
+	 * Logger.
+	 */
+	private Logger logger = LoggerFactory.getLogger(MetricsController.class);
+	
+	/**
+	 * ObjectMapper для создания json ответов при перехвате исключений.
+	 */
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	/**
+	 * Константа для обозначения кода ошибки на стророне сервера.
+	 */
+	private final static String SERVER_ERROR = "SERVER_ERROR";
+	
+	/**
+	 * Тип содержимого текстового формата метрик Prometheus.
+	 */
+	final static String PROMETHEUS_MEDIA_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	/**
+	 * Метрики пула соединений с базой данных.
+	 */
+	private ConnectionPoolMetrics poolMetrics;
+	
+	/**
+	 * Метрики кэша Hibernate.
+	 */
+	private HibernateCacheMetrics cacheMetrics;
+	
+	/**
+	 * Метрики обработки запросов и вызовов репозиториев.
+	 */
+	private RequestMetrics requestMetrics;
+	
+	/**
+	 * Счетчики обращений к базе данных.
+	 */
+	private JdbcMetrics jdbcMetrics;
+	
+	@Autowired
+	public void setPoolMetrics(ConnectionPoolMetrics poolMetrics) {
+		this.poolMetrics = poolMetrics;
+	}
+	
+	@Autowired
+	public void setCacheMetrics(HibernateCacheMetrics cacheMetrics) {
+		this.cacheMetrics = cacheMetrics;
+	}
+	
+	@Autowired
+	public void setRequestMetrics(RequestMetrics requestMetrics) {
+		this.requestMetrics = requestMetrics;
+	}
+	
+	@Autowired
+	public void setJdbcMetrics(JdbcMetrics jdbcMetrics) {
+		this.jdbcMetrics = jdbcMetrics;
+	}
+	
+	/**
+	 * Обработка запросов для получения метрик пула соединений: число активных, свободных и ожидающих соединений,
+	 * время ожидания соединения и число запросов, не дождавшихся соединения.
+	 * @return Метрики пула соединений.
+	 */
+	@GetMapping(path = "/pool-metrics", produces = "application/json")
+	public ResponseEntity<?> getPoolMetrics() {
+		ResponseEntity<?> responseEntity;
+		try {
+			responseEntity = new ResponseEntity<Map<String, Number>>(poolMetrics.snapshot(), HttpStatus.OK);
+		} catch (Exception e) {
+			logger.error("getPoolMetrics. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());			
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return responseEntity;
+	}
+	
+	/**
+	 * Обработка запросов для получения метрик кэша второго уровня Hibernate: 
+	 * попадания, промахи и записи в кэш, в том числе по категориям.
+	 * @return Метрики кэша.
+	 */
+	@GetMapping(path = "/cache-metrics", produces = "application/json")
+	public ResponseEntity<?> getCacheMetrics() {
+		ResponseEntity<?> responseEntity;
+		try {
+			responseEntity = new ResponseEntity<Map<String, Number>>(cacheMetrics.snapshot(), HttpStatus.OK);
+		} catch (Exception e) {
+			logger.error("getCacheMetrics. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());			
+			responseEntity = new ResponseEntity<String>(errorBody.toString(), HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+		return responseEntity;
+	}
+	
+	/**
+	 * Обработка запросов для получения всех метрик в текстовом формате Prometheus: гистограммы времени обработки запросов
+	 * по методам контроллеров и времени вызовов репозиториев, числа запросов SQL и строк на HTTP запрос, 
+	 * общие счетчики обращений к базе данных, метрики пула соединений и кэша Hibernate.
+	 * @return Метрики в текстовом формате Prometheus.
+	 */
+	@GetMapping(path = "/metrics", produces = PROMETHEUS_MEDIA_TYPE)
+	public ResponseEntity<?> getMetrics() {
+		ResponseEntity<?> responseEntity;
+		try {
+			StringBuilder out = new StringBuilder(16384);
+			requestMetrics.writeTo(out);
+			writeCounter(out, "expense_jdbc_statements_total", "SQL statements executed", jdbcMetrics.getStatements());
+			writeCounter(out, "expense_jdbc_rows_total", "Result rows fetched", jdbcMetrics.getRows());
+			writeSnapshot(out, "expense_pool_", poolMetrics.snapshot());
+			writeSnapshot(out, "expense_hibernate_", cacheMetrics.snapshot());
+			responseEntity = new ResponseEntity<String>(out.toString(), HttpStatus.OK);
+		} catch (Exception e) {
+			logger.error("getMetrics. error = {}, error class = {}", e.getMessage(), e.getClass(), e);
+			ObjectNode errorBody = mapper.createObjectNode();
+			errorBody.put("error", SERVER_ERROR);
+			errorBody.put("error_message", e.getMessage());			
+			responseEntity = ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON).body(errorBody.toString());
+		}
+		return responseEntity;
+	}
+	
+	private static void writeCounter(StringBuilder out, String name, String help, long value) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" counter\n");
+		out.append(name).append(' ').append(value).append('\n');
+	}
+	
+	/**
+	 * Запись метрик из снимка pool-metrics или cache-metrics: имена переводятся из camelCase в snake_case с префиксом.
+	 * Снимок содержит и текущие значения, и накопленные счетчики, поэтому тип метрик не указывается (untyped).
+	 */
+	private static void writeSnapshot(StringBuilder out, String prefix, Map<String, Number> snapshot) {
+		snapshot.forEach((key, value) -> {
+			String name = prefix + key.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase();
+			out.append("# TYPE ").append(name).append(" untyped\n");
+			out.append(name).append(' ').append(value).append('\n');
+		});
+	}
+}
@@ -0,0 +1,114 @@
+package com.expense.web;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import com.expense.config.ReadWriteRoutingDataSource;
+import com.expense.config.ReadYourWrites;
+
+/**
+ * Перехватчик, связывающий запрос клиента с состоянием чтения своих записей ({@link ReadYourWrites}).
+ * Признак недавней записи передается клиенту в cookie {@value #COOKIE} со временем окончания окна чтения своих записей
+ * (мс от начала эпохи): пока окно не истекло, транзакции только для чтения запросов этого клиента направляются
+ * на основную базу данных, а запросы других клиентов читают с реплик. Cookie выставляется после фиксации первой транзакции
+ * запроса, изменившей данные, - до записи тела ответа.
+ * <p>
+ * При асинхронной обработке (потоковая выдача) состояние связывается и с потоком асинхронной обработки.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+	/**
+	 * Cookie с временем окончания окна чтения своих записей клиента.
+	 */
+	public final static String COOKIE = "expense-primary-until";
+
+	/**
+	 * Атрибут запроса с состоянием клиента.
+	 */
+	private final static String CLIENT_ATTRIBUTE = ReadYourWritesInterceptor.class.getName() + ".client";
+
+	private ReadWriteRoutingDataSource routingDataSource;
+
+	@Autowired
+	public void setRoutingDataSource(ReadWriteRoutingDataSource routingDataSource) {
+		this.routingDataSource = routingDataSource;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		//при повторном входе после асинхронной обработки используется состояние первого входа
+		ReadYourWrites client = (ReadYourWrites) request.getAttribute(CLIENT_ATTRIBUTE);
+		if (client == null) {
+			client = new ReadYourWrites(primaryUntil(request) > System.currentTimeMillis(), () -> addCookie(request, response));
+			request.setAttribute(CLIENT_ATTRIBUTE, client);
+		}
+		ReadYourWrites.bind(client);
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		ReadYourWrites.unbind();
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		ReadYourWrites.unbind();
+	}
+
+	@Override
+	public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+		ReadYourWrites client = (ReadYourWrites) request.getAttribute(CLIENT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+		if (client != null) {
+			ReadYourWrites.bind(client);
+		}
+	}
+
+	@Override
+	public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+		ReadYourWrites.unbind();
+	}
+
+	/**
+	 * @return Время окончания окна чтения своих записей из cookie клиента или 0, если cookie нет.
+	 */
+	private static long primaryUntil(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (COOKIE.equals(cookie.getName())) {
+					try {
+						return Long.parseLong(cookie.getValue());
+					} catch (NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+	private void addCookie(HttpServletRequest request, HttpServletResponse response) {
+		if (!routingDataSource.hasReplicas() || response.isCommitted()) {
+			return;
+		}
+		long windowMillis = routingDataSource.getReadYourWritesMillis();
+		Cookie cookie = new Cookie(COOKIE, Long.toString(System.currentTimeMillis() + windowMillis));
+		cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+		cookie.setMaxAge((int) Math.max(1, (windowMillis + 999) / 1000));
+		cookie.setHttpOnly(true);
+		response.addCookie(cookie);
+	}
+}
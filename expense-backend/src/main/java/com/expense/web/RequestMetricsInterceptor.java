@@ -0,0 +1,71 @@
+package com.expense.web;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import com.expense.service.JdbcMetrics;
+import com.expense.service.RequestMetrics;
+
+/**
+ * Перехватчик, измеряющий время обработки запросов к методам контроллеров и число обращений к базе данных на запрос.
+ * На горячем пути - только чтение System.nanoTime(), атрибут запроса и счетчики в ThreadLocal.
+ * <p>
+ * При асинхронной обработке (потоковая выдача) время отсчитывается от первого входа в перехватчик до завершения
+ * асинхронной обработки, а обращения к базе данных из потока асинхронной обработки в счетчики запроса не попадают.
+ * @author Alexandr Trifonov
+ *
+ */
+@Component
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+	/**
+	 * Атрибут запроса со временем начала обработки (System.nanoTime()).
+	 */
+	private final static String START_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".start";
+
+	private RequestMetrics requestMetrics;
+
+	private JdbcMetrics jdbcMetrics;
+
+	@Autowired
+	public void setRequestMetrics(RequestMetrics requestMetrics) {
+		this.requestMetrics = requestMetrics;
+	}
+
+	@Autowired
+	public void setJdbcMetrics(JdbcMetrics jdbcMetrics) {
+		this.jdbcMetrics = jdbcMetrics;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		//при повторном входе после асинхронной обработки сохраняется время первого входа
+		if (request.getAttribute(START_ATTRIBUTE) == null) {
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+		jdbcMetrics.begin();
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		jdbcMetrics.end();
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		JdbcMetrics.Counts counts = jdbcMetrics.end();
+		Object start = request.getAttribute(START_ATTRIBUTE);
+		if (!(handler instanceof HandlerMethod) || start == null) {
+			return;
+		}
+		HandlerMethod handlerMethod = (HandlerMethod) handler;
+		String name = handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+		int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+		requestMetrics.recordRequest(name, request.getMethod(), status, System.nanoTime() - (Long) start, counts);
+	}
+}
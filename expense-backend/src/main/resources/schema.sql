@@ -11,6 +11,13 @@ CREATE TABLE expense.category
         ON DELETE NO ACTION
 );
 
+-- расходы секционированы по месяцам (local_date), требуется PostgreSQL 12 или новее.
+-- запросы с условием на local_date (between, >=, <=) с параметрами читают только секции периода: при планировании 
+-- или, для общего плана подготовленного выражения, при запуске выполнения. условие должно быть на самом столбце, 
+-- а не на выражении от него (date_trunc(local_date) и т.п.), иначе секции не отсекаются.
+-- старые секции отключаются или удаляются целиком, без DELETE и VACUUM по всей таблице.
+-- первичный ключ секционированной таблицы должен включать ключ секционирования, поэтому он (id, local_date);
+-- id по-прежнему уникален - значения выдает последовательность. поиск по одному id проверяет индекс каждой секции.
 CREATE TABLE expense.expense
 (
     id bigint NOT NULL DEFAULT nextval('expense.expense_id_seq'::regclass),
@@ -20,9 +27,118 @@ CREATE TABLE expense.expense
     total_price numeric(19,2) NOT NULL,
     unit_price numeric(19,2) NOT NULL,
     category_id integer NOT NULL,
-    CONSTRAINT expense_pkey PRIMARY KEY (id),
+    CONSTRAINT expense_pkey PRIMARY KEY (id, local_date),
     CONSTRAINT fk_category_id FOREIGN KEY (category_id)
         REFERENCES expense.category (id) MATCH SIMPLE
         ON UPDATE NO ACTION
         ON DELETE NO ACTION
-)
\ No newline at end of file
+) PARTITION BY RANGE (local_date);
+
+-- секция по умолчанию для расходов за месяцы без своей секции
+CREATE TABLE expense.expense_default PARTITION OF expense.expense DEFAULT;
+
+-- создание месячных секций expense_ГГГГ_ММ с месяца first_month по месяц last_month включительно, существующие пропускаются.
+-- расходы месяца из секции по умолчанию переносятся в новую секцию. возвращает число созданных секций.
+-- вызывается приложением при запуске и по расписанию (ExpensePartitionMaintenance)
+CREATE OR REPLACE FUNCTION expense.create_expense_partitions(first_month date, last_month date) RETURNS integer
+LANGUAGE plpgsql AS $$
+DECLARE
+    month_start date := date_trunc('month', first_month)::date;
+    month_end date;
+    partition_name text;
+    created integer := 0;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        month_end := (month_start + interval '1 month')::date;
+        partition_name := 'expense_' || to_char(month_start, 'YYYY_MM');
+        IF to_regclass('expense.' || partition_name) IS NULL THEN
+            IF EXISTS (SELECT 1 FROM expense.expense_default WHERE local_date >= month_start AND local_date < month_end) THEN
+                EXECUTE format('CREATE TABLE expense.%I (LIKE expense.expense INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name);
+                EXECUTE format('WITH moved AS (DELETE FROM expense.expense_default WHERE local_date >= %L AND local_date < %L RETURNING *) '
+                    'INSERT INTO expense.%I SELECT * FROM moved', month_start, month_end, partition_name);
+                EXECUTE format('ALTER TABLE expense.expense ATTACH PARTITION expense.%I FOR VALUES FROM (%L) TO (%L)',
+                    partition_name, month_start, month_end);
+            ELSE
+                EXECUTE format('CREATE TABLE expense.%I PARTITION OF expense.expense FOR VALUES FROM (%L) TO (%L)',
+                    partition_name, month_start, month_end);
+            END IF;
+            created := created + 1;
+        END IF;
+        month_start := month_end;
+    END LOOP;
+    RETURN created;
+END;
+$$;
+
+-- отключение месячных секций, целиком лежащих раньше месяца before_month. отключенная секция остается отдельной таблицей
+-- (ее можно выгрузить в архив и удалить) или удаляется сразу при drop_detached = true. возвращает имена отключенных секций.
+-- приложение после отключения пересчитывает дневные итоги (expense_daily_rollup) за отключенные месяцы и счетчики
+-- расходов категорий (category_usage) и перезагружает загруженные механизмы агрегирования
+-- (ExpensePartitionMaintenance.refreshDerivedData). после вызова функции в обход приложения нужно выполнить
+-- POST /api/expense-rollup/rebuild и POST /api/category-usage/rebuild
+CREATE OR REPLACE FUNCTION expense.detach_expense_partitions(before_month date, drop_detached boolean) RETURNS SETOF text
+LANGUAGE plpgsql AS $$
+DECLARE
+    partition_name text;
+BEGIN
+    FOR partition_name IN
+        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'expense.expense'::regclass AND c.relname ~ '^expense_[0-9]{4}_[0-9]{2}$'
+        ORDER BY c.relname
+    LOOP
+        IF to_date(substring(partition_name from 9), 'YYYY_MM') < date_trunc('month', before_month) THEN
+            EXECUTE format('ALTER TABLE expense.expense DETACH PARTITION expense.%I', partition_name);
+            IF drop_detached THEN
+                EXECUTE format('DROP TABLE expense.%I', partition_name);
+            END IF;
+            RETURN NEXT partition_name;
+        END IF;
+    END LOOP;
+END;
+$$;
+
+-- первоначальные секции. перевод существующей несекционированной таблицы: переименовать ее и ее индексы,
+-- выполнить этот скрипт для expense.expense с секциями на весь период данных, перенести строки 
+-- (INSERT INTO expense.expense SELECT * FROM старая_таблица) и удалить старую таблицу
+SELECT expense.create_expense_partitions(date '2015-01-01', (current_date + interval '12 months')::date);
+
+-- индексы для постраничного получения расходов методом keyset: (поле сортировки, id)
+CREATE INDEX expense_local_date_id_idx ON expense.expense (local_date, id);
+CREATE INDEX expense_total_price_id_idx ON expense.expense (total_price, id);
+
+-- индекс для агрегирующих запросов по периоду дат: суммы считаются только по индексу, без чтения таблицы
+CREATE INDEX expense_local_date_category_idx ON expense.expense (local_date, category_id) INCLUDE (total_price);
+
+-- дневные итоги расходов по категориям, поддерживаются приложением в одной транзакции с изменениями расходов.
+-- первоначальное заполнение: POST /api/expense-rollup/rebuild
+CREATE TABLE expense.expense_daily_rollup
+(
+    local_date date NOT NULL,
+    category_id integer NOT NULL,
+    total_price numeric(19,2) NOT NULL,
+    expense_count bigint NOT NULL,
+    CONSTRAINT expense_daily_rollup_pkey PRIMARY KEY (local_date, category_id)
+);
+
+-- число расходов по каждой категории, поддерживается приложением в одной транзакции с изменениями расходов.
+-- по счетчикам определяются категории без расходов. первоначальное заполнение: POST /api/category-usage/rebuild
+CREATE TABLE expense.category_usage
+(
+    category_id integer NOT NULL,
+    expense_count bigint NOT NULL,
+    CONSTRAINT category_usage_pkey PRIMARY KEY (category_id),
+    CONSTRAINT fk_category_usage_category_id FOREIGN KEY (category_id)
+        REFERENCES expense.category (id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE CASCADE
+);
+
+-- триграммный индекс для поиска по подстроке примечания без учета регистра: lower(note) LIKE '%...%'.
+-- выражение индекса совпадает с условием ExpenseSpecifications.noteContainsIgnoreCase, 
+-- в сочетании с фильтрами по дате, категории и цене планировщик объединяет индексы (BitmapAnd)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX expense_note_trgm_idx ON expense.expense USING gin (lower(note) gin_trgm_ops);
+
+-- идентификаторы расходов выделяются приложением блоками (оптимизатор pooled, allocationSize = 50 в Expense), 
+-- чтобы вставки расходов объединялись в пакеты JDBC. шаг последовательности должен совпадать с allocationSize
+ALTER SEQUENCE expense.expense_id_seq INCREMENT BY 50;
@@ -11,9 +11,13 @@ import org.junit.Before;
 import org.junit.Test;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.expense.entities.Category;
 import com.expense.service.CategoryService;
+import com.expense.service.DataVersion;
 
 
 public class CategoryControllerTest {
@@ -33,8 +37,10 @@ public class CategoryControllerTest {
 		
 		CategoryController categoryController = new CategoryController();
 		categoryController.setCategoryService(categoryService);		
+		categoryController.setDataVersion(new DataVersion());
 		
-		ResponseEntity<?> respEntity = categoryController.getAllParentCategory();		
+		ResponseEntity<?> respEntity = categoryController.getAllParentCategory(
+				new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse()));		
 		
 		List<Category> list = (List<Category>) respEntity.getBody();
 		
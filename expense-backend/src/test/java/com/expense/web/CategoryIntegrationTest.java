@@ -2,24 +2,44 @@ package com.expense.web;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.expense.config.DataTestConfig;
 import com.expense.config.ServiceTestConfig;
 import com.expense.entities.Category;
 import com.expense.entities.Expense;
 import com.expense.service.CategoryService;
+import com.expense.service.CategoryTree;
+import com.expense.service.CategoryTreeCache;
+import com.expense.service.CategoryUsageService;
+import com.expense.service.ConnectionPoolMetrics;
 import com.expense.service.ExpenseService;
+import com.expense.service.JdbcMetrics;
 
 @SpringJUnitConfig(classes = {DataTestConfig.class, ServiceTestConfig.class})
 @DisplayName("CategoryService integration test")
@@ -33,6 +53,32 @@ public class CategoryIntegrationTest {
 	@Autowired
 	ExpenseService expenseService;
 	
+	@Autowired
+	CategoryTreeCache treeCache;
+	
+	@Autowired
+	CategoryUsageService usageService;
+	
+	@Autowired
+	ConnectionPoolMetrics poolMetrics;
+	
+	@Autowired
+	CategoryController categoryController;
+	
+	@Autowired
+	JdbcMetrics jdbcMetrics;
+	
+	SqlStatementCounter sql;
+	
+	/**
+	 * Скрипт очистки удаляет категории в обход сервиса, поэтому снимок дерева категорий сбрасывается перед каждым тестом.
+	 */
+	@BeforeEach
+	public void resetCategoryTree() {
+		treeCache.invalidate();
+		sql = new SqlStatementCounter(jdbcMetrics);
+	}
+	
 	@Test
 	@DisplayName("Category saving")
 	@Sql(value = "classpath:db/clean-up.sql",
@@ -223,5 +269,214 @@ public class CategoryIntegrationTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Category tree snapshot")
+	@Sql(value = "classpath:db/clean-up.sql",
+	executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCategoryTreeSnapshot() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		CategoryTree tree = treeCache.get();
+		assertSame(tree, treeCache.get());
+		assertSame(categoryService.findCategory(meat.getId()), categoryService.findCategory(meat.getId()));
+		assertEquals(meat, categoryService.findCategoryByName("Мясо").get());
+		assertFalse(categoryService.findCategoryByName("Овощи").isPresent());
+		assertThrows(NoSuchElementException.class, () -> categoryService.findCategory(-1));
+		
+		Category vegetable = new Category();
+		vegetable.setName("Овощи");
+		vegetable.setParent(food);
+		vegetable = categoryService.save(vegetable);
+		
+		CategoryTree rebuilt = treeCache.get();
+		assertNotSame(tree, rebuilt);
+		assertTrue(rebuilt.getVersion() > tree.getVersion());
+		assertEquals(1, tree.getChildren(food.getId()).size());
+		List<Category> childs = categoryService.getChilds(food);
+		assertEquals(2, childs.size());
+		assertEquals(meat, childs.get(0));
+		assertEquals(vegetable, childs.get(1));
+		
+		categoryService.deleteCategory(vegetable.getId());
+		assertFalse(categoryService.findCategoryByName("Овощи").isPresent());
+		assertEquals(1, categoryService.getChilds(food).size());
+	}
+	
+	@Test
+	@DisplayName("Category usage counters")
+	@Sql(value = "classpath:db/clean-up.sql",
+	executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCategoryUsage() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		Category vegetable = new Category();
+		vegetable.setName("Овощи");
+		vegetable.setParent(food);
+		vegetable = categoryService.save(vegetable);
+		
+		Expense expense = new Expense();
+		expense.setCategory(meat);
+		expense.setCount(1);
+		expense.setLocalDate(LocalDate.now());
+		expense.setUnitPrice(BigDecimal.valueOf(350.00));
+		expense.setTotalPrice();
+		expense = expenseService.addExpense(expense);
+		assertEquals(Collections.singleton(meat.getId()), usageService.getUsedCategoryIds());
+		assertEquals(Arrays.asList(vegetable), categoryService.getChildCategoriesNoExpense(food.getId()));
+		assertTrue(categoryService.getParentCategoriesNoExpense().isEmpty());
+		
+		Expense patch = new Expense();
+		patch.setCategory(vegetable);
+		patch.setCount(1);
+		patch.setUnitPrice(BigDecimal.valueOf(350.00));
+		expenseService.updateExpense(expense.getId(), patch);
+		assertEquals(Collections.singleton(vegetable.getId()), usageService.getUsedCategoryIds());
+		assertEquals(Arrays.asList(meat), categoryService.getChildCategoriesNoExpense(food.getId()));
+		
+		assertEquals(1, usageService.rebuild());
+		assertEquals(Collections.singleton(vegetable.getId()), usageService.getUsedCategoryIds());
+		
+		expenseService.deleteExpense(expense.getId());
+		assertTrue(usageService.getUsedCategoryIds().isEmpty());
+		assertEquals(Arrays.asList(meat, vegetable), categoryService.getChildCategoriesNoExpense(food.getId()));
+		assertEquals(Arrays.asList(food), categoryService.getParentCategoriesNoExpense());
+	}
+	
+	@Test
+	@DisplayName("Connection pool metrics")
+	@Sql(value = "classpath:db/clean-up.sql",
+	executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testPoolMetrics() {
+		long acquired = poolMetrics.snapshot().get("acquireCount").longValue();
+		Category food = new Category();
+		food.setName("Продукты");
+		categoryService.save(food);
+		categoryService.getParentCategories();
+		
+		Map<String, Number> metrics = poolMetrics.snapshot();
+		assertTrue(metrics.get("acquireCount").longValue() > acquired);
+		assertEquals(8, metrics.get("max").intValue());
+		assertEquals(0, metrics.get("pending").intValue());
+		assertEquals(0, metrics.get("timeouts").longValue());
+	}
+	
+	@Test
+	@DisplayName("Conditional GET of categories")
+	@Sql(value = "classpath:db/clean-up.sql",
+	executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCategoryNotModified() {
+		Category food = new Category();
+		food.setName("Продукты");
+		categoryService.save(food);
+		
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assertEquals(HttpStatus.OK, categoryController.getAllParentCategory(
+				new ServletWebRequest(new MockHttpServletRequest("GET", "/api/category"), response)).getStatusCode());
+		String eTag = response.getHeader(HttpHeaders.ETAG);
+		assertTrue(eTag != null && eTag.startsWith("\""));
+		
+		MockHttpServletRequest conditional = new MockHttpServletRequest("GET", "/api/category");
+		conditional.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+		response = new MockHttpServletResponse();
+		assertEquals(null, categoryController.getAllParentCategory(new ServletWebRequest(conditional, response)));
+		assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus());
+		
+		Category auto = new Category();
+		auto.setName("Авто");
+		categoryService.save(auto);
+		
+		conditional = new MockHttpServletRequest("GET", "/api/category");
+		conditional.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+		response = new MockHttpServletResponse();
+		assertEquals(HttpStatus.OK, categoryController.getAllParentCategory(
+				new ServletWebRequest(conditional, response)).getStatusCode());
+		assertNotEquals(eTag, response.getHeader(HttpHeaders.ETAG));
+	}
+	
 	
+	@Test
+	@DisplayName("Pinned SQL statement budget of every category endpoint")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testQueryBudget() {
+		List<Category> parents = new ArrayList<>();
+		for (int p = 0; p < 3; p++) {
+			Category parent = new Category();
+			parent.setName("Родитель " + p);
+			parents.add(categoryService.save(parent));
+			for (int c = 0; c < 3; c++) {
+				Category child = new Category();
+				child.setName("Подкатегория " + p + "." + c);
+				child.setParent(parents.get(p));
+				categoryService.save(child);
+			}
+		}
+		Category used = categoryService.getChilds(parents.get(0)).get(0);
+		Expense expense = new Expense();
+		expense.setCategory(used);
+		expense.setCount(1);
+		expense.setLocalDate(LocalDate.of(2020, 5, 1));
+		expense.setUnitPrice(BigDecimal.valueOf(100.00));
+		expense.setTotalPrice();
+		expenseService.addExpense(expense);
+		String parentId = parents.get(0).getId().toString();
+		Category newChild = new Category();
+		newChild.setName("Новая подкатегория");
+		Category newParent = new Category();
+		newParent.setName("Новый родитель");
+		
+		//все категории читаются в снимок дерева одним запросом
+		treeCache.invalidate();
+		sql.reset();
+		categoryController.getAllParentCategory(new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(1);
+		
+		//чтение категорий из снимка дерева без запросов
+		sql.reset();
+		categoryController.getAllParentCategory(new ServletWebRequest(new MockHttpServletRequest()));
+		categoryController.getCategoryChild(parentId, new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(0);
+		
+		//категории без расходов: один запрос к счетчикам расходов категорий
+		sql.reset();
+		categoryController.getFreeCategory(new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		categoryController.getFreeCategoryChild(parentId, new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		categoryController.addCategory(newParent);
+		sql.assertInsertCount(1);
+		sql.assertStatementCount(1);
+		
+		treeCache.get();
+		sql.reset();
+		categoryController.addCategoryChild(parentId, newChild);
+		sql.assertInsertCount(1);
+		sql.assertStatementCount(1);
+		
+		//подкатегории удаляются одним пакетом
+		treeCache.get();
+		sql.reset();
+		categoryController.deleteCategory(parents.get(2).getId().toString());
+		sql.assertSelectCount(1);
+		sql.assertDeleteCount(2);
+		sql.stop();
+	}
 }
@@ -2,29 +2,86 @@ package com.expense.web;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import com.expense.config.DataTestConfig;
 import com.expense.config.ServiceTestConfig;
+import com.expense.datagen.DatasetGenerator;
+import com.expense.datagen.DatasetSpec;
+import com.expense.datagen.GeneratedDataset;
 import com.expense.entities.Category;
 import com.expense.entities.Expense;
+import com.expense.repos.CategoryRepository;
+import com.expense.repos.CategoryUsageRepository;
+import com.expense.repos.ExpenseDailyRollupRepository;
 import com.expense.service.CategoryService;
+import com.expense.service.CategoryTreeCache;
+import com.expense.service.CategoryUsageService;
+import com.expense.service.ExpenseColumnStore;
+import com.expense.service.ExpenseCriteria;
+import com.expense.service.ExpenseFenwickIndex;
+import com.expense.service.ExpenseImportReport;
+import com.expense.service.ExpenseImportService;
+import com.expense.service.ExpensePage;
+import com.expense.service.ExpenseRollupService;
+import com.expense.service.ExpenseSeries;
 import com.expense.service.ExpenseService;
+import com.expense.service.HibernateCacheMetrics;
+import com.expense.service.JdbcMetrics;
+import com.expense.service.RequestMetrics;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
 @SpringJUnitConfig(classes = {DataTestConfig.class, ServiceTestConfig.class})
 @DisplayName("ExpenseService integration test")
@@ -37,6 +94,68 @@ public class ExpenseIntegrationTest {
 	@Autowired
 	ExpenseService expenseService;
 	
+	@Autowired
+	ExpenseCriteria criteria;
+	
+	@Autowired
+	ExpenseRollupService rollupService;
+	
+	@Autowired
+	ExpenseDailyRollupRepository rollupRepo;
+	
+	@Autowired
+	CategoryRepository categoryRepo;
+	
+	@Autowired
+	CategoryTreeCache treeCache;
+	
+	@Autowired
+	ExpenseImportService importService;
+	
+	@Autowired
+	HibernateCacheMetrics cacheMetrics;
+	
+	@Autowired
+	ExpenseController expenseController;
+	
+	@Autowired
+	CategoryUsageService usageService;
+	
+	@Autowired
+	CategoryUsageRepository usageRepo;
+	
+	@Autowired
+	DataSource dataSource;
+	
+	@Autowired
+	MetricsController metricsController;
+	
+	@Autowired
+	RequestMetricsInterceptor requestMetricsInterceptor;
+	
+	@Autowired
+	RequestMetrics requestMetrics;
+	
+	@Autowired
+	JdbcMetrics jdbcMetrics;
+	
+	@Autowired
+	ExpenseColumnStore columnStore;
+	
+	@Autowired
+	ExpenseFenwickIndex fenwickIndex;
+	
+	SqlStatementCounter sql;
+	
+	/**
+	 * Скрипт очистки удаляет категории в обход сервиса, поэтому снимок дерева категорий сбрасывается перед каждым тестом.
+	 */
+	@BeforeEach
+	public void resetCategoryTree() {
+		treeCache.invalidate();
+		sql = new SqlStatementCounter(jdbcMetrics);
+	}
+	
 	@Test
 	@DisplayName("Expense saving, getting, updating")
 	@Sql(value = "classpath:db/clean-up.sql",
@@ -157,6 +276,207 @@ public class ExpenseIntegrationTest {
 		assertTrue(certainExpense.contains(expenseVegetable));
 	}
 	
+	@Test
+	@DisplayName("Certain Expense with price and note filters")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCertainExpenseFilters() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		Expense expenseBeef = new Expense();
+		expenseBeef.setCategory(meat);
+		expenseBeef.setCount(2);
+		expenseBeef.setLocalDate(LocalDate.of(2020, 5, 5));
+		expenseBeef.setUnitPrice(BigDecimal.valueOf(400.00));
+		expenseBeef.setNote("Говядина 100%");
+		expenseBeef.setTotalPrice();
+		expenseBeef = expenseService.addExpense(expenseBeef);
+		
+		Expense expensePork = new Expense();
+		expensePork.setCategory(meat);
+		expensePork.setCount(1);
+		expensePork.setLocalDate(LocalDate.of(2020, 5, 6));
+		expensePork.setUnitPrice(BigDecimal.valueOf(300.00));
+		expensePork.setNote("Свинина");
+		expensePork.setTotalPrice();
+		expensePork = expenseService.addExpense(expensePork);
+		
+		Expense expenseBread = new Expense();
+		expenseBread.setCategory(food);
+		expenseBread.setCount(1);
+		expenseBread.setLocalDate(LocalDate.of(2020, 5, 7));
+		expenseBread.setUnitPrice(BigDecimal.valueOf(50.00));
+		expenseBread.setNote("Хлеб");
+		expenseBread.setTotalPrice();
+		expenseBread = expenseService.addExpense(expenseBread);
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dates", "2020-05-01,2020-05-31");
+		params.put("orderBy", "totalPrice");
+		params.put("categoryId", food.getId().toString());
+		params.put("prices", "100,1000");
+		
+		List<Expense> certainExpense = expenseService.getCertainExpense(params);
+		assertEquals(2, certainExpense.size());
+		assertEquals(expensePork, certainExpense.get(0));
+		assertEquals(expenseBeef, certainExpense.get(1));
+		
+		params.put("note", "ГОВЯДИНА 100%");
+		certainExpense = expenseService.getCertainExpense(params);
+		assertEquals(1, certainExpense.size());
+		assertTrue(certainExpense.contains(expenseBeef));
+		
+		params.remove("prices");
+		params.remove("categoryId");
+		params.put("note", "%");
+		certainExpense = expenseService.getCertainExpense(params);
+		assertEquals(1, certainExpense.size());
+		assertTrue(certainExpense.contains(expenseBeef));
+	}
+	
+	@Test
+	@DisplayName("Certain Expense by pages")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCertainExpensePages() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		List<Expense> expected = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(food);
+			expense.setCount(1);
+			expense.setLocalDate(LocalDate.of(2020, 5, 1 + i / 2)); //по два расхода на дату, чтобы проверить упорядочивание по id
+			expense.setUnitPrice(BigDecimal.valueOf(100.00));
+			expense.setTotalPrice();
+			expected.add(expenseService.addExpense(expense));
+		}
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dates", "2020-05-01,2020-05-31");
+		params.put("orderBy", "localDate");
+		params.put("pageSize", "2");
+		
+		List<Expense> actual = new ArrayList<>();
+		int pages = 0;
+		ExpensePage page;
+		do {
+			page = expenseService.getCertainExpensePage(params);
+			actual.addAll(page.getContent());
+			params.put("cursor", String.valueOf(page.getNextCursor()));
+			pages++;
+		} while (page.hasNext());
+		
+		assertEquals(3, pages);
+		assertEquals(expected, actual);
+	}
+	
+	@Test
+	@DisplayName("Certain Expense as stream")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCertainExpenseStream() throws Exception {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		for (int i = 0; i < 5; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(food);
+			expense.setCount(1);
+			expense.setLocalDate(LocalDate.of(2020, 5, 5 - i));
+			expense.setUnitPrice(BigDecimal.valueOf(100.00 + i));
+			expense.setTotalPrice();
+			expenseService.addExpense(expense);
+		}
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dates", "2020-05-02,2020-05-31");
+		params.put("orderBy", "localDate");
+		
+		List<Expense> streamed = new ArrayList<>();
+		expenseService.streamCertainExpense(criteria.specification(params), criteria.sort(params), streamed::add);
+		assertEquals(4, streamed.size());
+		assertEquals(expenseService.getCertainExpense(params), streamed);
+		
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(expenseController).build();
+		MvcResult result = mockMvc.perform(get("/api/expense-certain").param("stream", "true")
+				.param("dates", "2020-05-02,2020-05-31").param("orderBy", "localDate"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		JsonNode body = new ObjectMapper().readTree(mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+		assertEquals(4, body.size());
+		assertEquals(streamed.get(0).getId().longValue(), body.get(0).get("id").asLong());
+	}
+	
+	@Test
+	@DisplayName("Certain Expense in compact Smile form")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCertainExpenseSmile() throws Exception {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		for (int i = 0; i < 3; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(meat);
+			expense.setCount(1);
+			expense.setLocalDate(LocalDate.of(2020, 5, 1 + i));
+			expense.setUnitPrice(BigDecimal.valueOf(100.00));
+			expense.setTotalPrice();
+			expenseService.addExpense(expense);
+		}
+		
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(expenseController).build();
+		//без указания формата ответ остается в json
+		mockMvc.perform(get("/api/expense-certain").param("dates", "2020-05-01,2020-05-31").param("orderBy", "localDate"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+		
+		byte[] body = mockMvc.perform(get("/api/expense-certain").param("dates", "2020-05-01,2020-05-31").param("orderBy", "localDate")
+						.accept(ExpenseController.SMILE_MEDIA_TYPE))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(ExpenseController.SMILE_MEDIA_TYPE))
+				.andReturn().getResponse().getContentAsByteArray();
+		JsonNode compact = new ObjectMapper(new SmileFactory()).readTree(body);
+		
+		JsonNode categories = compact.get("categories");
+		assertEquals(2, categories.size());
+		assertEquals(food.getId().intValue(), categories.get(0).get("id").intValue());
+		assertTrue(categories.get(0).get("parentId").isNull());
+		assertEquals(meat.getName(), categories.get(1).get("name").textValue());
+		assertEquals(food.getId().intValue(), categories.get(1).get("parentId").intValue());
+		
+		JsonNode expenses = compact.get("expenses");
+		assertEquals(3, expenses.size());
+		for (JsonNode expense : expenses) {
+			assertEquals(meat.getId().intValue(), expense.get("categoryId").intValue());
+			assertNull(expense.get("category"));
+		}
+		assertEquals("2020-05-01", expenses.get(0).get("localDate").textValue());
+		
+		mockMvc.perform(get("/api/expense-certain").param("dates", "2020-13-01,2020-05-31").param("orderBy", "localDate")
+						.accept(ExpenseController.SMILE_MEDIA_TYPE))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+	}
+	
 	@Test
 	@DisplayName("Data for bar")
 	@Sql(value = "classpath:db/clean-up.sql",
@@ -238,4 +558,835 @@ public class ExpenseIntegrationTest {
 		assertEquals(0, Double.compare(500, dataForBar.get("Продукты")));
 		assertEquals(0, Double.compare(1500, dataForBar.get("Авто")));
 	}
+	
+	@Test
+	@DisplayName("Data for bar by subcategories")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testDataForBarBySubcategories() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		Category nuts = new Category();
+		nuts.setName("Орехи");
+		nuts.setParent(food);
+		nuts = categoryService.save(nuts);
+		
+		Expense expenseMeat = new Expense();
+		expenseMeat.setCategory(meat);
+		expenseMeat.setCount(2);
+		expenseMeat.setLocalDate(LocalDate.of(2020, 5, 5));
+		expenseMeat.setUnitPrice(BigDecimal.valueOf(350.00));
+		expenseMeat.setTotalPrice();
+		expenseService.addExpense(expenseMeat);
+		
+		Expense expenseFood = new Expense();
+		expenseFood.setCategory(food);
+		expenseFood.setCount(1);
+		expenseFood.setLocalDate(LocalDate.of(2020, 5, 6));
+		expenseFood.setUnitPrice(BigDecimal.valueOf(120.00));
+		expenseFood.setTotalPrice();
+		expenseService.addExpense(expenseFood);
+		
+		Expense expenseOld = new Expense();
+		expenseOld.setCategory(meat);
+		expenseOld.setCount(1);
+		expenseOld.setLocalDate(LocalDate.of(2020, 3, 8));
+		expenseOld.setUnitPrice(BigDecimal.valueOf(300.00));
+		expenseOld.setTotalPrice();
+		expenseService.addExpense(expenseOld);
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dateFrom", "2020-05-01");
+		params.put("dateTo", "2020-05-31");
+		params.put("categoryId", food.getId().toString());
+		
+		Map<String, Double> dataForBar = expenseService.getDataForBar(params);
+		assertEquals(3, dataForBar.size());
+		assertEquals(0, Double.compare(700, dataForBar.get("Мясо")));
+		assertEquals(0, Double.compare(0, dataForBar.get("Орехи")));
+		assertEquals(0, Double.compare(120, dataForBar.get("Без подкатегории")));
+	}
+	
+	@Test
+	@DisplayName("Data for series")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testDataForSeries() throws Exception {
+		Category auto = new Category();
+		auto.setName("Авто");
+		auto = categoryService.save(auto);
+		
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category petrol = new Category();
+		petrol.setName("Бензин");
+		petrol.setParent(auto);
+		petrol = categoryService.save(petrol);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		Category vegetable = new Category();
+		vegetable.setName("Овощи");
+		vegetable.setParent(food);
+		vegetable = categoryService.save(vegetable);
+		
+		//подкатегория с названием ряда расходов без подкатегории не сливается с ним
+		Category namesake = new Category();
+		namesake.setName("Без подкатегории");
+		namesake.setParent(food);
+		namesake = categoryService.save(namesake);
+		
+		Object[][] expenses = {
+				{namesake, LocalDate.of(2019, 12, 31), 30.00},
+				{meat, LocalDate.of(2019, 12, 30), 100.00},
+				{meat, LocalDate.of(2020, 1, 5), 200.00},
+				{vegetable, LocalDate.of(2020, 1, 6), 50.00},
+				{food, LocalDate.of(2020, 3, 1), 70.00},
+				{petrol, LocalDate.of(2020, 3, 31), 1500.00},
+				{petrol, LocalDate.of(2021, 1, 1), 900.00}};
+		for (Object[] row : expenses) {
+			Expense expense = new Expense();
+			expense.setCategory((Category) row[0]);
+			expense.setCount(1);
+			expense.setLocalDate((LocalDate) row[1]);
+			expense.setUnitPrice(BigDecimal.valueOf((Double) row[2]));
+			expense.setTotalPrice();
+			expenseService.addExpense(expense);
+		}
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dateFrom", "2020-01-01");
+		params.put("dateTo", "2020-04-15");
+		ExpenseSeries monthly = expenseService.getDataForSeries(params);
+		assertEquals("month", monthly.getGranularity());
+		assertEquals(Arrays.asList("2020-01-01", "2020-02-01", "2020-03-01", "2020-04-01"), monthly.getBuckets());
+		assertEquals(Arrays.asList("Авто", "Продукты"), monthly.getSeries().stream().map(ExpenseSeries.Series::getName).collect(Collectors.toList()));
+		assertEquals(Arrays.asList(0.0, 0.0, 1500.0, 0.0), seriesValues(monthly, auto));
+		assertEquals(Arrays.asList(250.0, 0.0, 70.0, 0.0), seriesValues(monthly, food));
+		
+		//неделя начинается с понедельника: 2019-12-30 и 2020-01-05 в одной неделе, 2020-01-06 - в следующей
+		params.put("dateFrom", "2019-12-30");
+		params.put("dateTo", "2020-01-12");
+		params.put("granularity", "WEEK");
+		params.put("categoryId", food.getId().toString());
+		ExpenseSeries weekly = expenseService.getDataForSeries(params);
+		assertEquals(Arrays.asList("2019-12-30", "2020-01-06"), weekly.getBuckets());
+		assertEquals(4, weekly.getSeries().size());
+		assertEquals(Arrays.asList(300.0, 0.0), seriesValues(weekly, meat));
+		assertEquals(Arrays.asList(0.0, 50.0), seriesValues(weekly, vegetable));
+		assertEquals(Arrays.asList(30.0, 0.0), seriesValues(weekly, namesake));
+		assertEquals(Arrays.asList(0.0, 0.0), seriesValues(weekly, food));
+		Integer foodId = food.getId();
+		assertEquals("Без подкатегории", weekly.getSeries().stream().filter(series -> series.getCategoryId().equals(foodId))
+				.findFirst().get().getName());
+		
+		params.remove("categoryId");
+		params.put("dateFrom", "2019-06-01");
+		params.put("dateTo", "2021-12-31");
+		params.put("granularity", "year");
+		ExpenseSeries yearly = expenseService.getDataForSeries(params);
+		assertEquals(Arrays.asList("2019-01-01", "2020-01-01", "2021-01-01"), yearly.getBuckets());
+		assertEquals(Arrays.asList(0.0, 1500.0, 900.0), seriesValues(yearly, auto));
+		assertEquals(Arrays.asList(130.0, 320.0, 0.0), seriesValues(yearly, food));
+		
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(expenseController).build();
+		String body = mockMvc.perform(get("/api/expense-series").param("dateFrom", "2020-03-01").param("dateTo", "2020-03-02").param("granularity", "day"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		assertEquals(new ObjectMapper().readTree("{\"granularity\":\"day\",\"buckets\":[\"2020-03-01\",\"2020-03-02\"],"
+				+ "\"series\":[{\"categoryId\":" + auto.getId() + ",\"name\":\"Авто\",\"values\":[0.0,0.0]},"
+				+ "{\"categoryId\":" + food.getId() + ",\"name\":\"Продукты\",\"values\":[70.0,0.0]}]}"), new ObjectMapper().readTree(body));
+		mockMvc.perform(get("/api/expense-series").param("dateFrom", "2020-03-01").param("dateTo", "2020-03-02").param("granularity", "hour"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/api/expense-series").param("dateFrom", "2020-03-02").param("dateTo", "2020-03-01"))
+				.andExpect(status().isBadRequest());
+	}
+	
+	@Test
+	@DisplayName("Pivot report")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testPivot() throws Exception {
+		Category auto = new Category();
+		auto.setName("Авто");
+		auto = categoryService.save(auto);
+		
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category petrol = new Category();
+		petrol.setName("Бензин");
+		petrol.setParent(auto);
+		petrol = categoryService.save(petrol);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		Category vegetable = new Category();
+		vegetable.setName("Овощи, фрукты");
+		vegetable.setParent(food);
+		vegetable = categoryService.save(vegetable);
+		
+		Object[][] expenses = {
+				{meat, LocalDate.of(2019, 12, 30), 100.00},
+				{meat, LocalDate.of(2020, 1, 5), 200.00},
+				{meat, LocalDate.of(2020, 1, 25), 15.50},
+				{vegetable, LocalDate.of(2020, 2, 6), 50.00},
+				{food, LocalDate.of(2020, 3, 1), 70.00},
+				{petrol, LocalDate.of(2020, 3, 31), 1500.00}};
+		for (Object[] row : expenses) {
+			Expense expense = new Expense();
+			expense.setCategory((Category) row[0]);
+			expense.setCount(1);
+			expense.setLocalDate((LocalDate) row[1]);
+			expense.setUnitPrice(BigDecimal.valueOf((Double) row[2]));
+			expense.setTotalPrice();
+			expenseService.addExpense(expense);
+		}
+		
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(expenseController).build();
+		MvcResult jsonResult = mockMvc.perform(get("/api/expense-pivot").param("dateFrom", "2020-01-01").param("dateTo", "2020-03-31")
+				.accept(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		//суммы сравниваются как BigDecimal, чтобы проверить выдачу без потери копеек
+		JsonNode pivot = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+				.setNodeFactory(JsonNodeFactory.withExactBigDecimals(true)).readTree(mockMvc.perform(asyncDispatch(jsonResult))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+		assertEquals("[\"2020-01\",\"2020-02\",\"2020-03\"]", pivot.get("months").toString());
+		JsonNode rows = pivot.get("rows");
+		assertEquals(6, rows.size());
+		assertEquals("{\"category\":\"Авто\",\"subcategory\":null,\"values\":[0,0,1500.00],\"total\":1500.00}", rows.get(0).toString());
+		assertEquals("Бензин", rows.get(1).get("subcategory").asText());
+		assertEquals("{\"category\":\"Продукты\",\"subcategory\":null,\"values\":[215.50,50.00,70.00],\"total\":335.50}", rows.get(2).toString());
+		assertEquals("[215.50,0,0]", rows.get(3).get("values").toString());
+		assertEquals("Овощи, фрукты", rows.get(4).get("subcategory").asText());
+		assertEquals("{\"category\":\"Продукты\",\"subcategory\":\"Без подкатегории\",\"values\":[0,0,70.00],\"total\":70.00}", rows.get(5).toString());
+		assertEquals("{\"values\":[215.50,50.00,1570.00],\"total\":1835.50}", pivot.get("total").toString());
+		
+		MvcResult csvResult = mockMvc.perform(get("/api/expense-pivot").param("dateFrom", "2020-01-01").param("dateTo", "2020-03-31")
+				.accept("text/csv"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String csv = mockMvc.perform(asyncDispatch(csvResult))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+		assertEquals("Категория,Подкатегория,2020-01,2020-02,2020-03,Итого\r\n"
+				+ "Авто,,0,0,1500.00,1500.00\r\n"
+				+ "Авто,Бензин,0,0,1500.00,1500.00\r\n"
+				+ "Продукты,,215.50,50.00,70.00,335.50\r\n"
+				+ "Продукты,Мясо,215.50,0,0,215.50\r\n"
+				+ "Продукты,\"Овощи, фрукты\",0,50.00,0,50.00\r\n"
+				+ "Продукты,Без подкатегории,0,0,70.00,70.00\r\n"
+				+ "Итого,,215.50,50.00,1570.00,1835.50\r\n", csv);
+		
+		MvcResult errorResult = mockMvc.perform(get("/api/expense-pivot").param("dateFrom", "2020-03-01").param("dateTo", "2020-01-31"))
+				.andReturn();
+		mockMvc.perform(asyncDispatch(errorResult))
+				.andExpect(status().isBadRequest());
+	}
+	
+	@Test
+	@DisplayName("Daily rollup follows expense changes")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testDailyRollup() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		Expense first = new Expense();
+		first.setCategory(meat);
+		first.setCount(1);
+		first.setLocalDate(LocalDate.of(2020, 5, 5));
+		first.setUnitPrice(BigDecimal.valueOf(350.00));
+		first.setTotalPrice();
+		first = expenseService.addExpense(first);
+		
+		Expense second = new Expense();
+		second.setCategory(meat);
+		second.setCount(2);
+		second.setLocalDate(LocalDate.of(2020, 5, 5));
+		second.setUnitPrice(BigDecimal.valueOf(100.00));
+		second.setTotalPrice();
+		second = expenseService.addExpense(second);
+		
+		Expense third = new Expense();
+		third.setCategory(food);
+		third.setCount(1);
+		third.setLocalDate(LocalDate.of(2020, 5, 6));
+		third.setUnitPrice(BigDecimal.valueOf(50.00));
+		third.setTotalPrice();
+		third = expenseService.addExpense(third);
+		
+		second.setCategory(food);
+		second.setLocalDate(LocalDate.of(2020, 5, 6));
+		expenseService.updateExpense(second.getId(), second);
+		expenseService.deleteExpense(first.getId());
+		
+		List<String> maintained = rollupsAsStrings();
+		assertEquals(1, maintained.size());
+		assertEquals(1, rollupService.rebuild());
+		assertEquals(rollupsAsStrings(), maintained);
+		assertTrue(maintained.get(0).contains("expenseCount=2"));
+		
+		//расходы месяца удалены в обход приложения (как при отключении секции): пересчитываются только итоги этого месяца
+		Expense june = new Expense();
+		june.setCategory(meat);
+		june.setCount(1);
+		june.setLocalDate(LocalDate.of(2020, 6, 1));
+		june.setUnitPrice(BigDecimal.valueOf(80.00));
+		june.setTotalPrice();
+		expenseService.addExpense(june);
+		new JdbcTemplate(dataSource).update("delete from expense where local_date < ?", Date.valueOf(LocalDate.of(2020, 6, 1)));
+		assertEquals(0, rollupService.rebuild(LocalDate.of(2020, 5, 1), LocalDate.of(2020, 5, 31)));
+		List<String> afterRange = rollupsAsStrings();
+		assertEquals(1, afterRange.size());
+		assertEquals(1, rollupService.rebuild());
+		assertEquals(afterRange, rollupsAsStrings());
+	}
+	
+	@Test
+	@DisplayName("Concurrent first expenses of a category and day are summed in one daily rollup and usage counter")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testConcurrentDailyRollup() throws Exception {
+		int threads = 6;
+		int days = 5;
+		List<Integer> categoryIds = new ArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int day = 1; day <= days; day++) {
+				//все расходы дня по новой категории добавляются одновременно: ни итога за день, ни счетчика категории 
+				//еще нет ни в одной транзакции
+				Category food = new Category();
+				food.setName("Продукты " + day);
+				Category savedFood = categoryService.save(food);
+				categoryIds.add(savedFood.getId());
+				CyclicBarrier barrier = new CyclicBarrier(threads);
+				List<Future<Expense>> added = new ArrayList<>();
+				for (int i = 0; i < threads; i++) {
+					Expense expense = new Expense();
+					expense.setCategory(savedFood);
+					expense.setCount(1);
+					expense.setLocalDate(LocalDate.of(2020, 6, day));
+					expense.setUnitPrice(BigDecimal.valueOf(10.00 + i));
+					expense.setTotalPrice();
+					added.add(executor.submit(() -> {
+						barrier.await();
+						return expenseService.addExpense(expense);
+					}));
+				}
+				for (Future<Expense> future : added) {
+					assertNotNull(future.get(30, TimeUnit.SECONDS).getId());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		List<String> maintained = rollupsAsStrings();
+		assertEquals(days, maintained.size());
+		maintained.forEach(rollup -> assertTrue(rollup, rollup.endsWith(" 75 expenseCount=" + threads)));
+		rollupService.rebuild();
+		assertEquals(rollupsAsStrings(), maintained);
+		categoryIds.forEach(id -> assertEquals(threads, usageRepo.findById(id).get().getExpenseCount()));
+	}
+	
+	@Test
+	@DisplayName("Generated dataset")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testGeneratedDataset() throws SQLException {
+		DatasetSpec spec = new DatasetSpec();
+		spec.setParentCategories(5);
+		spec.setChildCategories(3);
+		spec.setExpenses(20000);
+		spec.setStartDate(LocalDate.of(2019, 1, 1));
+		spec.setDays(365);
+		spec.setRebuildDerived(false);
+		GeneratedDataset dataset;
+		try (Connection connection = dataSource.getConnection()) {
+			dataset = new DatasetGenerator(spec).generate(connection);
+		}
+		//категории и расходы вставлены в обход сервисов
+		treeCache.invalidate();
+		rollupService.rebuild();
+		usageService.rebuild();
+		
+		List<Category> parents = categoryService.getParentCategories();
+		assertEquals(5, parents.size());
+		parents.forEach(parent -> assertEquals(3, categoryService.getChilds(parent).size()));
+		assertTrue(categoryService.getParentCategoriesNoExpense().isEmpty());
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dates", "2019-01-01,2019-12-31");
+		params.put("orderBy", "localDate");
+		List<Expense> expenses = expenseService.getCertainExpense(params);
+		assertEquals(20000, expenses.size());
+		BigDecimal total = expenses.stream().map(Expense::getTotalPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
+		
+		Map<String, String> barParams = new HashMap<>();
+		barParams.put("dateFrom", "2019-01-01");
+		barParams.put("dateTo", "2019-12-31");
+		double barTotal = expenseService.getDataForBar(barParams).values().stream().mapToDouble(Double::doubleValue).sum();
+		assertEquals(total.doubleValue(), barTotal, 0.01);
+		
+		//новые расходы получают идентификаторы за пределами сгенерированного диапазона:
+		//из блока, выделенного приложению до генерации, или из блоков после диапазона
+		for (int i = 0; i < 60; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(categoryService.findCategory(dataset.getParentCategoryIds().get(0)));
+			expense.setLocalDate(LocalDate.of(2019, 6, 1));
+			expense.setUnitPrice(BigDecimal.valueOf(100.00));
+			expense.setTotalPrice();
+			long id = expenseService.addExpense(expense).getId();
+			assertTrue(id < dataset.getFirstExpenseId() || id >= dataset.getFirstExpenseId() + dataset.getExpenses());
+		}
+	}
+	
+	@Test
+	@DisplayName("In-memory aggregation engines match daily rollup")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testAggregationEngines() throws Exception {
+		DatasetSpec spec = new DatasetSpec();
+		spec.setParentCategories(5);
+		spec.setChildCategories(3);
+		spec.setExpenses(20000);
+		spec.setStartDate(LocalDate.of(2019, 1, 1));
+		spec.setDays(365);
+		spec.setRebuildDerived(false);
+		try (Connection connection = dataSource.getConnection()) {
+			new DatasetGenerator(spec).generate(connection);
+		}
+		treeCache.invalidate();
+		rollupService.rebuild();
+		assertEquals(20000, columnStore.reload());
+		assertTrue(fenwickIndex.reload() > 0);
+		try {
+			Random random = new Random(17);
+			List<Integer> categoryIds = treeCache.get().getAll().stream().map(Category::getId).collect(Collectors.toList());
+			assertSameTotals(random, categoryIds);
+			
+			//изменения через сервис попадают в журнал изменений хранилища и в индекс
+			List<Expense> added = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				Expense expense = new Expense();
+				expense.setCategory(categoryService.findCategory(categoryIds.get(random.nextInt(categoryIds.size()))));
+				expense.setCount(1 + random.nextInt(3));
+				expense.setLocalDate(LocalDate.of(2019, 1, 1).plusDays(random.nextInt(365)));
+				expense.setUnitPrice(BigDecimal.valueOf(random.nextInt(100000), 2));
+				expense.setTotalPrice();
+				added.add(expenseService.addExpense(expense));
+			}
+			for (int i = 0; i < 10; i++) {
+				Expense expense = added.get(i);
+				expense.setCategory(categoryService.findCategory(categoryIds.get(random.nextInt(categoryIds.size()))));
+				expense.setLocalDate(expense.getLocalDate().plusDays(random.nextInt(30)));
+				expenseService.updateExpense(expense.getId(), expense);
+			}
+			for (int i = 10; i < 20; i++) {
+				expenseService.deleteExpense(added.get(i).getId());
+			}
+			//расходы за пределами диапазона дней индекса расширяют его, а слишком далекие даты учитываются отдельно
+			LocalDate farFuture = LocalDate.of(9999, 12, 31);
+			for (LocalDate date : Arrays.asList(LocalDate.of(2016, 2, 29), LocalDate.of(2021, 7, 1), farFuture)) {
+				Expense expense = new Expense();
+				expense.setCategory(categoryService.findCategory(categoryIds.get(0)));
+				expense.setCount(1);
+				expense.setLocalDate(date);
+				expense.setUnitPrice(BigDecimal.valueOf(12345, 2));
+				expense.setTotalPrice();
+				expenseService.addExpense(expense);
+			}
+			Map<String, String> params = new HashMap<>();
+			params.put("dates", "2019-03-01,2019-03-02");
+			params.put("orderBy", "localDate");
+			List<Expense> generated = expenseService.getCertainExpense(params);
+			for (int i = 0; i < Math.min(5, generated.size()); i++) {
+				expenseService.deleteExpense(generated.get(i).getId());
+			}
+			long expected = 20000 + 33 - Math.min(5, generated.size());
+			assertEquals(expected, columnStore.size());
+			assertSameTotals(random, categoryIds);
+			
+			columnStore.compact();
+			assertEquals(expected, columnStore.size());
+			assertSameTotals(random, categoryIds);
+			
+			//при накоплении журнала слияние выполняется в фоновом потоке, чтение во время слияния дает те же суммы
+			Expense churn = new Expense();
+			churn.setCategory(categoryService.findCategory(categoryIds.get(0)));
+			churn.setCount(1);
+			churn.setLocalDate(LocalDate.of(2019, 6, 1));
+			churn.setUnitPrice(BigDecimal.valueOf(777, 2));
+			churn.setTotalPrice();
+			for (int i = 0; i < 2500; i++) {
+				columnStore.expenseAdded(churn);
+				columnStore.expenseRemoved(churn);
+			}
+			for (int i = 0; i < 3; i++) {
+				assertEquals(expected, columnStore.size());
+				assertSameTotals(random, categoryIds);
+			}
+			
+			//изменения, зафиксированные во время повторной загрузки, применяются к загруженным данным
+			ExecutorService writer = Executors.newSingleThreadExecutor();
+			try {
+				Future<?> writes = writer.submit(() -> {
+					Random writerRandom = new Random(23);
+					for (int i = 0; i < 30; i++) {
+						Expense expense = new Expense();
+						expense.setCategory(categoryService.findCategory(categoryIds.get(writerRandom.nextInt(categoryIds.size()))));
+						expense.setCount(1);
+						expense.setLocalDate(LocalDate.of(2019, 1, 1).plusDays(writerRandom.nextInt(365)));
+						expense.setUnitPrice(BigDecimal.valueOf(writerRandom.nextInt(100000), 2));
+						expense.setTotalPrice();
+						expenseService.addExpense(expense);
+					}
+				});
+				while (!writes.isDone()) {
+					columnStore.reload();
+					fenwickIndex.reload();
+				}
+				writes.get();
+			} finally {
+				writer.shutdown();
+			}
+			expected += 30;
+			assertEquals(expected, columnStore.size());
+			assertSameTotals(random, categoryIds);
+			
+			Map<Integer, BigDecimal> farTotals = rollupService.totalsByCategory(farFuture.withDayOfYear(1), farFuture, categoryIds);
+			assertEquals(1, farTotals.size());
+			assertSameTotals(farTotals, fenwickIndex.totalsByCategory(farFuture.withDayOfYear(1), farFuture, categoryIds));
+			assertSameTotals(farTotals, columnStore.totalsByCategory(farFuture.withDayOfYear(1), farFuture, categoryIds));
+			assertSameTotals(rollupService.totalsByParentCategory(LocalDate.of(2015, 1, 1), farFuture),
+					fenwickIndex.totalsByParentCategory(LocalDate.of(2015, 1, 1), farFuture));
+			fenwickIndex.reload();
+			assertSameTotals(farTotals, fenwickIndex.totalsByCategory(farFuture.withDayOfYear(1), farFuture, categoryIds));
+			assertSameTotals(random, categoryIds);
+			
+			LocalDate start = LocalDate.of(2015, 1, 1);
+			LocalDate finish = LocalDate.of(2022, 12, 31);
+			assertEquals(expected - 1, columnStore.count(start, finish, categoryIds));
+			BigDecimal total = rollupService.totalsByCategory(start, finish, categoryIds).values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+			assertEquals(0, total.compareTo(columnStore.sum(start, finish, categoryIds)));
+			
+			//суммы для диаграммы по родительским категориям и по подкатегориям не зависят от механизма агрегирования
+			LocalDate barFrom = LocalDate.of(2019, 2, 10);
+			LocalDate barTo = LocalDate.of(2019, 8, 20);
+			Map<Integer, BigDecimal> byParent = rollupService.totalsByParentCategory(barFrom, barTo);
+			assertSameTotals(byParent, columnStore.totalsByParentCategory(barFrom, barTo));
+			assertSameTotals(byParent, fenwickIndex.totalsByParentCategory(barFrom, barTo));
+			Category parent = categoryService.getParentCategories().get(0);
+			List<Integer> subcategoryIds = categoryService.getChilds(parent).stream().map(Category::getId).collect(Collectors.toList());
+			subcategoryIds.add(parent.getId());
+			Map<Integer, BigDecimal> bySubcategory = rollupService.totalsByCategory(barFrom, barTo, subcategoryIds);
+			assertSameTotals(bySubcategory, columnStore.totalsByCategory(barFrom, barTo, subcategoryIds));
+			assertSameTotals(bySubcategory, fenwickIndex.totalsByCategory(barFrom, barTo, subcategoryIds));
+		} finally {
+			columnStore.clear();
+			fenwickIndex.clear();
+		}
+	}
+	
+	/**
+	 * Сравнение сумм колоночного хранилища и индекса префиксных сумм с дневными итогами
+	 * для случайных периодов и наборов категорий.
+	 */
+	private void assertSameTotals(Random random, List<Integer> categoryIds) {
+		for (int i = 0; i < 50; i++) {
+			LocalDate start = LocalDate.of(2015, 12, 1).plusDays(random.nextInt(2200));
+			LocalDate finish = start.plusDays(random.nextInt(400));
+			Map<Integer, BigDecimal> byParent = rollupService.totalsByParentCategory(start, finish);
+			assertSameTotals(byParent, columnStore.totalsByParentCategory(start, finish));
+			assertSameTotals(byParent, fenwickIndex.totalsByParentCategory(start, finish));
+			List<Integer> subset = categoryIds.stream().filter(id -> random.nextBoolean()).collect(Collectors.toList());
+			Map<Integer, BigDecimal> byCategory = rollupService.totalsByCategory(start, finish, subset);
+			assertSameTotals(byCategory, columnStore.totalsByCategory(start, finish, subset));
+			assertSameTotals(byCategory, fenwickIndex.totalsByCategory(start, finish, subset));
+		}
+	}
+	
+	private static void assertSameTotals(Map<Integer, BigDecimal> expected, Map<Integer, BigDecimal> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+		expected.forEach((id, total) -> assertEquals(0, total.compareTo(actual.get(id)), "category " + id + ": " + total + " != " + actual.get(id)));
+	}
+	
+	@Test
+	@DisplayName("Bulk expense import")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testBulkImport() throws IOException {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		String json = "["
+				+ "{\"category\":{\"id\":" + meat.getId() + "},\"count\":2,\"unitPrice\":100.00,\"localDate\":\"2020-05-05\",\"note\":\"Говядина\"},"
+				+ "{\"category\":{\"id\":" + food.getId() + "},\"count\":1,\"unitPrice\":50.00,\"localDate\":\"2020-05-05\"},"
+				+ "{\"category\":{\"id\":-1},\"count\":1,\"unitPrice\":50.00,\"localDate\":\"2020-05-05\"},"
+				+ "{\"category\":{\"id\":" + food.getId() + "},\"count\":0,\"unitPrice\":50.00,\"localDate\":\"2020-05-05\"},"
+				+ "{\"category\":{\"id\":" + meat.getId() + "},\"count\":3,\"unitPrice\":10.00,\"localDate\":\"2020-05-06\"}"
+				+ "]";
+		ExpenseImportReport report = importService.importExpenses(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 2);
+		assertNull(report.getError());
+		assertEquals(3, report.getAccepted());
+		assertEquals(2, report.getRejected());
+		assertEquals(2, report.getChunks().size());
+		assertEquals(2, report.getChunks().get(0).getAccepted());
+		assertTrue(report.getChunks().get(0).getRejected().isEmpty());
+		assertEquals(2, report.getChunks().get(1).getFirstIndex());
+		assertEquals(1, report.getChunks().get(1).getAccepted());
+		assertEquals(2, report.getChunks().get(1).getRejected().size());
+		assertEquals(2, report.getChunks().get(1).getRejected().get(0).getIndex());
+		assertEquals(3, report.getChunks().get(1).getRejected().get(1).getIndex());
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dates", "2020-05-01,2020-05-31");
+		params.put("orderBy", "totalPrice");
+		List<Expense> imported = expenseService.getCertainExpense(params);
+		assertEquals(3, imported.size());
+		assertEquals(0, BigDecimal.valueOf(30.00).compareTo(imported.get(0).getTotalPrice()));
+		assertEquals(0, BigDecimal.valueOf(200.00).compareTo(imported.get(2).getTotalPrice()));
+		assertEquals(3, rollupsAsStrings().size());
+		
+		ExpenseImportReport malformed = importService.importExpenses(new ByteArrayInputStream(("["
+				+ "{\"category\":{\"id\":" + meat.getId() + "},\"count\":1,\"unitPrice\":5.00,\"localDate\":\"2020-05-07\"},"
+				+ "{\"category\":").getBytes(StandardCharsets.UTF_8)), 2);
+		assertNotNull(malformed.getError());
+		assertEquals(1, malformed.getAccepted());
+	}
+	
+	@Test
+	@DisplayName("Categories loaded by id are read from the second-level cache")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testCategorySecondLevelCache() {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		
+		Category meat = new Category();
+		meat.setName("Мясо");
+		meat.setParent(food);
+		meat = categoryService.save(meat);
+		
+		//списки расходов загружают категории соединением (граф загрузки), кэш второго уровня используется при загрузке 
+		//категории по идентификатору, в том числе при обращении к ленивой категории расхода
+		treeCache.invalidate();
+		categoryRepo.findById(meat.getId());
+		long hits = cacheMetrics.snapshot().get("categoryHits").longValue();
+		long misses = cacheMetrics.snapshot().get("categoryMisses").longValue();
+		Category cached = categoryRepo.findById(meat.getId()).get();
+		assertEquals(meat.getName(), cached.getName());
+		assertEquals(food.getId(), cached.getParent().getId());
+		assertTrue(cacheMetrics.snapshot().get("categoryHits").longValue() > hits);
+		assertEquals(misses, cacheMetrics.snapshot().get("categoryMisses").longValue());
+	}
+	
+	@Test
+	@DisplayName("Request, repository and JDBC metrics in Prometheus text format")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testMetrics() throws Exception {
+		Category food = new Category();
+		food.setName("Продукты");
+		food = categoryService.save(food);
+		for (int i = 0; i < 3; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(food);
+			expense.setCount(1);
+			expense.setLocalDate(LocalDate.of(2020, 5, 1 + i));
+			expense.setUnitPrice(BigDecimal.valueOf(100.00));
+			expense.setTotalPrice();
+			expenseService.addExpense(expense);
+		}
+		
+		Map<String, String> params = new HashMap<>();
+		params.put("dates", "2020-05-01,2020-05-31");
+		params.put("orderBy", "localDate");
+		jdbcMetrics.begin();
+		expenseService.getCertainExpense(params);
+		JdbcMetrics.Counts counts = jdbcMetrics.end();
+		assertTrue(counts.getStatements() >= 1);
+		assertTrue(counts.getRows() >= 3);
+		
+		String handler = "ExpenseController.getCertainExpense";
+		long requests = requestMetrics.getRequestCount(handler);
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(expenseController).addInterceptors(requestMetricsInterceptor).build();
+		mockMvc.perform(get("/api/expense-certain").param("dates", "2020-05-01,2020-05-31").param("orderBy", "localDate"))
+				.andExpect(status().isOk());
+		assertEquals(requests + 1, requestMetrics.getRequestCount(handler));
+		
+		String metrics = MockMvcBuilders.standaloneSetup(metricsController).build().perform(get("/api/metrics"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+				.andReturn().getResponse().getContentAsString();
+		assertTrue(metrics.contains("expense_http_request_duration_seconds_count{handler=\"" + handler + "\",method=\"GET\",status=\"200\"}"));
+		assertTrue(metrics.contains("expense_http_request_jdbc_statements_bucket{handler=\"" + handler + "\",le=\"+Inf\"}"));
+		assertTrue(metrics.contains("expense_repository_duration_seconds_count{repository=\"ExpenseRepository\""));
+		assertTrue(metrics.contains("expense_jdbc_statements_total "));
+		assertTrue(metrics.contains("expense_pool_active "));
+		assertTrue(metrics.contains("expense_hibernate_second_level_hits "));
+	}
+	
+	@Test
+	@DisplayName("Pinned SQL statement budget of every expense endpoint")
+	@Sql(value = "classpath:db/clean-up.sql",
+			executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+	public void testQueryBudget() {
+		List<Category> children = new ArrayList<>();
+		Category food = null;
+		for (int p = 0; p < 2; p++) {
+			Category parent = new Category();
+			parent.setName("Родитель " + p);
+			parent = categoryService.save(parent);
+			if (food == null) {
+				food = parent;
+			}
+			for (int c = 0; c < 3; c++) {
+				Category child = new Category();
+				child.setName("Подкатегория " + p + "." + c);
+				child.setParent(parent);
+				children.add(categoryService.save(child));
+			}
+		}
+		List<Long> ids = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(children.get(i % children.size()));
+			expense.setCount(1);
+			expense.setLocalDate(LocalDate.of(2020, 5, 1 + i));
+			expense.setUnitPrice(BigDecimal.valueOf(100.00));
+			expense.setTotalPrice();
+			ids.add(expenseService.addExpense(expense).getId());
+		}
+		Map<String, String> certain = new HashMap<>();
+		certain.put("dates", "2020-05-01,2020-05-31");
+		certain.put("orderBy", "localDate");
+		Map<String, String> page = new HashMap<>(certain);
+		page.put("pageSize", "5");
+		Map<String, String> bar = new HashMap<>();
+		bar.put("dateFrom", "2020-01-01");
+		bar.put("dateTo", "2020-12-31");
+		Map<String, String> barByCategory = new HashMap<>(bar);
+		barByCategory.put("categoryId", food.getId().toString());
+		//без снимка дерева и кэша второго уровня категории расходов и их родители загружаются тем же запросом (граф загрузки)
+		treeCache.invalidate();
+		sql.reset();
+		expenseController.getCertainExpense(certain);
+		sql.assertSelectCount(1);
+		
+		//далее закрепляется число запросов в установившемся режиме: снимок дерева категорий и кэш второго уровня заполнены
+		treeCache.get();
+		sql.reset();
+		expenseController.getExpense(ids.get(0).toString());
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		expenseController.getCertainExpense(certain);
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		expenseController.getCertainExpense(page);
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		expenseController.getCompactCertainExpense(certain);
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		expenseController.getExpenseData(bar, new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		expenseController.getExpenseData(barByCategory, new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(1);
+		
+		Map<String, String> series = new HashMap<>(bar);
+		series.put("granularity", "week");
+		sql.reset();
+		expenseController.getExpenseSeries(series, new ServletWebRequest(new MockHttpServletRequest()));
+		sql.assertStatementCount(1);
+		
+		sql.reset();
+		expenseController.getExpensePivot(bar);
+		sql.assertStatementCount(1);
+		
+		//добавление: вставка расхода, первый дневной итог за дату (обновление без строк и вставка) и счетчик расходов категории;
+		//категория не блокируется
+		sql.reset();
+		expenseController.addExpense(newExpense(children.get(0)));
+		sql.assertSelectCount(0);
+		sql.assertInsertCount(2);
+		sql.assertUpdateCount(2);
+		sql.assertStatementCount(4);
+		
+		//изменение с переносом в другую категорию и на другую дату
+		sql.reset();
+		expenseController.updateExpense(ids.get(1).toString(), newExpense(children.get(1)));
+		sql.assertSelectCount(1);
+		sql.assertInsertCount(1);
+		sql.assertUpdateCount(3);
+		sql.assertDeleteCount(1);
+		
+		sql.reset();
+		expenseController.deleteExpense(ids.get(2).toString());
+		sql.assertSelectCount(1);
+		sql.assertUpdateCount(2);
+		sql.assertDeleteCount(2);
+		sql.stop();
+	}
+	
+	private static Expense newExpense(Category category) {
+		Expense expense = new Expense();
+		expense.setCategory(category);
+		expense.setCount(2);
+		expense.setLocalDate(LocalDate.of(2020, 6, 1));
+		expense.setUnitPrice(BigDecimal.valueOf(50.00));
+		expense.setTotalPrice();
+		return expense;
+	}
+	
+	private static List<Double> seriesValues(ExpenseSeries series, Category category) {
+		return series.getSeries().stream().filter(s -> s.getCategoryId().equals(category.getId()))
+				.findFirst().get().getValues();
+	}
+	
+	private List<String> rollupsAsStrings() {
+		List<String> rollups = new ArrayList<>();
+		rollupRepo.findAll(Sort.by("localDate", "categoryId")).forEach(rollup -> rollups.add(
+				rollup.getLocalDate() + " " + rollup.getCategoryId() + " " + rollup.getTotalPrice().stripTrailingZeros().toPlainString() 
+				+ " expenseCount=" + rollup.getExpenseCount()));
+		return rollups;
+	}
 }
@@ -0,0 +1,196 @@
+package com.expense.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.Cookie;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.expense.config.ReadWriteRoutingDataSource;
+import com.expense.config.ReadYourWrites;
+
+@DisplayName("Read/write DataSource routing test")
+public class ReadWriteRoutingTest {
+	
+	EmbeddedDatabase primary;
+	
+	EmbeddedDatabase firstReplica;
+	
+	EmbeddedDatabase secondReplica;
+	
+	@BeforeEach
+	public void createDatabases() {
+		primary = database("primary");
+		firstReplica = database("replica1");
+		secondReplica = database("replica2");
+	}
+	
+	@AfterEach
+	public void shutdownDatabases() {
+		primary.shutdown();
+		firstReplica.shutdown();
+		secondReplica.shutdown();
+	}
+	
+	@Test
+	@DisplayName("Read-only transactions go to replicas in turn, writes go to primary")
+	public void testRouting() {
+		DataSource dataSource = new ReadWriteRoutingDataSource(primary, Arrays.asList(firstReplica, secondReplica), 0).lazyProxy();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		
+		assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+		assertEquals("replica2", read(dataSource, jdbcTemplate, true));
+		assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+		assertEquals("primary", read(dataSource, jdbcTemplate, false));
+		assertEquals("primary", jdbcTemplate.queryForObject("select name from marker", String.class));
+	}
+	
+	@Test
+	@DisplayName("Read-only transactions of a client that has written go to primary, other clients read replicas")
+	public void testReadYourWrites() {
+		DataSource dataSource = new ReadWriteRoutingDataSource(primary, Collections.singletonList(firstReplica), 60000).lazyProxy();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		AtomicInteger writes = new AtomicInteger();
+		ReadYourWrites writer = new ReadYourWrites(false, writes::incrementAndGet);
+		ReadYourWrites reader = new ReadYourWrites(false, () -> {});
+		try {
+			ReadYourWrites.bind(writer);
+			assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+			new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> 
+					jdbcTemplate.update("update marker set name = 'primary written'"));
+			assertEquals(1, writes.get());
+			assertEquals("primary written", read(dataSource, jdbcTemplate, true));
+			
+			ReadYourWrites.bind(reader);
+			assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+			ReadYourWrites.unbind();
+			assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+			
+			//клиент, недавно записывавший данные в другом запросе
+			ReadYourWrites.bind(new ReadYourWrites(true, () -> {}));
+			assertEquals("primary written", read(dataSource, jdbcTemplate, true));
+		} finally {
+			ReadYourWrites.unbind();
+		}
+		assertEquals("primary written", primaryName());
+	}
+	
+	@Test
+	@DisplayName("Read-write transactions without writes do not switch the client to primary")
+	public void testReadWriteTransactionWithoutWrites() {
+		DataSource dataSource = new ReadWriteRoutingDataSource(primary, Collections.singletonList(firstReplica), 60000).lazyProxy();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		AtomicInteger writes = new AtomicInteger();
+		ReadYourWrites client = new ReadYourWrites(false, writes::incrementAndGet);
+		try {
+			ReadYourWrites.bind(client);
+			assertEquals("primary", read(dataSource, jdbcTemplate, false));
+			assertEquals(0, writes.get());
+			assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+			
+			//откат не отмечает запись
+			new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+				jdbcTemplate.update("update marker set name = 'rolled back'");
+				status.setRollbackOnly();
+				return null;
+			});
+			assertEquals(0, writes.get());
+			assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+		} finally {
+			ReadYourWrites.unbind();
+		}
+		assertEquals("primary", primaryName());
+	}
+	
+	@Test
+	@DisplayName("Read-your-writes window is passed to the client in a cookie")
+	public void testReadYourWritesCookie() throws Exception {
+		ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(primary, Collections.singletonList(firstReplica), 60000);
+		DataSource dataSource = routingDataSource.lazyProxy();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		ReadYourWritesInterceptor interceptor = new ReadYourWritesInterceptor();
+		interceptor.setRoutingDataSource(routingDataSource);
+		
+		MockHttpServletRequest writeRequest = new MockHttpServletRequest("POST", "/api/expense");
+		MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+		interceptor.preHandle(writeRequest, writeResponse, null);
+		try {
+			new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> 
+					jdbcTemplate.update("update marker set name = 'primary written'"));
+		} finally {
+			interceptor.afterCompletion(writeRequest, writeResponse, null, null);
+		}
+		Cookie cookie = writeResponse.getCookie(ReadYourWritesInterceptor.COOKIE);
+		assertNotNull(cookie);
+		assertTrue(Long.parseLong(cookie.getValue()) > System.currentTimeMillis());
+		assertEquals(60, cookie.getMaxAge());
+		
+		MockHttpServletRequest readRequest = new MockHttpServletRequest("GET", "/api/expense-certain");
+		readRequest.setCookies(cookie);
+		MockHttpServletResponse readResponse = new MockHttpServletResponse();
+		interceptor.preHandle(readRequest, readResponse, null);
+		try {
+			assertEquals("primary written", read(dataSource, jdbcTemplate, true));
+		} finally {
+			interceptor.afterCompletion(readRequest, readResponse, null, null);
+		}
+		assertNull(readResponse.getCookie(ReadYourWritesInterceptor.COOKIE));
+		
+		MockHttpServletRequest otherRequest = new MockHttpServletRequest("GET", "/api/expense-certain");
+		MockHttpServletResponse otherResponse = new MockHttpServletResponse();
+		interceptor.preHandle(otherRequest, otherResponse, null);
+		try {
+			assertEquals("replica1", read(dataSource, jdbcTemplate, true));
+		} finally {
+			interceptor.afterCompletion(otherRequest, otherResponse, null, null);
+		}
+	}
+	
+	@Test
+	@DisplayName("Without replicas everything goes to primary")
+	public void testNoReplicas() {
+		DataSource dataSource = new ReadWriteRoutingDataSource(primary, Collections.emptyList(), 0).lazyProxy();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		
+		assertEquals("primary", read(dataSource, jdbcTemplate, true));
+		assertEquals("primary", read(dataSource, jdbcTemplate, false));
+	}
+	
+	private String read(DataSource dataSource, JdbcTemplate jdbcTemplate, boolean readOnly) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+		transactionTemplate.setReadOnly(readOnly);
+		return transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select name from marker", String.class));
+	}
+	
+	private String primaryName() {
+		return new JdbcTemplate(primary).queryForObject("select name from marker", String.class);
+	}
+	
+	private static EmbeddedDatabase database(String name) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).setName(name).build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("create table marker (name varchar(50))");
+		jdbcTemplate.update("insert into marker (name) values (?)", name);
+		return database;
+	}
+}
@@ -0,0 +1,62 @@
+package com.expense.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.ToLongFunction;
+
+import com.expense.service.JdbcMetrics;
+
+/**
+ * Подсчет запросов SQL в тестах для закрепления числа запросов каждой точки входа: лишние запросы (N+1)
+ * при изменении отображения сущностей или сервисов приводят к падению теста.
+ * Подсчитываются запросы текущего потока с последнего вызова {@link #reset()}.
+ */
+class SqlStatementCounter {
+	private final JdbcMetrics jdbcMetrics;
+
+	SqlStatementCounter(JdbcMetrics jdbcMetrics) {
+		this.jdbcMetrics = jdbcMetrics;
+	}
+
+	/**
+	 * Начало подсчета заново.
+	 */
+	void reset() {
+		jdbcMetrics.begin();
+	}
+
+	/**
+	 * Окончание подсчета.
+	 */
+	void stop() {
+		jdbcMetrics.end();
+	}
+
+	void assertSelectCount(long expected) {
+		assertCount("select", expected, JdbcMetrics.Counts::getSelects);
+	}
+
+	void assertInsertCount(long expected) {
+		assertCount("insert", expected, JdbcMetrics.Counts::getInserts);
+	}
+
+	void assertUpdateCount(long expected) {
+		assertCount("update", expected, JdbcMetrics.Counts::getUpdates);
+	}
+
+	void assertDeleteCount(long expected) {
+		assertCount("delete", expected, JdbcMetrics.Counts::getDeletes);
+	}
+
+	void assertStatementCount(long expected) {
+		assertCount("statement", expected, JdbcMetrics.Counts::getStatements);
+	}
+
+	private void assertCount(String kind, long expected, ToLongFunction<JdbcMetrics.Counts> count) {
+		JdbcMetrics.Counts counts = jdbcMetrics.peek();
+		if (counts == null) {
+			throw new IllegalStateException("reset() must be called before assertions");
+		}
+		assertEquals(expected, count.applyAsLong(counts), "Unexpected " + kind + " count (" + counts + ")");
+	}
+}
@@ -1,2 +1,4 @@
+delete from category_usage;
+delete from expense_daily_rollup;
 delete from expense;
 delete from category;
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.expense.benchmark;
+
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import com.expense.config.DataTestConfig;
+import com.expense.config.ServiceTestConfig;
+
+/**
+ * Контекст приложения для измерений: те же конфигурационные классы и профиль test, что в интеграционных тестах,
+ * встроенная база данных H2 (свойства test.db.* в application-test.properties этого модуля).
+ * @author Alexandr Trifonov
+ *
+ */
+final class BenchmarkContext {
+
+	private BenchmarkContext() {
+	}
+
+	/**
+	 * Создание и запуск контекста приложения. Контекст закрывается вызывающей стороной.
+	 * @return Запущенный контекст приложения.
+	 */
+	static AnnotationConfigWebApplicationContext start() {
+		AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+		//конфигурация Spring MVC, подхватываемая сканированием пакетов, требует ServletContext, как и в тестах с @WebAppConfiguration
+		context.setServletContext(new MockServletContext());
+		context.getEnvironment().setActiveProfiles("test");
+		context.register(DataTestConfig.class, ServiceTestConfig.class);
+		context.refresh();
+		return context;
+	}
+}
@@ -0,0 +1,44 @@
+package com.expense.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск измерений из benchmarks.jar. Принимает те же параметры командной строки, что и org.openjdk.jmh.Main,
+ * но если формат результатов не указан (-rf), результаты сохраняются в json файл jmh-result.json,
+ * чтобы результаты разных запусков можно было сравнивать.
+ * <p>
+ * Пример: java -jar expense-benchmark/target/benchmarks.jar ExpenseServiceBenchmark -p rows=10000 -rff target/jmh-before.json
+ * @author Alexandr Trifonov
+ *
+ */
+public final class BenchmarkRunner {
+	/**
+	 * Файл результатов по умолчанию.
+	 */
+	private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListProfilers()
+				|| commandLineOptions.shouldListResultFormats() || commandLineOptions.shouldListWithParams()) {
+			//служебные режимы выполняет стандартная точка входа JMH
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+		if (!commandLineOptions.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!commandLineOptions.getResult().hasValue()) {
+			options.result(DEFAULT_RESULT_FILE);
+		}
+		new Runner(options.build()).run();
+	}
+}
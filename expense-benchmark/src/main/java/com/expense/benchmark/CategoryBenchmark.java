@@ -0,0 +1,89 @@
+package com.expense.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.expense.entities.Category;
+
+/**
+ * Измерение операций Category, выполняемых для каждого расхода: equals/hashCode (рекурсивно сравнивают родительскую категорию)
+ * и обход цепочки родительских категорий до корневой.
+ * @author Alexandr Trifonov
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CategoryBenchmark {
+	private Category parent;
+	private Category child;
+	private Category sameChild;
+	private Category otherChild;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		parent = category(1, "Продукты", null);
+		child = category(2, "Мясо", parent);
+		//равная, но не та же категория: equals проходит все поля, включая родительскую категорию
+		sameChild = category(2, "Мясо", category(1, "Продукты", null));
+		otherChild = category(3, "Овощи", parent);
+	}
+
+	@Benchmark
+	public int hashCodeChild() {
+		return child.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsSame() {
+		return child.equals(sameChild);
+	}
+
+	@Benchmark
+	public boolean equalsOther() {
+		return child.equals(otherChild);
+	}
+
+	@Benchmark
+	public Category rootOfChild() {
+		Category root = child;
+		while (root.getParent() != null) {
+			root = root.getParent();
+		}
+		return root;
+	}
+
+	/**
+	 * Создание категории с заданным идентификатором. Идентификатор назначается базой данных и не имеет сеттера, поэтому задается через рефлексию.
+	 * @param id Идентификатор категории.
+	 * @param name Имя категории.
+	 * @param parent Родительская категория или null.
+	 * @return Категория.
+	 * @throws ReflectiveOperationException при ошибке доступа к полю id.
+	 */
+	static Category category(int id, String name, Category parent) throws ReflectiveOperationException {
+		Category category = new Category();
+		category.setName(name);
+		if (parent != null) {
+			category.setParent(parent);
+		}
+		Field idField = Category.class.getDeclaredField("id");
+		idField.setAccessible(true);
+		idField.set(category, id);
+		return category;
+	}
+}
@@ -0,0 +1,75 @@
+package com.expense.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.ApplicationContext;
+
+import com.expense.datagen.DatasetGenerator;
+import com.expense.datagen.DatasetSpec;
+import com.expense.datagen.GeneratedDataset;
+import com.expense.service.CategoryTreeCache;
+import com.expense.service.CategoryUsageService;
+import com.expense.service.ExpenseRollupService;
+
+/**
+ * Генерируемый набор данных для измерений: дерево категорий и заданное число расходов (см. {@link DatasetGenerator}).
+ * Генерация детерминирована, поэтому результаты разных запусков сравнимы.
+ * <p>
+ * Расходы вставляются пакетами JDBC в обход сервиса, после чего снимок дерева категорий сбрасывается,
+ * а дневные итоги и счетчики расходов по категориям перестраиваются сервисами приложения, как после массовой загрузки.
+ * @author Alexandr Trifonov
+ *
+ */
+final class ExpenseDataset {
+	/**
+	 * Первая дата периода расходов.
+	 */
+	static final LocalDate START_DATE = LocalDate.of(2018, 1, 1);
+
+	/**
+	 * Число дней периода расходов (три года).
+	 */
+	static final int DAYS = 1096;
+
+	private final GeneratedDataset generated;
+
+	private ExpenseDataset(GeneratedDataset generated) {
+		this.generated = generated;
+	}
+
+	/**
+	 * Генерация набора данных в базе данных контекста приложения.
+	 * @param context Контекст приложения.
+	 * @param rows Число расходов.
+	 * @return Набор данных.
+	 * @throws SQLException при ошибке вставки данных.
+	 */
+	static ExpenseDataset generate(ApplicationContext context, int rows) throws SQLException {
+		DatasetSpec spec = new DatasetSpec();
+		spec.setExpenses(rows);
+		spec.setStartDate(START_DATE);
+		spec.setDays(DAYS);
+		spec.setRebuildDerived(false);
+		GeneratedDataset generated;
+		try (Connection connection = context.getBean(DataSource.class).getConnection()) {
+			generated = new DatasetGenerator(spec).generate(connection);
+		}
+		context.getBean(CategoryTreeCache.class).invalidate();
+		context.getBean(ExpenseRollupService.class).rebuild();
+		context.getBean(CategoryUsageService.class).rebuild();
+		return new ExpenseDataset(generated);
+	}
+
+	/**
+	 * Идентификатор родительской категории набора данных с подкатегориями.
+	 * @param index Номер родительской категории.
+	 * @return Идентификатор родительской категории.
+	 */
+	int parentId(int index) {
+		return generated.getParentCategoryIds().get(index % generated.getParentCategoryIds().size());
+	}
+}
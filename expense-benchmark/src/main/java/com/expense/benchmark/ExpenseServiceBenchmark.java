@@ -0,0 +1,107 @@
+package com.expense.benchmark;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import com.expense.entities.Expense;
+import com.expense.service.ExpenseService;
+
+/**
+ * Измерение запросов ExpenseService на сгенерированных наборах данных разного размера во встроенной базе данных H2.
+ * Набор данных создается один раз на форк, поэтому для 10 млн расходов форку выделяется увеличенная куча.
+ * @author Alexandr Trifonov
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ExpenseServiceBenchmark {
+	/**
+	 * Число расходов в наборе данных.
+	 */
+	@Param({"10000", "1000000", "10000000"})
+	int rows;
+
+	private AnnotationConfigWebApplicationContext context;
+	private ExpenseService expenseService;
+
+	private Map<String, String> barParams;
+	private Map<String, String> barCategoryParams;
+	private Map<String, String> certainParams;
+	private Map<String, String> certainPageParams;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		context = BenchmarkContext.start();
+		expenseService = context.getBean(ExpenseService.class);
+		ExpenseDataset dataset = ExpenseDataset.generate(context, rows);
+		String parentId = String.valueOf(dataset.parentId(0));
+
+		//итоги за год по родительским категориям
+		barParams = new HashMap<>();
+		barParams.put("dateFrom", "2019-01-01");
+		barParams.put("dateTo", "2019-12-31");
+
+		//итоги за год по подкатегориям одной категории
+		barCategoryParams = new HashMap<>(barParams);
+		barCategoryParams.put("categoryId", parentId);
+
+		//расходы одной категории за месяц: около 1/360 набора данных
+		certainParams = new HashMap<>();
+		certainParams.put("dates", "2019-03-01,2019-03-31");
+		certainParams.put("categoryId", parentId);
+		certainParams.put("orderBy", "localDate");
+
+		//первая страница расходов за год
+		certainPageParams = new HashMap<>();
+		certainPageParams.put("dates", "2019-01-01,2019-12-31");
+		certainPageParams.put("orderBy", "localDate");
+		certainPageParams.put("pageSize", "100");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Map<String, Double> dataForBar() {
+		return expenseService.getDataForBar(barParams);
+	}
+
+	@Benchmark
+	public Map<String, Double> dataForBarByCategory() {
+		return expenseService.getDataForBar(barCategoryParams);
+	}
+
+	@Benchmark
+	public List<Expense> certainExpense() {
+		return expenseService.getCertainExpense(certainParams);
+	}
+
+	@Benchmark
+	public List<Expense> certainExpenseFirstPage() {
+		return expenseService.getCertainExpensePage(certainPageParams).getContent();
+	}
+}
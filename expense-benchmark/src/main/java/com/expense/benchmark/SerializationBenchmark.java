@@ -0,0 +1,126 @@
+package com.expense.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.expense.entities.Category;
+import com.expense.entities.Expense;
+import com.expense.jsonview.View;
+import com.expense.serializer.LocalDateDeserializer;
+import com.expense.serializer.LocalDateSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Измерение сериализации: LocalDateSerializer/LocalDateDeserializer и полная сериализация списков расходов в json
+ * без представления и с представлениями View.Public и View.Internal.
+ * ObjectMapper создается так же, как для преобразователя сообщений Spring MVC (Jackson2ObjectMapperBuilder).
+ * @author Alexandr Trifonov
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+	/**
+	 * Число расходов в сериализуемом списке.
+	 */
+	@Param({"100", "10000"})
+	int size;
+
+	private List<Expense> expenses;
+	private ObjectWriter expensesWriter;
+	private ObjectWriter publicWriter;
+	private ObjectWriter internalWriter;
+
+	private LocalDate date;
+	private String dateJson;
+	private ObjectWriter dateWriter;
+	private ObjectReader dateReader;
+
+	@Setup
+	public void setUp() throws IOException, ReflectiveOperationException {
+		ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+		expensesWriter = mapper.writer();
+		publicWriter = mapper.writerWithView(View.Public.class);
+		internalWriter = mapper.writerWithView(View.Internal.class);
+
+		List<Category> categories = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			Category parent = CategoryBenchmark.category(i * 10, "Категория " + i, null);
+			categories.add(parent);
+			for (int j = 1; j < 5; j++) {
+				categories.add(CategoryBenchmark.category(i * 10 + j, "Подкатегория " + i + "." + j, parent));
+			}
+		}
+		Random random = new Random(42);
+		expenses = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			Expense expense = new Expense();
+			expense.setCategory(categories.get(random.nextInt(categories.size())));
+			expense.setCount(1 + random.nextInt(5));
+			expense.setUnitPrice(BigDecimal.valueOf(10 + random.nextInt(100000), 2));
+			expense.setTotalPrice();
+			expense.setLocalDate(ExpenseDataset.START_DATE.plusDays(random.nextInt(ExpenseDataset.DAYS)));
+			expense.setNote(i % 3 == 0 ? "магазин у дома" : null);
+			expenses.add(expense);
+		}
+
+		SimpleModule dateModule = new SimpleModule();
+		dateModule.addSerializer(LocalDate.class, new LocalDateSerializer());
+		dateModule.addDeserializer(LocalDate.class, new LocalDateDeserializer());
+		ObjectMapper dateMapper = new ObjectMapper().registerModule(dateModule);
+		date = LocalDate.of(2020, 5, 17);
+		dateWriter = dateMapper.writerFor(LocalDate.class);
+		dateReader = dateMapper.readerFor(LocalDate.class);
+		dateJson = dateWriter.writeValueAsString(date);
+	}
+
+	@Benchmark
+	public String serializeLocalDate() throws IOException {
+		return dateWriter.writeValueAsString(date);
+	}
+
+	@Benchmark
+	public LocalDate deserializeLocalDate() throws IOException {
+		return dateReader.readValue(dateJson);
+	}
+
+	@Benchmark
+	public byte[] serializeExpenses() throws IOException {
+		return expensesWriter.writeValueAsBytes(expenses);
+	}
+
+	@Benchmark
+	public byte[] serializeExpensesPublic() throws IOException {
+		return publicWriter.writeValueAsBytes(expenses);
+	}
+
+	@Benchmark
+	public byte[] serializeExpensesInternal() throws IOException {
+		return internalWriter.writeValueAsBytes(expenses);
+	}
+}
@@ -0,0 +1,118 @@
+package com.expense.datagen;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Запуск генератора из командной строки. Параметры задаются в виде --имя=значение:
+ * <pre>
+ * java -jar expense-datagen-1.0.1-cli.jar --url=jdbc:postgresql://localhost:5433/expense_db --user=expense --password=... \
+ *     --schema=expense --expenses=10000000 --parents=12 --children=6 --seed=7
+ * </pre>
+ * Таблицы должны существовать (schema.sql для PostgreSQL). Остальные параметры: --categoryPrefix, --startDate, --days,
+ * --skew, --medianPrice, --batchSize, --commitRows, --rebuildDerived=false.
+ * @author Alexandr Trifonov
+ *
+ */
+public final class DataGeneratorCli {
+
+	private DataGeneratorCli() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parse(args);
+		String url = options.remove("url");
+		if (url == null) {
+			System.err.println("Usage: --url=<jdbc url> [--user=..] [--password=..] [--schema=..] [--expenses=N] [--parents=N] [--children=N] "
+					+ "[--seed=N] [--categoryPrefix=..] [--startDate=yyyy-MM-dd] [--days=N] [--skew=X] [--medianPrice=X] "
+					+ "[--batchSize=N] [--commitRows=N] [--rebuildDerived=true|false]");
+			System.exit(2);
+		}
+		String user = options.remove("user");
+		String password = options.remove("password");
+		DatasetSpec spec = toSpec(options);
+		try (Connection connection = DriverManager.getConnection(url, user, password)) {
+			GeneratedDataset dataset = new DatasetGenerator(spec).generate(connection);
+			System.out.println(dataset);
+		}
+	}
+
+	/**
+	 * Разбор параметров вида --имя=значение.
+	 * @param args Параметры командной строки.
+	 * @return Map с именами параметров и их значениями.
+	 * @throws IllegalArgumentException если параметр не соответствует формату.
+	 */
+	public static Map<String, String> parse(String[] args) throws IllegalArgumentException {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Option must look like --name=value: " + arg);
+			}
+			options.put(arg.substring(2, eq), arg.substring(eq + 1));
+		}
+		return options;
+	}
+
+	/**
+	 * Построение параметров набора данных. Не указанные параметры остаются по умолчанию.
+	 * @param options Map с именами параметров и их значениями.
+	 * @return Параметры набора данных.
+	 * @throws IllegalArgumentException если параметр неизвестен или его значение недопустимо.
+	 */
+	public static DatasetSpec toSpec(Map<String, String> options) throws IllegalArgumentException {
+		DatasetSpec spec = new DatasetSpec();
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			String value = option.getValue();
+			switch (option.getKey()) {
+			case "schema":
+				spec.setSchema(value);
+				break;
+			case "expenses":
+				spec.setExpenses(Long.parseLong(value));
+				break;
+			case "parents":
+				spec.setParentCategories(Integer.parseInt(value));
+				break;
+			case "children":
+				spec.setChildCategories(Integer.parseInt(value));
+				break;
+			case "seed":
+				spec.setSeed(Long.parseLong(value));
+				break;
+			case "categoryPrefix":
+				spec.setCategoryPrefix(value);
+				break;
+			case "startDate":
+				spec.setStartDate(LocalDate.parse(value));
+				break;
+			case "days":
+				spec.setDays(Integer.parseInt(value));
+				break;
+			case "skew":
+				spec.setCategorySkew(Double.parseDouble(value));
+				break;
+			case "medianPrice":
+				spec.setMedianUnitPrice(Double.parseDouble(value));
+				break;
+			case "batchSize":
+				spec.setBatchSize(Integer.parseInt(value));
+				break;
+			case "commitRows":
+				spec.setCommitRows(Integer.parseInt(value));
+				break;
+			case "rebuildDerived":
+				spec.setRebuildDerived(Boolean.parseBoolean(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option --" + option.getKey());
+			}
+		}
+		spec.validate();
+		return spec;
+	}
+}
@@ -0,0 +1,210 @@
+package com.expense.datagen;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Генератор набора данных: дерево категорий и расходы, вставляемые пакетами JDBC напрямую в таблицы приложения
+ * (H2 со схемой, созданной Hibernate, или PostgreSQL со схемой из schema.sql).
+ * <p>
+ * Идентификаторы расходов резервируются в последовательности expense_id_seq одним диапазоном,
+ * поэтому генерация допустима и в базу данных с уже существующими расходами.
+ * Генерация не обращается к кэшам приложения: если приложение работает с той же базой данных,
+ * после генерации нужно сбросить его кэши категорий (или выполнять генерацию до запуска приложения).
+ * @author Alexandr Trifonov
+ *
+ */
+public class DatasetGenerator {
+	private static Logger logger = LoggerFactory.getLogger(DatasetGenerator.class);
+
+	private final DatasetSpec spec;
+
+	/**
+	 * @param spec Параметры набора данных.
+	 * @throws IllegalArgumentException если параметры недопустимы.
+	 */
+	public DatasetGenerator(DatasetSpec spec) throws IllegalArgumentException {
+		spec.validate();
+		this.spec = spec;
+	}
+
+	/**
+	 * Генерация набора данных. Соединение переводится в режим ручной фиксации транзакций и возвращается в исходный режим.
+	 * @param connection Соединение с базой данных.
+	 * @return Результат генерации.
+	 * @throws SQLException при ошибке базы данных.
+	 */
+	public GeneratedDataset generate(Connection connection) throws SQLException {
+		long start = System.currentTimeMillis();
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			List<Integer> parentIds = new ArrayList<>();
+			List<Integer> categoryIds = new ArrayList<>();
+			insertCategories(connection, parentIds, categoryIds);
+			connection.commit();
+
+			long firstId = reserveExpenseIds(connection, spec.getExpenses());
+			connection.commit();
+			insertExpenses(connection, new ExpenseDistributions(spec, categoryIds), firstId);
+
+			if (spec.isRebuildDerived()) {
+				rebuildDerived(connection);
+				connection.commit();
+			}
+			GeneratedDataset dataset = new GeneratedDataset(parentIds, categoryIds, firstId, spec.getExpenses(),
+					System.currentTimeMillis() - start);
+			logger.info("Dataset generated: {}", dataset);
+			return dataset;
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Вставка дерева категорий. Расходы записываются и на родительские категории, как расходы без подкатегории,
+	 * поэтому в список категорий расходов входят все созданные категории.
+	 * @param connection Соединение с базой данных.
+	 * @param parentIds Список для идентификаторов родительских категорий.
+	 * @param categoryIds Список для идентификаторов всех категорий.
+	 * @throws SQLException при ошибке базы данных.
+	 */
+	private void insertCategories(Connection connection, List<Integer> parentIds, List<Integer> categoryIds) throws SQLException {
+		String sql = "insert into " + table("category") + " (name, parent_id) values (?, ?)";
+		try (PreparedStatement statement = connection.prepareStatement(sql, new String[] {"id"})) {
+			for (int i = 0; i < spec.getParentCategories(); i++) {
+				int parentId = insertCategory(statement, spec.getCategoryPrefix() + " " + i, null);
+				parentIds.add(parentId);
+				categoryIds.add(parentId);
+				for (int j = 0; j < spec.getChildCategories(); j++) {
+					categoryIds.add(insertCategory(statement, spec.getCategoryPrefix() + " " + i + "." + j, parentId));
+				}
+			}
+		}
+	}
+
+	private int insertCategory(PreparedStatement statement, String name, Integer parentId) throws SQLException {
+		statement.setString(1, name);
+		if (parentId == null) {
+			statement.setNull(2, Types.INTEGER);
+		} else {
+			statement.setInt(2, parentId);
+		}
+		statement.executeUpdate();
+		try (ResultSet keys = statement.getGeneratedKeys()) {
+			keys.next();
+			return keys.getInt(1);
+		}
+	}
+
+	/**
+	 * Резервирование диапазона идентификаторов расходов в последовательности expense_id_seq.
+	 * Приложение выделяет идентификаторы блоками (оптимизатор pooled): значение последовательности - верхняя граница блока.
+	 * Последовательность сдвигается за конец диапазона на шаг последовательности,
+	 * чтобы следующий блок приложения не пересекался со сгенерированными расходами.
+	 * @param connection Соединение с базой данных.
+	 * @param rows Число расходов.
+	 * @return Первый идентификатор диапазона.
+	 * @throws SQLException при ошибке базы данных.
+	 */
+	private long reserveExpenseIds(Connection connection, long rows) throws SQLException {
+		String sequence = table("expense_id_seq");
+		boolean postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+		try (Statement statement = connection.createStatement()) {
+			long base = Math.max(queryLong(statement, postgres ? "select nextval('" + sequence + "')" : "select next value for " + sequence),
+					queryLong(statement, "select coalesce(max(id), 0) from " + table("expense")));
+			long last = base + rows;
+			if (postgres) {
+				//после setval следующее значение nextval равно last + шаг последовательности
+				statement.execute("select setval('" + sequence + "', " + last + ")");
+			} else {
+				long increment = queryLong(statement, "select increment from information_schema.sequences where upper(sequence_name) = 'EXPENSE_ID_SEQ'"
+						+ (spec.getSchema() == null ? "" : " and upper(sequence_schema) = '" + spec.getSchema().toUpperCase() + "'"));
+				statement.execute("alter sequence " + sequence + " restart with " + (last + increment));
+			}
+			return base + 1;
+		}
+	}
+
+	/**
+	 * Вставка расходов пакетами.
+	 * @param connection Соединение с базой данных.
+	 * @param distributions Распределения значений полей.
+	 * @param firstId Первый идентификатор расхода.
+	 * @throws SQLException при ошибке базы данных.
+	 */
+	private void insertExpenses(Connection connection, ExpenseDistributions distributions, long firstId) throws SQLException {
+		String sql = "insert into " + table("expense") + " (id, category_id, count, unit_price, total_price, local_date, note) "
+				+ "values (?, ?, ?, ?, ?, ?, ?)";
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (long row = 1; row <= spec.getExpenses(); row++) {
+				int count = distributions.nextCount();
+				BigDecimal unitPrice = distributions.nextUnitPrice();
+				statement.setLong(1, firstId + row - 1);
+				statement.setInt(2, distributions.nextCategoryId());
+				statement.setInt(3, count);
+				statement.setBigDecimal(4, unitPrice);
+				statement.setBigDecimal(5, unitPrice.multiply(BigDecimal.valueOf(count)));
+				statement.setDate(6, Date.valueOf(distributions.nextDate()));
+				statement.setString(7, distributions.nextNote());
+				statement.addBatch();
+				if (row % spec.getBatchSize() == 0) {
+					statement.executeBatch();
+				}
+				if (row % spec.getCommitRows() == 0) {
+					connection.commit();
+					logger.debug("Expenses inserted: {} of {}", row, spec.getExpenses());
+				}
+			}
+			statement.executeBatch();
+			connection.commit();
+		}
+	}
+
+	/**
+	 * Пересчет дневных итогов и счетчиков расходов по категориям теми же запросами, что и в приложении
+	 * (POST /api/expense-rollup/rebuild и POST /api/category-usage/rebuild).
+	 * @param connection Соединение с базой данных.
+	 * @throws SQLException при ошибке базы данных.
+	 */
+	private void rebuildDerived(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("delete from " + table("expense_daily_rollup"));
+			statement.executeUpdate("insert into " + table("expense_daily_rollup") + " (local_date, category_id, total_price, expense_count) "
+					+ "select local_date, category_id, sum(total_price), count(*) from " + table("expense") + " group by local_date, category_id");
+			statement.executeUpdate("delete from " + table("category_usage"));
+			statement.executeUpdate("insert into " + table("category_usage") + " (category_id, expense_count) "
+					+ "select category_id, count(*) from " + table("expense") + " group by category_id");
+		}
+	}
+
+	private static long queryLong(Statement statement, String sql) throws SQLException {
+		try (ResultSet resultSet = statement.executeQuery(sql)) {
+			resultSet.next();
+			return resultSet.getLong(1);
+		}
+	}
+
+	/**
+	 * Имя таблицы или последовательности с учетом схемы.
+	 * @param name Имя без схемы.
+	 * @return Полное имя.
+	 */
+	private String table(String name) {
+		return spec.getSchema() == null ? name : spec.getSchema() + "." + name;
+	}
+}
@@ -0,0 +1,211 @@
+package com.expense.datagen;
+
+import java.time.LocalDate;
+
+/**
+ * Параметры генерируемого набора данных. Значения по умолчанию дают набор, близкий к данным одного домохозяйства
+ * за три года, умноженным до миллиона расходов.
+ * @author Alexandr Trifonov
+ *
+ */
+public class DatasetSpec {
+	/**
+	 * Начальное значение генератора случайных чисел. Одинаковые параметры дают одинаковый набор данных.
+	 */
+	private long seed = 42;
+
+	/**
+	 * Число родительских категорий.
+	 */
+	private int parentCategories = 10;
+
+	/**
+	 * Число подкатегорий у каждой родительской категории.
+	 */
+	private int childCategories = 4;
+
+	/**
+	 * Префикс имен категорий. Имена категорий уникальны, поэтому для повторной генерации в ту же базу данных префикс меняется.
+	 */
+	private String categoryPrefix = "gen";
+
+	/**
+	 * Число расходов.
+	 */
+	private long expenses = 1000000;
+
+	/**
+	 * Первая дата периода расходов.
+	 */
+	private LocalDate startDate = LocalDate.of(2018, 1, 1);
+
+	/**
+	 * Число дней периода расходов.
+	 */
+	private int days = 1096;
+
+	/**
+	 * Показатель распределения Ципфа для выбора категории расхода: 0 - равномерное распределение,
+	 * при 1.2 на три самые частые категории из пятидесяти приходится около половины расходов.
+	 */
+	private double categorySkew = 1.2;
+
+	/**
+	 * Медиана цены единицы расхода. Цены распределены логнормально.
+	 */
+	private double medianUnitPrice = 300;
+
+	/**
+	 * Число строк в пакете JDBC.
+	 */
+	private int batchSize = 1000;
+
+	/**
+	 * Число строк, после вставки которых фиксируется транзакция.
+	 */
+	private int commitRows = 100000;
+
+	/**
+	 * Схема таблиц, например expense для PostgreSQL; null - схема соединения по умолчанию.
+	 */
+	private String schema;
+
+	/**
+	 * Пересчитывать ли дневные итоги и счетчики расходов по категориям после вставки расходов.
+	 * Если генератор запускается внутри работающего приложения, пересчет выполняют сервисы приложения.
+	 */
+	private boolean rebuildDerived = true;
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public int getParentCategories() {
+		return parentCategories;
+	}
+
+	public void setParentCategories(int parentCategories) {
+		this.parentCategories = parentCategories;
+	}
+
+	public int getChildCategories() {
+		return childCategories;
+	}
+
+	public void setChildCategories(int childCategories) {
+		this.childCategories = childCategories;
+	}
+
+	public String getCategoryPrefix() {
+		return categoryPrefix;
+	}
+
+	public void setCategoryPrefix(String categoryPrefix) {
+		this.categoryPrefix = categoryPrefix;
+	}
+
+	public long getExpenses() {
+		return expenses;
+	}
+
+	public void setExpenses(long expenses) {
+		this.expenses = expenses;
+	}
+
+	public LocalDate getStartDate() {
+		return startDate;
+	}
+
+	public void setStartDate(LocalDate startDate) {
+		this.startDate = startDate;
+	}
+
+	public int getDays() {
+		return days;
+	}
+
+	public void setDays(int days) {
+		this.days = days;
+	}
+
+	public double getCategorySkew() {
+		return categorySkew;
+	}
+
+	public void setCategorySkew(double categorySkew) {
+		this.categorySkew = categorySkew;
+	}
+
+	public double getMedianUnitPrice() {
+		return medianUnitPrice;
+	}
+
+	public void setMedianUnitPrice(double medianUnitPrice) {
+		this.medianUnitPrice = medianUnitPrice;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getCommitRows() {
+		return commitRows;
+	}
+
+	public void setCommitRows(int commitRows) {
+		this.commitRows = commitRows;
+	}
+
+	public String getSchema() {
+		return schema;
+	}
+
+	public void setSchema(String schema) {
+		this.schema = schema;
+	}
+
+	public boolean isRebuildDerived() {
+		return rebuildDerived;
+	}
+
+	public void setRebuildDerived(boolean rebuildDerived) {
+		this.rebuildDerived = rebuildDerived;
+	}
+
+	/**
+	 * Проверка параметров.
+	 * @throws IllegalArgumentException если параметр вне допустимого диапазона.
+	 */
+	public void validate() throws IllegalArgumentException {
+		if (parentCategories < 1 || childCategories < 0) {
+			throw new IllegalArgumentException("At least one parent category is required, child categories must not be negative");
+		}
+		if (expenses < 0) {
+			throw new IllegalArgumentException("Expense count must not be negative");
+		}
+		if (days < 1) {
+			throw new IllegalArgumentException("Period must contain at least one day");
+		}
+		if (categorySkew < 0 || medianUnitPrice <= 0) {
+			throw new IllegalArgumentException("Category skew must not be negative, median unit price must be positive");
+		}
+		if (batchSize < 1 || commitRows < batchSize) {
+			throw new IllegalArgumentException("Batch size must be positive and not greater than commit rows");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DatasetSpec [seed=" + seed + ", parentCategories=" + parentCategories + ", childCategories=" + childCategories
+				+ ", expenses=" + expenses + ", startDate=" + startDate + ", days=" + days + ", categorySkew=" + categorySkew
+				+ ", medianUnitPrice=" + medianUnitPrice + ", schema=" + schema + "]";
+	}
+}
@@ -0,0 +1,167 @@
+package com.expense.datagen;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Распределения значений полей генерируемых расходов. Все значения берутся из одного генератора случайных чисел
+ * в фиксированном порядке, поэтому набор данных полностью определяется параметрами {@link DatasetSpec}.
+ * @author Alexandr Trifonov
+ *
+ */
+class ExpenseDistributions {
+	/**
+	 * Вес выходного дня относительно буднего: по выходным расходов больше.
+	 */
+	private static final double WEEKEND_WEIGHT = 1.6;
+
+	/**
+	 * Вес первых трех дней месяца: крупные ежемесячные платежи.
+	 */
+	private static final double MONTH_START_WEIGHT = 1.3;
+
+	/**
+	 * Стандартное отклонение логарифма цены.
+	 */
+	private static final double PRICE_SIGMA = 1.1;
+
+	/**
+	 * Доля расходов без примечания.
+	 */
+	private static final double NO_NOTE_SHARE = 0.6;
+
+	private static final String[] NOTES = {"магазин у дома", "рынок", "онлайн заказ", "подарок", "скидка", "по акции",
+			"в командировке", "на дачу", "для детей", "оплата картой"};
+
+	private final Random random;
+
+	/**
+	 * Идентификаторы категорий расходов в порядке убывания частоты.
+	 */
+	private final int[] categoryIds;
+
+	/**
+	 * Функция распределения Ципфа по категориям.
+	 */
+	private final double[] categoryCdf;
+
+	/**
+	 * Функция распределения по дням периода.
+	 */
+	private final double[] dayCdf;
+
+	private final LocalDate startDate;
+	private final double logMedianPrice;
+
+	/**
+	 * @param spec Параметры набора данных.
+	 * @param leafCategoryIds Идентификаторы категорий, на которые записываются расходы.
+	 */
+	ExpenseDistributions(DatasetSpec spec, List<Integer> leafCategoryIds) {
+		this.random = new Random(spec.getSeed());
+		//частые категории выбираются случайно, а не по порядку создания
+		List<Integer> shuffled = new ArrayList<>(leafCategoryIds);
+		Collections.shuffle(shuffled, random);
+		this.categoryIds = shuffled.stream().mapToInt(Integer::intValue).toArray();
+		double[] categoryWeights = new double[categoryIds.length];
+		for (int i = 0; i < categoryWeights.length; i++) {
+			categoryWeights[i] = Math.pow(i + 1, -spec.getCategorySkew());
+		}
+		this.categoryCdf = cdf(categoryWeights);
+
+		this.startDate = spec.getStartDate();
+		double[] dayWeights = new double[spec.getDays()];
+		for (int i = 0; i < dayWeights.length; i++) {
+			LocalDate date = startDate.plusDays(i);
+			double weight = 1;
+			if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				weight *= WEEKEND_WEIGHT;
+			}
+			if (date.getDayOfMonth() <= 3) {
+				weight *= MONTH_START_WEIGHT;
+			}
+			dayWeights[i] = weight;
+		}
+		this.dayCdf = cdf(dayWeights);
+		this.logMedianPrice = Math.log(spec.getMedianUnitPrice());
+	}
+
+	/**
+	 * @return Идентификатор категории расхода.
+	 */
+	int nextCategoryId() {
+		return categoryIds[sample(categoryCdf)];
+	}
+
+	/**
+	 * @return Дата расхода.
+	 */
+	LocalDate nextDate() {
+		return startDate.plusDays(sample(dayCdf));
+	}
+
+	/**
+	 * @return Количество единиц расхода: чаще всего одна единица.
+	 */
+	int nextCount() {
+		double p = random.nextDouble();
+		if (p < 0.7) {
+			return 1;
+		}
+		return p < 0.9 ? 2 : 3 + random.nextInt(8);
+	}
+
+	/**
+	 * @return Цена единицы расхода, не меньше 1.00.
+	 */
+	BigDecimal nextUnitPrice() {
+		double price = Math.exp(logMedianPrice + PRICE_SIGMA * random.nextGaussian());
+		return BigDecimal.valueOf(Math.max(1, price)).setScale(2, RoundingMode.HALF_UP);
+	}
+
+	/**
+	 * @return Примечание к расходу или null.
+	 */
+	String nextNote() {
+		if (random.nextDouble() < NO_NOTE_SHARE) {
+			return null;
+		}
+		return NOTES[random.nextInt(NOTES.length)];
+	}
+
+	/**
+	 * Выбор индекса по функции распределения.
+	 * @param cdf Функция распределения.
+	 * @return Индекс.
+	 */
+	private int sample(double[] cdf) {
+		int index = Arrays.binarySearch(cdf, random.nextDouble());
+		//при отсутствии точного совпадения binarySearch возвращает -(точка вставки) - 1
+		return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+	}
+
+	/**
+	 * Построение функции распределения по весам.
+	 * @param weights Веса.
+	 * @return Нормированная накопленная сумма весов.
+	 */
+	private static double[] cdf(double[] weights) {
+		double[] cdf = new double[weights.length];
+		double sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			sum += weights[i];
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < cdf.length; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+}
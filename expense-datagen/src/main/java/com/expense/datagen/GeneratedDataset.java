@@ -0,0 +1,70 @@
+package com.expense.datagen;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат генерации набора данных.
+ * @author Alexandr Trifonov
+ *
+ */
+public class GeneratedDataset {
+	/**
+	 * Идентификаторы родительских категорий в порядке создания.
+	 */
+	private final List<Integer> parentCategoryIds;
+
+	/**
+	 * Идентификаторы всех созданных категорий в порядке создания.
+	 */
+	private final List<Integer> categoryIds;
+
+	/**
+	 * Идентификатор первого созданного расхода.
+	 */
+	private final long firstExpenseId;
+
+	/**
+	 * Число созданных расходов.
+	 */
+	private final long expenses;
+
+	/**
+	 * Время генерации, мс.
+	 */
+	private final long elapsedMillis;
+
+	GeneratedDataset(List<Integer> parentCategoryIds, List<Integer> categoryIds, long firstExpenseId, long expenses, long elapsedMillis) {
+		this.parentCategoryIds = Collections.unmodifiableList(parentCategoryIds);
+		this.categoryIds = Collections.unmodifiableList(categoryIds);
+		this.firstExpenseId = firstExpenseId;
+		this.expenses = expenses;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public List<Integer> getParentCategoryIds() {
+		return parentCategoryIds;
+	}
+
+	public List<Integer> getCategoryIds() {
+		return categoryIds;
+	}
+
+	public long getFirstExpenseId() {
+		return firstExpenseId;
+	}
+
+	public long getExpenses() {
+		return expenses;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "GeneratedDataset [categories=" + categoryIds.size() + ", parentCategories=" + parentCategoryIds.size()
+				+ ", firstExpenseId=" + firstExpenseId + ", expenses=" + expenses + ", elapsedMillis=" + elapsedMillis + "]";
+	}
+}
@@ -0,0 +1,145 @@
+package com.expense.loadtest;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.servlets.DefaultServlet;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.filter.CharacterEncodingFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import com.expense.config.DataTestConfig;
+import com.expense.config.ServiceTestConfig;
+import com.expense.datagen.DatasetGenerator;
+import com.expense.datagen.DatasetSpec;
+import com.expense.datagen.GeneratedDataset;
+import com.expense.service.CategoryTreeCache;
+import com.expense.service.CategoryUsageService;
+import com.expense.service.ExpenseRollupService;
+
+/**
+ * Приложение, запущенное во встроенном Tomcat с профилем test (встроенная база данных H2) и заполненное сгенерированными данными.
+ * Конфигурационные классы те же, что в интеграционных тестах; DispatcherServlet отображается на "/", как в WebInitializer.
+ * @author Alexandr Trifonov
+ *
+ */
+class EmbeddedBackend implements AutoCloseable {
+	private static Logger logger = LoggerFactory.getLogger(EmbeddedBackend.class);
+
+	private final Tomcat tomcat;
+	private final AnnotationConfigWebApplicationContext context;
+	private final GeneratedDataset dataset;
+
+	private EmbeddedBackend(Tomcat tomcat, AnnotationConfigWebApplicationContext context, GeneratedDataset dataset) {
+		this.tomcat = tomcat;
+		this.context = context;
+		this.dataset = dataset;
+	}
+
+	/**
+	 * Запуск приложения и генерация данных.
+	 * @param port Порт HTTP, 0 - любой свободный порт.
+	 * @param spec Параметры генерируемого набора данных.
+	 * @return Запущенное приложение.
+	 * @throws Exception при ошибке запуска или генерации данных.
+	 */
+	static EmbeddedBackend start(int port, DatasetSpec spec) throws Exception {
+		File baseDir = Files.createTempDirectory("expense-loadtest").toFile();
+		baseDir.deleteOnExit();
+		Tomcat tomcat = new Tomcat();
+		tomcat.setBaseDir(baseDir.getAbsolutePath());
+		tomcat.setPort(port);
+
+		AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+		context.getEnvironment().setActiveProfiles("test");
+		context.register(DataTestConfig.class, ServiceTestConfig.class);
+
+		Context servletContext = tomcat.addContext("", baseDir.getAbsolutePath());
+		//сервлет default нужен для configureDefaultServletHandling в WebConfig
+		Tomcat.addServlet(servletContext, "default", new DefaultServlet());
+		//контекст Spring обновляется при инициализации DispatcherServlet
+		Tomcat.addServlet(servletContext, "dispatcher", new DispatcherServlet(context)).setLoadOnStartup(1);
+		servletContext.addServletMappingDecoded("/", "dispatcher");
+		addEncodingFilter(servletContext);
+
+		tomcat.getConnector();
+		try {
+			tomcat.start();
+		} catch (LifecycleException e) {
+			tomcat.destroy();
+			throw e;
+		}
+		GeneratedDataset dataset = seed(context, spec);
+		EmbeddedBackend backend = new EmbeddedBackend(tomcat, context, dataset);
+		logger.info("Embedded backend started at {}", backend.getBaseUrl());
+		return backend;
+	}
+
+	/**
+	 * Фильтр кодировки, как в WebInitializer.
+	 * @param servletContext Контекст сервлетов.
+	 */
+	private static void addEncodingFilter(Context servletContext) {
+		CharacterEncodingFilter filter = new CharacterEncodingFilter("UTF-8", true);
+		FilterDef filterDef = new FilterDef();
+		filterDef.setFilterName("encoding");
+		filterDef.setFilter(filter);
+		servletContext.addFilterDef(filterDef);
+		FilterMap filterMap = new FilterMap();
+		filterMap.setFilterName("encoding");
+		filterMap.addURLPatternDecoded("/*");
+		servletContext.addFilterMap(filterMap);
+	}
+
+	/**
+	 * Генерация данных в обход сервисов, после чего кэш дерева категорий сбрасывается,
+	 * а дневные итоги и счетчики расходов по категориям перестраиваются сервисами приложения.
+	 * @param context Контекст приложения.
+	 * @param spec Параметры набора данных.
+	 * @return Результат генерации.
+	 * @throws Exception при ошибке генерации.
+	 */
+	private static GeneratedDataset seed(AnnotationConfigWebApplicationContext context, DatasetSpec spec) throws Exception {
+		spec.setRebuildDerived(false);
+		GeneratedDataset dataset;
+		try (Connection connection = context.getBean(DataSource.class).getConnection()) {
+			dataset = new DatasetGenerator(spec).generate(connection);
+		}
+		context.getBean(CategoryTreeCache.class).invalidate();
+		context.getBean(ExpenseRollupService.class).rebuild();
+		context.getBean(CategoryUsageService.class).rebuild();
+		return dataset;
+	}
+
+	String getBaseUrl() {
+		return "http://localhost:" + tomcat.getConnector().getLocalPort();
+	}
+
+	GeneratedDataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * Остановка Tomcat и закрытие контекста приложения.
+	 * @throws LifecycleException при ошибке остановки Tomcat.
+	 */
+	@Override
+	public void close() throws LifecycleException {
+		try {
+			tomcat.stop();
+			tomcat.destroy();
+		} finally {
+			context.close();
+		}
+	}
+}
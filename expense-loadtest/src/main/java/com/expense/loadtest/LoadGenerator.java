@@ -0,0 +1,197 @@
+package com.expense.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Генератор нагрузки с постоянной интенсивностью (открытая модель).
+ * <p>
+ * Для каждого запроса заранее вычисляется плановое время отправки: i-й запрос отправляется в момент start + i / rate.
+ * Задержка измеряется от планового времени, а не от фактической отправки, поэтому если приложение или рабочие потоки
+ * не успевают, ожидание запроса в очереди входит в задержку (поправка на coordinated omission),
+ * и хвост распределения не занижается паузами самого генератора.
+ * <p>
+ * Запросы не закрепляются за рабочими потоками: освободившийся поток берет следующий по порядку номер запроса из общего счетчика,
+ * поэтому медленный ответ задерживает только свой поток, а не запросы, которые были бы закреплены за ним.
+ * @author Alexandr Trifonov
+ *
+ */
+class LoadGenerator {
+	private static Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+	/**
+	 * Наибольшая регистрируемая задержка, мкс. Большие значения регистрируются как наибольшая.
+	 */
+	private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+	private static final int TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+	private final Workload workload;
+	private final LoadMix mix;
+	private final int rate;
+	private final int workers;
+	private final long seed;
+
+	/**
+	 * @param workload Данные нагрузки.
+	 * @param mix Состав нагрузки.
+	 * @param rate Интенсивность, запросов в секунду.
+	 * @param workers Число рабочих потоков (наибольшее число одновременных запросов).
+	 * @param seed Начальное значение генератора случайных чисел.
+	 */
+	LoadGenerator(Workload workload, LoadMix mix, int rate, int workers, long seed) {
+		if (rate < 1 || workers < 1) {
+			throw new IllegalArgumentException("Rate and workers must be positive");
+		}
+		this.workload = workload;
+		this.mix = mix;
+		this.rate = rate;
+		this.workers = workers;
+		this.seed = seed;
+	}
+
+	/**
+	 * Выполнение нагрузки. Результаты запросов, запланированных в период прогрева, не учитываются.
+	 * @param warmupSeconds Продолжительность прогрева, с.
+	 * @param durationSeconds Продолжительность измерения, с.
+	 * @return Отчет о нагрузке.
+	 * @throws Exception при ошибке рабочего потока.
+	 */
+	LoadReport run(int warmupSeconds, int durationSeconds) throws Exception {
+		//соединения HttpURLConnection переиспользуются, число хранимых соединений должно покрывать все рабочие потоки
+		System.setProperty("http.maxConnections", String.valueOf(workers));
+		long warmupRequests = (long) rate * warmupSeconds;
+		long totalRequests = warmupRequests + (long) rate * durationSeconds;
+		double intervalNanos = (double) TimeUnit.SECONDS.toNanos(1) / rate;
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long measureStart = start + Math.round(warmupRequests * intervalNanos);
+		logger.info("Load: rate = {}/s, warmup = {}s, duration = {}s, workers = {}, mix = {}", rate, warmupSeconds, durationSeconds, workers, mix);
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		List<Future<Map<Operation, OperationStats>>> results = new ArrayList<>();
+		AtomicLong next = new AtomicLong();
+		try {
+			for (int k = 0; k < workers; k++) {
+				results.add(executor.submit(() -> work(next, totalRequests, warmupRequests, start, intervalNanos)));
+			}
+			Map<Operation, OperationStats> merged = new EnumMap<>(Operation.class);
+			for (Future<Map<Operation, OperationStats>> result : results) {
+				result.get().forEach((operation, stats) -> merged.computeIfAbsent(operation, o -> new OperationStats()).add(stats));
+			}
+			long elapsedNanos = System.nanoTime() - measureStart;
+			return new LoadReport(merged, rate, workers, mix.toString(), elapsedNanos);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Работа одного рабочего потока: пока есть запросы, поток берет номер следующего запроса из общего счетчика.
+	 * @param next Номер следующего неотправленного запроса.
+	 */
+	private Map<Operation, OperationStats> work(AtomicLong next, long totalRequests, long warmupRequests, long start, double intervalNanos) {
+		Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+		byte[] buffer = new byte[8192];
+		long i;
+		while ((i = next.getAndIncrement()) < totalRequests && !Thread.currentThread().isInterrupted()) {
+			long intended = start + Math.round(i * intervalNanos);
+			long wait;
+			while ((wait = intended - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			//параметры запроса зависят только от его номера, поэтому набор запросов не зависит от числа потоков.
+			//начальное значение перемешивается SplittableRandom: у Random с соседними начальными значениями первые числа близки
+			Random random = new Random(new SplittableRandom(seed * 31 + i).nextLong());
+			Operation operation = mix.choose(random);
+			boolean ok = send(operation.request(workload, random), buffer);
+			long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+			if (i >= warmupRequests) {
+				stats.computeIfAbsent(operation, o -> new OperationStats()).record(latencyMicros, ok);
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Отправка запроса и чтение ответа целиком (иначе соединение не возвращается для повторного использования).
+	 * @return true, если получен ответ с кодом меньше 400.
+	 */
+	private boolean send(Operation.Request request, byte[] buffer) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(workload.getBaseUrl() + request.getPath()).openConnection();
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			connection.setRequestMethod(request.getMethod());
+			connection.setRequestProperty("Accept", "application/json");
+			if (request.getBody() != null) {
+				byte[] body = request.getBody().getBytes(StandardCharsets.UTF_8);
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				connection.setFixedLengthStreamingMode(body.length);
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(body);
+				}
+			}
+			int status = connection.getResponseCode();
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					while (in.read(buffer) >= 0) {
+						//ответ читается до конца
+					}
+				}
+			}
+			return status < 400;
+		} catch (IOException e) {
+			logger.debug("Request {} {} failed: {}", request.getMethod(), request.getPath(), e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Статистика одной операции: гистограмма задержек (мкс) и число ошибок.
+	 */
+	static class OperationStats {
+		private final Histogram histogram = new Histogram(MAX_LATENCY_MICROS, 3);
+		private long errors;
+
+		void record(long latencyMicros, boolean ok) {
+			histogram.recordValue(Math.min(latencyMicros, MAX_LATENCY_MICROS));
+			if (!ok) {
+				errors++;
+			}
+		}
+
+		void add(OperationStats other) {
+			histogram.add(other.histogram);
+			errors += other.errors;
+		}
+
+		Histogram getHistogram() {
+			return histogram;
+		}
+
+		long getErrors() {
+			return errors;
+		}
+	}
+}
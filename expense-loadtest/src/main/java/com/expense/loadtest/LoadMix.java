@@ -0,0 +1,82 @@
+package com.expense.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Состав нагрузки: доли операций. Задается строкой вида certain:40,bar:20,category:15,freeCategory:10,post:10,put:5.
+ * @author Alexandr Trifonov
+ *
+ */
+class LoadMix {
+	/**
+	 * Состав по умолчанию: преимущественно чтение, как при работе пользователей с интерфейсом.
+	 */
+	static final String DEFAULT = "certain:40,bar:20,category:15,freeCategory:10,post:10,put:5";
+
+	private final Operation[] operations;
+	private final double[] cdf;
+	private final Map<Operation, Integer> weights;
+
+	private LoadMix(Map<Operation, Integer> weights) {
+		this.weights = weights;
+		this.operations = weights.keySet().toArray(new Operation[0]);
+		this.cdf = new double[operations.length];
+		double total = weights.values().stream().mapToInt(Integer::intValue).sum();
+		double sum = 0;
+		for (int i = 0; i < operations.length; i++) {
+			sum += weights.get(operations[i]);
+			cdf[i] = sum / total;
+		}
+	}
+
+	/**
+	 * Разбор состава нагрузки.
+	 * @param mix Строка вида операция:вес,операция:вес.
+	 * @return Состав нагрузки.
+	 * @throws IllegalArgumentException если строка не соответствует формату или все веса нулевые.
+	 */
+	static LoadMix parse(String mix) throws IllegalArgumentException {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String item : mix.split(",")) {
+			String[] parts = item.trim().split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Mix item must look like operation:weight: " + item);
+			}
+			int weight = Integer.parseInt(parts[1]);
+			if (weight < 0) {
+				throw new IllegalArgumentException("Weight must not be negative: " + item);
+			}
+			if (weight > 0) {
+				weights.merge(Operation.of(parts[0]), weight, Integer::sum);
+			}
+		}
+		if (weights.isEmpty()) {
+			throw new IllegalArgumentException("Mix must contain at least one operation with positive weight");
+		}
+		return new LoadMix(weights);
+	}
+
+	/**
+	 * Выбор операции в соответствии с долями.
+	 * @param random Генератор случайных чисел.
+	 * @return Операция.
+	 */
+	Operation choose(Random random) {
+		double p = random.nextDouble();
+		for (int i = 0; i < cdf.length - 1; i++) {
+			if (p < cdf[i]) {
+				return operations[i];
+			}
+		}
+		return operations[operations.length - 1];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		weights.forEach((operation, weight) -> sb.append(sb.length() == 0 ? "" : ",").append(operation.getKey()).append(':').append(weight));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,103 @@
+package com.expense.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import com.expense.loadtest.LoadGenerator.OperationStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Отчет о нагрузке: пропускная способность и процентили задержки (p50, p95, p99, p99.9, максимум) по операциям и в целом.
+ * Задержки в миллисекундах, с поправкой на coordinated omission (см. {@link LoadGenerator}).
+ * @author Alexandr Trifonov
+ *
+ */
+class LoadReport {
+	private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+	private static final String[] PERCENTILE_NAMES = {"p50", "p95", "p99", "p999"};
+
+	private final Map<Operation, OperationStats> stats;
+	private final OperationStats total = new OperationStats();
+	private final int rate;
+	private final int workers;
+	private final String mix;
+	private final double elapsedSeconds;
+
+	LoadReport(Map<Operation, OperationStats> stats, int rate, int workers, String mix, long elapsedNanos) {
+		this.stats = stats;
+		stats.values().forEach(total::add);
+		this.rate = rate;
+		this.workers = workers;
+		this.mix = mix;
+		this.elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**
+	 * Вывод отчета в виде таблицы.
+	 * @param out Поток вывода.
+	 */
+	void print(PrintStream out) {
+		out.printf("Target rate %d/s, workers %d, mix %s, measured %.1f s%n", rate, workers, mix, elapsedSeconds);
+		out.printf("%-14s %10s %8s %10s %9s %9s %9s %9s %9s%n", "operation", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "p999 ms", "max ms");
+		stats.forEach((operation, operationStats) -> printRow(out, operation.getKey(), operationStats));
+		printRow(out, "total", total);
+	}
+
+	private void printRow(PrintStream out, String name, OperationStats operationStats) {
+		Histogram histogram = operationStats.getHistogram();
+		out.printf("%-14s %10d %8d %10.1f", name, histogram.getTotalCount(), operationStats.getErrors(), histogram.getTotalCount() / elapsedSeconds);
+		for (double percentile : PERCENTILES) {
+			out.printf(" %9.2f", millis(histogram.getValueAtPercentile(percentile)));
+		}
+		out.printf(" %9.2f%n", millis(histogram.getMaxValue()));
+	}
+
+	/**
+	 * Запись отчета в json файл для сравнения запусков.
+	 * @param file Файл отчета.
+	 * @throws IOException при ошибке записи.
+	 */
+	void write(File file) throws IOException {
+		ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+		ObjectNode root = mapper.createObjectNode();
+		root.put("targetRate", rate);
+		root.put("workers", workers);
+		root.put("mix", mix);
+		root.put("measuredSeconds", elapsedSeconds);
+		root.set("total", toJson(mapper, total));
+		ObjectNode operations = root.putObject("operations");
+		stats.forEach((operation, operationStats) -> operations.set(operation.getKey(), toJson(mapper, operationStats)));
+		mapper.writeValue(file, root);
+	}
+
+	private ObjectNode toJson(ObjectMapper mapper, OperationStats operationStats) {
+		Histogram histogram = operationStats.getHistogram();
+		ObjectNode node = mapper.createObjectNode();
+		node.put("requests", histogram.getTotalCount());
+		node.put("errors", operationStats.getErrors());
+		node.put("throughput", histogram.getTotalCount() / elapsedSeconds);
+		for (int i = 0; i < PERCENTILES.length; i++) {
+			node.put(PERCENTILE_NAMES[i] + "Ms", millis(histogram.getValueAtPercentile(PERCENTILES[i])));
+		}
+		node.put("maxMs", millis(histogram.getMaxValue()));
+		return node;
+	}
+
+	/**
+	 * @return Общее число ошибок.
+	 */
+	long getErrors() {
+		return total.getErrors();
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+}
@@ -0,0 +1,74 @@
+package com.expense.loadtest;
+
+import java.io.File;
+import java.util.Map;
+
+import com.expense.datagen.DataGeneratorCli;
+import com.expense.datagen.DatasetSpec;
+
+/**
+ * Запуск нагрузочного теста из командной строки. Параметры задаются в виде --имя=значение:
+ * <pre>
+ * java -jar expense-loadtest/target/loadtest.jar --rate=200 --duration=60 --warmup=10 --expenses=1000000 --report=before.json
+ * </pre>
+ * Без параметра --target приложение запускается во встроенном Tomcat с профилем test и заполняется сгенерированными данными
+ * (параметры генератора те же, что у expense-datagen: --expenses, --parents, --children, --seed, --startDate, --days, --skew...).
+ * С параметром --target=http://host:port/path нагрузка подается на развернутое приложение, категории и расходы читаются через его API.
+ * <p>
+ * Параметры нагрузки: --rate (запросов в секунду), --duration и --warmup (секунды), --workers, --mix
+ * (по умолчанию {@value LoadMix#DEFAULT}), --port (порт встроенного приложения), --report (json файл отчета).
+ * Код завершения 1, если были ошибочные ответы.
+ * @author Alexandr Trifonov
+ *
+ */
+public final class LoadTestCli {
+
+	private LoadTestCli() {
+	}
+
+	/**
+	 * Файл настройки журналирования, если другой не задан свойством logback.configurationFile.
+	 */
+	private static final String LOGBACK_CONFIGURATION = "logback-loadtest.xml";
+
+	public static void main(String[] args) throws Exception {
+		//настройка журналирования задается до первого обращения к журналу; logback.xml приложения выводит отладочные сообщения
+		if (System.getProperty("logback.configurationFile") == null) {
+			System.setProperty("logback.configurationFile", LOGBACK_CONFIGURATION);
+		}
+		Map<String, String> options = DataGeneratorCli.parse(args);
+		String target = options.remove("target");
+		int port = Integer.parseInt(remove(options, "port", "0"));
+		int rate = Integer.parseInt(remove(options, "rate", "100"));
+		int duration = Integer.parseInt(remove(options, "duration", "60"));
+		int warmup = Integer.parseInt(remove(options, "warmup", "10"));
+		int workers = Integer.parseInt(remove(options, "workers", "64"));
+		LoadMix mix = LoadMix.parse(remove(options, "mix", LoadMix.DEFAULT));
+		String report = options.remove("report");
+		if (!options.containsKey("expenses")) {
+			options.put("expenses", "100000");
+		}
+		DatasetSpec spec = DataGeneratorCli.toSpec(options);
+
+		LoadReport loadReport;
+		if (target == null) {
+			try (EmbeddedBackend backend = EmbeddedBackend.start(port, spec)) {
+				Workload workload = Workload.of(backend.getBaseUrl(), backend.getDataset(), spec.getStartDate(), spec.getDays(), spec.getSeed());
+				loadReport = new LoadGenerator(workload, mix, rate, workers, spec.getSeed()).run(warmup, duration);
+			}
+		} else {
+			Workload workload = Workload.discover(target, spec.getStartDate(), spec.getDays());
+			loadReport = new LoadGenerator(workload, mix, rate, workers, spec.getSeed()).run(warmup, duration);
+		}
+		loadReport.print(System.out);
+		if (report != null) {
+			loadReport.write(new File(report));
+		}
+		System.exit(loadReport.getErrors() > 0 ? 1 : 0);
+	}
+
+	private static String remove(Map<String, String> options, String name, String defaultValue) {
+		String value = options.remove(name);
+		return value == null ? defaultValue : value;
+	}
+}
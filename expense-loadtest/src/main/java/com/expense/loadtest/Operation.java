@@ -0,0 +1,155 @@
+package com.expense.loadtest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Операции нагрузки - запросы к реальным точкам входа приложения. Параметры запросов выбираются случайно в пределах набора данных.
+ * @author Alexandr Trifonov
+ *
+ */
+enum Operation {
+	/**
+	 * GET /api/expense-certain: расходы категории за месяц, первая страница из 100 расходов.
+	 */
+	CERTAIN("certain") {
+		@Override
+		Request request(Workload workload, Random random) {
+			LocalDate month = workload.randomMonth(random);
+			return Request.get("/api/expense-certain?orderBy=localDate&pageSize=100&dates=" + month + "," + month.plusMonths(1).minusDays(1)
+					+ "&categoryId=" + workload.randomParentCategoryId(random));
+		}
+	},
+	/**
+	 * GET /api/expense-bar-data: итоги за год по родительским категориям или по подкатегориям одной категории.
+	 */
+	BAR("bar") {
+		@Override
+		Request request(Workload workload, Random random) {
+			LocalDate from = workload.randomDate(random);
+			String path = "/api/expense-bar-data?dateFrom=" + from + "&dateTo=" + from.plusYears(1).minusDays(1);
+			return Request.get(random.nextBoolean() ? path : path + "&categoryId=" + workload.randomParentCategoryId(random));
+		}
+	},
+	/**
+	 * GET /api/category: родительские категории.
+	 */
+	CATEGORY("category") {
+		@Override
+		Request request(Workload workload, Random random) {
+			return Request.get("/api/category");
+		}
+	},
+	/**
+	 * GET /api/free-category: родительские категории без расходов.
+	 */
+	FREE_CATEGORY("freeCategory") {
+		@Override
+		Request request(Workload workload, Random random) {
+			return Request.get("/api/free-category");
+		}
+	},
+	/**
+	 * POST /api/expense: новый расход.
+	 */
+	ADD("post") {
+		@Override
+		Request request(Workload workload, Random random) {
+			return Request.post("/api/expense", expenseJson(workload, random));
+		}
+	},
+	/**
+	 * PUT /api/expense/{id}: изменение существующего расхода.
+	 */
+	UPDATE("put") {
+		@Override
+		Request request(Workload workload, Random random) {
+			return Request.put("/api/expense/" + workload.randomExpenseId(random), expenseJson(workload, random));
+		}
+	};
+
+	/**
+	 * Имя операции в параметре --mix и в отчете.
+	 */
+	private final String key;
+
+	Operation(String key) {
+		this.key = key;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Построение запроса.
+	 * @param workload Данные нагрузки.
+	 * @param random Генератор случайных чисел.
+	 * @return Запрос.
+	 */
+	abstract Request request(Workload workload, Random random);
+
+	/**
+	 * Поиск операции по имени.
+	 * @param key Имя операции.
+	 * @return Операция.
+	 * @throws IllegalArgumentException если операции с таким именем нет.
+	 */
+	static Operation of(String key) throws IllegalArgumentException {
+		for (Operation operation : values()) {
+			if (operation.key.equals(key)) {
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operation " + key);
+	}
+
+	/**
+	 * Тело запроса с расходом в формате, который принимают POST и PUT /api/expense.
+	 */
+	private static String expenseJson(Workload workload, Random random) {
+		BigDecimal unitPrice = BigDecimal.valueOf(100 + random.nextInt(100000), 2);
+		return "{\"category\":{\"id\":" + workload.randomCategoryId(random) + "},\"count\":" + (1 + random.nextInt(3))
+				+ ",\"unitPrice\":" + unitPrice.toPlainString() + ",\"localDate\":\"" + workload.randomDate(random) + "\",\"note\":\"load test\"}";
+	}
+
+	/**
+	 * HTTP запрос операции.
+	 */
+	static class Request {
+		private final String method;
+		private final String path;
+		private final String body;
+
+		private Request(String method, String path, String body) {
+			this.method = method;
+			this.path = path;
+			this.body = body;
+		}
+
+		static Request get(String path) {
+			return new Request("GET", path, null);
+		}
+
+		static Request post(String path, String body) {
+			return new Request("POST", path, body);
+		}
+
+		static Request put(String path, String body) {
+			return new Request("PUT", path, body);
+		}
+
+		String getMethod() {
+			return method;
+		}
+
+		String getPath() {
+			return path;
+		}
+
+		String getBody() {
+			return body;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.expense.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.expense.datagen.GeneratedDataset;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Данные, по которым строятся запросы нагрузки: адрес приложения, категории, идентификаторы существующих расходов и период дат.
+ * @author Alexandr Trifonov
+ *
+ */
+class Workload {
+	/**
+	 * Максимальное число идентификаторов расходов, используемых в запросах изменения.
+	 */
+	private static final int EXPENSE_ID_SAMPLE = 10000;
+	
+	/**
+	 * Размер страницы при чтении идентификаторов расходов внешнего приложения (наибольший допустимый размер страницы).
+	 */
+	private static final int DISCOVERY_PAGE_SIZE = 1000;
+
+	private final String baseUrl;
+	private final List<Integer> parentCategoryIds;
+	private final List<Integer> categoryIds;
+	private final long[] expenseIds;
+	private final LocalDate startDate;
+	private final int days;
+
+	private Workload(String baseUrl, List<Integer> parentCategoryIds, List<Integer> categoryIds, long[] expenseIds, LocalDate startDate, int days) {
+		if (parentCategoryIds.isEmpty() || expenseIds.length == 0) {
+			throw new IllegalStateException("Workload needs at least one category and one expense");
+		}
+		this.baseUrl = baseUrl;
+		this.parentCategoryIds = parentCategoryIds;
+		this.categoryIds = categoryIds;
+		this.expenseIds = expenseIds;
+		this.startDate = startDate;
+		this.days = days;
+	}
+
+	/**
+	 * Нагрузка на встроенное приложение по сгенерированному набору данных.
+	 * @param baseUrl Адрес приложения.
+	 * @param dataset Сгенерированный набор данных.
+	 * @param startDate Первая дата периода набора данных.
+	 * @param days Число дней периода набора данных.
+	 * @param seed Начальное значение генератора случайных чисел.
+	 * @return Данные нагрузки.
+	 */
+	static Workload of(String baseUrl, GeneratedDataset dataset, LocalDate startDate, int days, long seed) {
+		Random random = new Random(seed);
+		long[] expenseIds = new long[(int) Math.min(EXPENSE_ID_SAMPLE, dataset.getExpenses())];
+		for (int i = 0; i < expenseIds.length; i++) {
+			expenseIds[i] = dataset.getFirstExpenseId() + (long) (random.nextDouble() * dataset.getExpenses());
+		}
+		return new Workload(baseUrl, dataset.getParentCategoryIds(), dataset.getCategoryIds(), expenseIds, startDate, days);
+	}
+
+	/**
+	 * Нагрузка на внешнее приложение: категории и идентификаторы расходов читаются через API приложения.
+	 * @param baseUrl Адрес приложения.
+	 * @param startDate Первая дата периода, по которому строятся запросы.
+	 * @param days Число дней периода.
+	 * @return Данные нагрузки.
+	 * @throws IOException при ошибке обращения к приложению.
+	 */
+	static Workload discover(String baseUrl, LocalDate startDate, int days) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		List<Integer> parentIds = new ArrayList<>();
+		List<Integer> categoryIds = new ArrayList<>();
+		for (JsonNode parent : get(mapper, baseUrl + "/api/category")) {
+			parentIds.add(parent.get("id").intValue());
+			categoryIds.add(parent.get("id").intValue());
+			for (JsonNode child : get(mapper, baseUrl + "/api/category-child/" + parent.get("id").intValue())) {
+				categoryIds.add(child.get("id").intValue());
+			}
+		}
+		JsonNode expenses = get(mapper, baseUrl + "/api/expense-certain?orderBy=localDate&pageSize=" + DISCOVERY_PAGE_SIZE
+				+ "&dates=" + startDate + "," + startDate.plusDays(days - 1));
+		long[] expenseIds = new long[expenses.size()];
+		for (int i = 0; i < expenseIds.length; i++) {
+			expenseIds[i] = expenses.get(i).get("id").longValue();
+		}
+		return new Workload(baseUrl, parentIds, categoryIds, expenseIds, startDate, days);
+	}
+
+	private static JsonNode get(ObjectMapper mapper, String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestProperty("Accept", "application/json");
+		try (InputStream body = connection.getInputStream()) {
+			return mapper.readTree(body);
+		}
+	}
+
+	String getBaseUrl() {
+		return baseUrl;
+	}
+
+	int randomParentCategoryId(Random random) {
+		return parentCategoryIds.get(random.nextInt(parentCategoryIds.size()));
+	}
+
+	int randomCategoryId(Random random) {
+		return categoryIds.get(random.nextInt(categoryIds.size()));
+	}
+
+	long randomExpenseId(Random random) {
+		return expenseIds[random.nextInt(expenseIds.length)];
+	}
+
+	/**
+	 * @param random Генератор случайных чисел.
+	 * @return Случайная дата периода.
+	 */
+	LocalDate randomDate(Random random) {
+		return startDate.plusDays(random.nextInt(days));
+	}
+
+	/**
+	 * @param random Генератор случайных чисел.
+	 * @return Первый день случайного месяца периода.
+	 */
+	LocalDate randomMonth(Random random) {
+		return randomDate(random).withDayOfMonth(1);
+	}
+}